@@ -15,16 +15,23 @@ import android.widget.EditText;
 import android.widget.ImageView;
 import android.widget.TextView;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
 import com.google.android.material.bottomnavigation.BottomNavigationView;
 import com.yausername.youtubedl_android.YoutubeDL;
 import com.yausername.youtubedl_android.YoutubeDLException;
 
+import tech.tenamin.unisound.core.api.DownloadScheduler;
 import tech.tenamin.unisound.core.api.MusicSnippet;
+import tech.tenamin.unisound.core.api.util.NetworkEngine;
+import tech.tenamin.unisound.core.metrics.MetricsRegistry;
 import tech.tenamin.unisound.databinding.ActivityMainBinding;
 import tech.tenamin.unisound.fragment.ArtistFragment;
 import tech.tenamin.unisound.fragment.HistoryFragment;
 import tech.tenamin.unisound.fragment.HomeFragment;
 import tech.tenamin.unisound.fragment.LikeFragment;
+import tech.tenamin.unisound.fragment.MetricsFragment;
 import tech.tenamin.unisound.fragment.PlayingFragment;
 import tech.tenamin.unisound.fragment.PlaylistFragment;
 import tech.tenamin.unisound.fragment.SearchResultFragment;
@@ -59,6 +66,9 @@ public class MainActivity extends AppCompatActivity {
             throw new RuntimeException(e);
         }
 
+        // Downloads queued or interrupted in the previous launch are started again.
+        DownloadScheduler.getInstance(this);
+
         // Set search action behavior in toolbar on top.
         final ActionMenuItemView searchAction = findViewById(R.id.search);
         searchAction.setOnClickListener(view -> {
@@ -93,6 +103,13 @@ public class MainActivity extends AppCompatActivity {
             }
         });
 
+        // Long press on settings action opens request metrics for debugging.
+        final ActionMenuItemView settingsAction = findViewById(R.id.settings);
+        settingsAction.setOnLongClickListener(view -> {
+            this.selectedFragment(new MetricsFragment());
+            return true;
+        });
+
         // Set search box behavior.
         final EditText searchBox = findViewById(R.id.search_box);
         searchBox.setOnKeyListener((view, i, keyEvent) -> {
@@ -149,6 +166,26 @@ public class MainActivity extends AppCompatActivity {
         });
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+
+        // Stop the shared network engine only when the app is closed, not when the activity is recreated.
+        if (this.isFinishing()) NetworkEngine.shutdown();
+    }
+
+    /**
+     * Appends request metrics to the dump of the activity,
+     * so that they can be read by "adb shell dumpsys activity tech.tenamin.unisound".
+     */
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        writer.print(prefix);
+        writer.println("Request metrics:");
+        writer.println(MetricsRegistry.getInstance().dump());
+    }
+
     /**
      * Replaces the current fragment in the frame layout with the specified fragment.
      *
@@ -0,0 +1,128 @@
+package tech.tenamin.unisound.adapter;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import tech.tenamin.unisound.R;
+import tech.tenamin.unisound.core.api.util.ThumbnailLoader;
+import tech.tenamin.unisound.core.history.HistorySnippet;
+
+/**
+ * RecyclerView adapter for the history of played music.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public class HistoryListAdapter extends RecyclerView.Adapter<HistoryListAdapter.ViewHolder> {
+
+    /** Items displayed in the list, the most recently played first. */
+    private final List<HistorySnippet> ITEMS = new ArrayList<>();
+
+    /** Called when a row is tapped, and when a row is long-pressed. */
+    private OnItemClickListener onItemClickListener, onItemLongClickListener;
+
+    private final LayoutInflater mInflater;
+    private final int mResource;
+
+    public HistoryListAdapter(@NonNull Context context, int resource) {
+        this.mResource = resource;
+        this.mInflater = LayoutInflater.from(context);
+    }
+
+    /**
+     * Listener of taps on rows.
+     */
+    public interface OnItemClickListener {
+        void onItemClick(HistorySnippet snippet, int position);
+    }
+
+    /**
+     * Holds views of a row, so that they are looked up only when the row is created.
+     */
+    public static class ViewHolder extends RecyclerView.ViewHolder {
+
+        private final TextView TITLE, PUBLISHER, PLAY_COUNT;
+        private final ImageView THUMBNAIL;
+
+        ViewHolder(@NonNull final View view) {
+            super(view);
+            this.TITLE = view.findViewById(R.id.title);
+            this.PUBLISHER = view.findViewById(R.id.publisher);
+            this.PLAY_COUNT = view.findViewById(R.id.play_count);
+            this.THUMBNAIL = view.findViewById(R.id.thumbnail);
+        }
+    }
+
+    /**
+     * Replaces the items of the list.
+     *
+     * @param history history to be displayed
+     */
+    public void setItems(@NonNull final List<HistorySnippet> history) {
+        this.ITEMS.clear();
+        this.ITEMS.addAll(history);
+        this.notifyDataSetChanged();
+    }
+
+    @NonNull
+    public HistorySnippet getItem(final int position) {
+        return this.ITEMS.get(position);
+    }
+
+    public void setOnItemClickListener(final OnItemClickListener listener) {
+        this.onItemClickListener = listener;
+    }
+
+    public void setOnItemLongClickListener(final OnItemClickListener listener) {
+        this.onItemLongClickListener = listener;
+    }
+
+    @Override
+    public int getItemCount() {
+        return this.ITEMS.size();
+    }
+
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        final ViewHolder holder = new ViewHolder(mInflater.inflate(mResource, parent, false));
+        holder.itemView.setOnClickListener(v -> {
+            final int position = holder.getBindingAdapterPosition();
+            if (position == RecyclerView.NO_POSITION || this.onItemClickListener == null) return;
+            this.onItemClickListener.onItemClick(this.ITEMS.get(position), position);
+        });
+        holder.itemView.setOnLongClickListener(v -> {
+            final int position = holder.getBindingAdapterPosition();
+            if (position == RecyclerView.NO_POSITION || this.onItemLongClickListener == null) return false;
+            this.onItemLongClickListener.onItemClick(this.ITEMS.get(position), position);
+            return true;
+        });
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        final HistorySnippet historySnippet = this.ITEMS.get(position);
+
+        holder.TITLE.setText(historySnippet.getSNIPPET().getTITLE());
+        holder.PUBLISHER.setText(historySnippet.getSNIPPET().getPUBLISHER());
+        holder.PLAY_COUNT.setText(String.valueOf(historySnippet.getPLAY_COUNT()));
+
+        ThumbnailLoader.load(holder.THUMBNAIL, historySnippet.getSNIPPET().getTHUMBNAIL());
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull ViewHolder holder) {
+        ThumbnailLoader.cancel(holder.THUMBNAIL);
+    }
+}
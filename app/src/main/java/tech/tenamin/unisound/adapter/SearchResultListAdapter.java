@@ -2,42 +2,136 @@ package tech.tenamin.unisound.adapter;
 
 import android.content.Context;
 import android.view.LayoutInflater;
+import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
+import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListUpdateCallback;
+import androidx.recyclerview.widget.RecyclerView;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 import tech.tenamin.unisound.R;
 import tech.tenamin.unisound.core.api.MusicSnippet;
 import tech.tenamin.unisound.core.api.SearchAPIAdapter;
-import tech.tenamin.unisound.core.api.util.ImageDownloadTask;
+import tech.tenamin.unisound.core.api.util.ThumbnailLoader;
+import tech.tenamin.unisound.core.cache.SnippetCodec;
+import tech.tenamin.unisound.core.index.SnippetIndex;
+import tech.tenamin.unisound.core.library.LibraryStore;
 
 /**
- * ArrayAdapter for SearchResult.
+ * RecyclerView adapter for SearchResult.
+ * Results of all SearchAPIs are kept in one flattened list indexed by position,
+ * so binding a row is constant time and merging a page only touches the range it changes.
  *
  * @author tenamen
  * @since 2023/08/17.
  */
-public class SearchResultListAdapter extends ArrayAdapter<MusicSnippet> {
+public class SearchResultListAdapter extends RecyclerView.Adapter<SearchResultListAdapter.ViewHolder> {
+
+    /** Size of the thumbnail in a row without padding, which thumbnails are preloaded for. */
+    private static final int THUMBNAIL_SIZE_DP = 60;
 
     /** Bundle of SearchAPI. */
     private final List<SearchAPIAdapter<?>> BUNDLE = new ArrayList<>();
 
+    /** Items displayed in the list, in the order of position. */
+    private final List<MusicSnippet> ITEMS = new ArrayList<>();
+
+    /**
+     * Rank of each item in the list, in the same order as the items.
+     * Items are ordered by page, then position in the page, then the SearchAPI in the bundle,
+     * so results of each SearchAPI are interleaved in the same order whichever answers first.
+     */
+    private final List<Long> RANKS = new ArrayList<>();
+
+    /** The number of pages merged from each SearchAPI. */
+    private final Map<SearchAPIAdapter<?>, Integer> PAGE_COUNTS = new HashMap<>();
+
+    /** The number of SearchAPIs which have not answered yet. */
+    private int pendingCount;
+
+    /** SearchAPIs whose search is in flight, which are not asked again until they answer. */
+    private final Set<SearchAPIAdapter<?>> IN_FLIGHT = new HashSet<>();
+
+    /** SearchAPIs which answered an empty page, which have no more results for the keyword. */
+    private final Set<SearchAPIAdapter<?>> EXHAUSTED = new HashSet<>();
+
+    /** The number of local hits shown above the results of SearchAPIs. */
+    private static final int LOCAL_HIT_COUNT = 5;
+
+    /** Keys of the local hits shown, so that the same music in pages of SearchAPIs is not shown twice. */
+    private final Set<String> LOCAL_KEYS = new HashSet<>();
+
+    /** Local index searched before SearchAPIs, or null to show only their results. */
+    private SnippetIndex localIndex;
+
+    /** The number of rows from the end of the list at which the next pages are requested. */
+    private int prefetchDistance = 10;
+
+    /** Store of liked music, which the like button of each row toggles. */
+    private final LibraryStore LIBRARY;
+
+    /** Called when a row is tapped. */
+    private OnItemClickListener onItemClickListener;
+
+    /** Called when a row is long-pressed or hovered, which hints that it may be tapped soon. */
+    private OnItemPreviewListener onItemPreviewListener;
+
+    private final Context mContext;
     private final LayoutInflater mInflater;
     private final int mResource;
 
     public SearchResultListAdapter(@NonNull Context context, int resource) {
-        super(context, resource);
-
+        this.mContext = context;
         this.mResource = resource;
-        this.mInflater = (LayoutInflater)context.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
+        this.mInflater = LayoutInflater.from(context);
+        this.LIBRARY = LibraryStore.getInstance(context);
+    }
+
+    /**
+     * Listener of taps on rows.
+     */
+    public interface OnItemClickListener {
+        void onItemClick(MusicSnippet snippet, int position);
+    }
+
+    /**
+     * Listener of long-presses and hovers on rows.
+     */
+    public interface OnItemPreviewListener {
+        void onItemPreview(MusicSnippet snippet);
+    }
+
+    /**
+     * Holds views of a row, so that they are looked up only when the row is created.
+     */
+    public static class ViewHolder extends RecyclerView.ViewHolder {
+
+        private final TextView TITLE, PUBLISHER;
+        private final ImageView THUMBNAIL, LIKE;
+
+        ViewHolder(@NonNull final View view) {
+            super(view);
+            this.TITLE = view.findViewById(R.id.title);
+            this.PUBLISHER = view.findViewById(R.id.publisher);
+            this.THUMBNAIL = view.findViewById(R.id.thumbnail);
+            this.LIKE = view.findViewById(R.id.like);
+        }
     }
 
     /**
@@ -62,64 +156,360 @@ public class SearchResultListAdapter extends ArrayAdapter<MusicSnippet> {
         return this;
     }
 
+    /**
+     * Listener of searches of all bundles.
+     * Methods are called on the main thread.
+     */
+    public interface SearchListener {
+
+        /**
+         * Called each time one of the SearchAPIAdapters finishes.
+         * The items of the page are already merged into the list.
+         *
+         * @param apiAdapter the SearchAPIAdapter which finished
+         * @param page items of the fetched page, or an empty list if the search failed
+         */
+        default void onEachDone(SearchAPIAdapter<?> apiAdapter, List<? extends MusicSnippet> page) { }
+
+        /**
+         * Called once after all the SearchAPIAdapters finished.
+         */
+        void onAllDone();
+    }
+
     /**
      * Search all bundles for the specified keyword.
-     * The search results are stored in the original SearchResultListAdapter object.
+     * The search results are stored in the original SearchResultListAdapter object,
+     * and each page is displayed as soon as its SearchAPI answers.
      *
      * @param KEYWORD keyword used for search
+     * @param listener listener to be notified as searches finish
      * @return SearchResultListAdapter object containing search results
      */
-    public SearchResultListAdapter searchAllFromFirst(final String KEYWORD) {
-        this.BUNDLE.forEach(b -> b.searchFromStart(KEYWORD));
-        return this;
+    public SearchResultListAdapter searchAllFromFirst(final String KEYWORD, final SearchListener listener) {
+
+        // Pages of the previous keyword must not be merged, so searches in flight are dropped.
+        // Cancelling completes them at once, which also clears IN_FLIGHT.
+        for (final SearchAPIAdapter<?> b : new ArrayList<>(this.IN_FLIGHT)) b.cancel();
+
+        final int size = this.ITEMS.size();
+        this.ITEMS.clear();
+        this.RANKS.clear();
+        this.PAGE_COUNTS.clear();
+        this.EXHAUSTED.clear();
+        this.LOCAL_KEYS.clear();
+        this.notifyItemRangeRemoved(0, size);
+
+        // Music seen before is found in the local index at once, even with no connectivity.
+        if (this.localIndex != null) this.mergeLocalHits(this.localIndex.search(KEYWORD, LOCAL_HIT_COUNT));
+
+        return this.awaitAll(b -> b.searchFromStart(KEYWORD), listener);
     }
 
     /**
      * Searches for the next results using all the SearchAPIAdapters in the bundle.
      *
+     * @param listener listener to be notified as searches finish
      * @return The updated SearchResultListAdapter object
      */
-    public SearchResultListAdapter searchAllNext() {
-        this.BUNDLE.forEach(SearchAPIAdapter::searchNext);
+    public SearchResultListAdapter searchAllNext(final SearchListener listener) {
+        return this.awaitAll(SearchAPIAdapter::searchNext, listener);
+    }
+
+    /**
+     * Requests the next pages ahead of time if the last visible row is within the prefetch distance of the end.
+     * This is called as the list is scrolled, so it does nothing while the next pages are in flight.
+     *
+     * @param lastVisiblePosition position of the last visible row
+     * @param listener listener to be notified as searches finish
+     * @return true if the next pages are requested
+     */
+    public boolean searchNextIfNeeded(final int lastVisiblePosition, final SearchListener listener) {
+        if (lastVisiblePosition == RecyclerView.NO_POSITION) return false;
+        if (lastVisiblePosition < this.ITEMS.size() - this.prefetchDistance) return false;
+        if (!this.IN_FLIGHT.isEmpty() || this.EXHAUSTED.size() == this.BUNDLE.size()) return false;
+
+        this.searchAllNext(listener);
+        return true;
+    }
+
+    /**
+     * Replaces the items of the list with ones which are not searched, such as liked music.
+     *
+     * @param items items to be displayed
+     */
+    public void setItems(@NonNull final List<? extends MusicSnippet> items) {
+        for (final SearchAPIAdapter<?> b : new ArrayList<>(this.IN_FLIGHT)) b.cancel();
+
+        final int size = this.ITEMS.size();
+        this.ITEMS.clear();
+        this.RANKS.clear();
+        this.PAGE_COUNTS.clear();
+        this.LOCAL_KEYS.clear();
+        this.notifyItemRangeRemoved(0, size);
+        this.mergeLocalHits(new ArrayList<>(items));
+    }
+
+    /**
+     * Sets the local index which is searched before SearchAPIs.
+     *
+     * @param localIndex the local index, or null to show only results of SearchAPIs
+     */
+    public void setLocalIndex(final SnippetIndex localIndex) {
+        this.localIndex = localIndex;
+    }
+
+    /**
+     * Sets how many rows before the end of the list the next pages are requested.
+     *
+     * @param prefetchDistance the number of rows
+     */
+    public void setPrefetchDistance(final int prefetchDistance) {
+        this.prefetchDistance = prefetchDistance;
+    }
+
+    /**
+     * Starts a search on each bundle and notifies the listener as they finish.
+     *
+     * @param search function which starts a search on a bundle
+     * @param listener listener to be notified as searches finish
+     * @return The updated SearchResultListAdapter object
+     */
+    private SearchResultListAdapter awaitAll(
+            final Function<SearchAPIAdapter<?>, CompletableFuture<? extends List<? extends MusicSnippet>>> search,
+            final SearchListener listener
+    ) {
+        // SearchAPIs already searching are skipped, so that a page is never merged twice.
+        final List<SearchAPIAdapter<?>> targets = new ArrayList<>();
+        for (final SearchAPIAdapter<?> b : this.BUNDLE) {
+            if (!this.IN_FLIGHT.contains(b) && !this.EXHAUSTED.contains(b)) targets.add(b);
+        }
+
+        this.pendingCount += targets.size();
+        this.IN_FLIGHT.addAll(targets);
+        final CompletableFuture<?>[] futures = targets.stream()
+                .map(b -> search.apply(b).whenComplete((page, error) -> {
+                    this.pendingCount--;
+                    this.IN_FLIGHT.remove(b);
+                    if (page != null && page.isEmpty()) this.EXHAUSTED.add(b);
+                    if (page != null) this.mergePage(b, page);
+                    listener.onEachDone(b, page == null ? Collections.emptyList() : page);
+                }))
+                .toArray(CompletableFuture[]::new);
+
+        CompletableFuture.allOf(futures).whenComplete((v, error) -> listener.onAllDone());
         return this;
     }
 
+    /**
+     * Inserts local hits at the top, ranked before every page of SearchAPIs.
+     *
+     * @param hits items found in the local index
+     */
+    private void mergeLocalHits(final List<MusicSnippet> hits) {
+        for (int i = 0; i < hits.size(); i++) {
+            this.RANKS.add(i, Long.MIN_VALUE + i);
+            this.ITEMS.add(i, hits.get(i));
+            final String key = SnippetCodec.keyOf(hits.get(i));
+            if (key != null) this.LOCAL_KEYS.add(key);
+        }
+        this.notifyItemRangeInserted(0, hits.size());
+    }
+
+    /**
+     * Inserts the items of a page at their ranks and displays them.
+     * Only the range from the first inserted position is compared and notified.
+     *
+     * @param apiAdapter the SearchAPIAdapter which fetched the page
+     * @param page items of the fetched page
+     */
+    private void mergePage(final SearchAPIAdapter<?> apiAdapter, final List<? extends MusicSnippet> page) {
+        if (page.isEmpty()) return;
+
+        final int pageIndex = this.PAGE_COUNTS.merge(apiAdapter, 1, Integer::sum) - 1;
+        final int bundleIndex = this.BUNDLE.indexOf(apiAdapter);
+
+        // Items before the first insertion point do not move.
+        final int from = this.positionOf(((long) pageIndex << 40) | bundleIndex);
+        final List<MusicSnippet> oldRange = new ArrayList<>(this.ITEMS.subList(from, this.ITEMS.size()));
+
+        for (int i = 0; i < page.size(); i++) {
+
+            // Music already shown as a local hit keeps its row at the top.
+            if (this.LOCAL_KEYS.contains(SnippetCodec.keyOf(page.get(i)))) continue;
+
+            final long rank = ((long) pageIndex << 40) | ((long) i << 16) | bundleIndex;
+            final int position = this.positionOf(rank);
+            this.RANKS.add(position, rank);
+            this.ITEMS.add(position, page.get(i));
+        }
+        final List<MusicSnippet> newRange = this.ITEMS.subList(from, this.ITEMS.size());
+
+        // Thumbnails of rows below the screen are downloaded before they are scrolled into view.
+        final int thumbnailSize = Math.round(THUMBNAIL_SIZE_DP * this.mContext.getResources().getDisplayMetrics().density);
+        for (final MusicSnippet snippet : page) {
+            ThumbnailLoader.preload(this.mContext, snippet.getTHUMBNAIL(), thumbnailSize);
+        }
+
+        // Notify the changes as batched inserts.
+        DiffUtil.calculateDiff(new DiffUtil.Callback() {
+
+            @Override
+            public int getOldListSize() {
+                return oldRange.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return newRange.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                return oldRange.get(oldItemPosition) == newRange.get(newItemPosition);
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                return true;
+            }
+        }, false).dispatchUpdatesTo(new ListUpdateCallback() {
+
+            @Override
+            public void onInserted(int position, int count) {
+                notifyItemRangeInserted(from + position, count);
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                notifyItemRangeRemoved(from + position, count);
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                notifyItemMoved(from + fromPosition, from + toPosition);
+            }
+
+            @Override
+            public void onChanged(int position, int count, @Nullable Object payload) {
+                notifyItemRangeChanged(from + position, count, payload);
+            }
+        });
+    }
+
+    /**
+     * Finds the position after every item ranked before or same as the given rank.
+     *
+     * @param rank rank of an item
+     * @return the position to insert the item
+     */
+    private int positionOf(final long rank) {
+        int low = 0, high = this.RANKS.size();
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (this.RANKS.get(mid) <= rank) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
     public List<SearchAPIAdapter<?>> getBUNDLE() {
         return BUNDLE;
     }
 
     /**
-     * Creates and populates a view for each item in the list.
-     *
+     * @return the number of SearchAPIs which have not answered yet
+     */
+    public int getPendingCount() {
+        return this.pendingCount;
+    }
+
+    /**
      * @param position The position of the item in the data set
-     * @param convertView The old view to reuse, if possible
-     * @param parent The parent view group
-     * @return The view for the specified position
+     * @return the item at the position
      */
+    public MusicSnippet getItem(final int position) {
+        return this.ITEMS.get(position);
+    }
+
+    public void setOnItemClickListener(final OnItemClickListener listener) {
+        this.onItemClickListener = listener;
+    }
+
+    public void setOnItemPreviewListener(final OnItemPreviewListener listener) {
+        this.onItemPreviewListener = listener;
+    }
+
+    @Override
+    public int getItemCount() {
+        return this.ITEMS.size();
+    }
+
     @NonNull
     @Override
-    public View getView(int position, @Nullable View convertView, @NonNull ViewGroup parent) {
-        final View view = convertView == null ? mInflater.inflate(mResource, null) : convertView;
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        final ViewHolder holder = new ViewHolder(mInflater.inflate(mResource, parent, false));
+        holder.itemView.setOnClickListener(v -> {
+            final int position = holder.getBindingAdapterPosition();
+            if (position == RecyclerView.NO_POSITION || this.onItemClickListener == null) return;
+            this.onItemClickListener.onItemClick(this.ITEMS.get(position), position);
+        });
+        holder.itemView.setOnLongClickListener(v -> {
+            this.previewItem(holder);
+            return false;
+        });
+        holder.itemView.setOnHoverListener((v, event) -> {
+            if (event.getAction() == MotionEvent.ACTION_HOVER_ENTER) this.previewItem(holder);
+            return false;
+        });
+        holder.LIKE.setOnClickListener(v -> {
+            final int position = holder.getBindingAdapterPosition();
+            if (position == RecyclerView.NO_POSITION) return;
+            final MusicSnippet snippet = this.ITEMS.get(position);
+            this.LIBRARY.setLiked(snippet, !this.LIBRARY.isLiked(snippet));
+            this.notifyItemChanged(position);
+        });
+        return holder;
+    }
 
-        int index = 0;
-        for (SearchAPIAdapter<?> searchAPIAdapter : this.BUNDLE) {
-            if (searchAPIAdapter.isConnecting()) continue;
-            for (MusicSnippet musicSnippet : searchAPIAdapter.getSearchResult()) {
-                if (index++ == position) {
-                    final TextView titleView = view.findViewById(R.id.title);
-                    titleView.setText(musicSnippet.getTITLE());
+    /**
+     * Notifies the preview listener of the item of the row.
+     *
+     * @param holder The views of the row
+     */
+    private void previewItem(final ViewHolder holder) {
+        final int position = holder.getBindingAdapterPosition();
+        if (position == RecyclerView.NO_POSITION || this.onItemPreviewListener == null) return;
+        this.onItemPreviewListener.onItemPreview(this.ITEMS.get(position));
+    }
+
+    /**
+     * Populates the views of a row with the item at the position.
+     *
+     * @param holder The views of the row
+     * @param position The position of the item in the data set
+     */
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        final MusicSnippet musicSnippet = this.ITEMS.get(position);
 
-                    final TextView publisherView = view.findViewById(R.id.publisher);
-                    publisherView.setText(musicSnippet.getPUBLISHER());
+        holder.TITLE.setText(musicSnippet.getTITLE());
+        holder.PUBLISHER.setText(musicSnippet.getPUBLISHER());
 
-                    new ImageDownloadTask(view.findViewById(R.id.thumbnail))
-                            .execute(musicSnippet.getTHUMBNAIL());
+        // Whether the music is liked is answered from memory, so binding does not wait for the database.
+        holder.LIKE.setAlpha(this.LIBRARY.isLiked(musicSnippet) ? 1f : 0.3f);
 
-                    break;
-                }
-            }
-        }
+        ThumbnailLoader.load(holder.THUMBNAIL, musicSnippet.getTHUMBNAIL());
+    }
 
-        return view;
+    /**
+     * Cancels loading the thumbnail of a row which is no longer shown,
+     * so that it is not pasted into the row after the row is reused.
+     *
+     * @param holder The views of the row
+     */
+    @Override
+    public void onViewRecycled(@NonNull ViewHolder holder) {
+        ThumbnailLoader.cancel(holder.THUMBNAIL);
     }
 }
@@ -3,8 +3,10 @@ package tech.tenamin.unisound.core.api;
 import android.content.Context;
 import android.util.Log;
 
+import com.android.volley.Request;
 import com.android.volley.RequestQueue;
-import com.android.volley.toolbox.Volley;
+
+import tech.tenamin.unisound.core.api.util.NetworkEngine;
 
 /**
  * Volley queue wrapper for API connection.
@@ -20,17 +22,21 @@ public abstract class APIAdapter {
     /** Whether to communicate with api or not. */
     protected volatile boolean connecting;
 
-    /** A queue which contains requests to communicate with API */
-    protected final RequestQueue QUEUE;
+    /** Application context, which can be kept longer than activities. */
+    protected final Context CONTEXT;
 
     public APIAdapter(final Context context) {
-
-        // Create a response queue instance.
-        this.QUEUE = Volley.newRequestQueue(context);
+        this.CONTEXT = context.getApplicationContext();
     }
 
+    /**
+     * Returns the queue shared in the process, instead of creating threads and caches for each adapter.
+     * It is looked up each time, since the engine is started again after it is shut down.
+     *
+     * @return the queue which contains requests to communicate with API
+     */
     public final RequestQueue getQueue() {
-        return this.QUEUE;
+        return NetworkEngine.getInstance(this.CONTEXT).getQueue();
     }
 
     public final boolean isConnecting() {
@@ -38,7 +44,17 @@ public abstract class APIAdapter {
     }
 
     /**
-     * Cancel all tasks in volley queue.
+     * Add a request to the queue, tagged with this adapter so that it can be cancelled.
+     *
+     * @param request request to communicate with API
+     */
+    protected final void enqueue(final Request<?> request) {
+        request.setTag(this);
+        this.getQueue().add(request);
+    }
+
+    /**
+     * Cancel all tasks of this adapter in volley queue.
      */
     public final void cancel() {
 
@@ -48,6 +64,13 @@ public abstract class APIAdapter {
         }
 
         this.connecting = false;
-        this.QUEUE.cancelAll(e -> true);
+        this.getQueue().cancelAll(this);
+        this.onCancelled();
     }
+
+    /**
+     * Called after tasks are cancelled.
+     * Child classes override this to release what is waiting for the tasks.
+     */
+    protected void onCancelled() { }
 }
@@ -0,0 +1,466 @@
+package tech.tenamin.unisound.core.api;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import tech.tenamin.unisound.core.api.util.TokenBucket;
+import tech.tenamin.unisound.core.cache.SnippetCodec;
+
+/**
+ * Schedules downloads of music files for offline use.
+ * Jobs are persisted, so queued and interrupted downloads continue after a restart.
+ * Jobs requested by the user go ahead of background sync, within a global and a per-host limit of concurrent downloads.
+ * All downloads share one bandwidth limit, which is lowered while music is streamed.
+ * Methods are called on the main thread.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public final class DownloadScheduler {
+
+    /** Tag for Android logging system. */
+    private static final String TAG = "Download Scheduler";
+
+    /** Name of the file which persists jobs. */
+    private static final String QUEUE_FILE_NAME = "downloads.json";
+
+    /** Minimum interval of throughput samples. */
+    private static final long SAMPLE_INTERVAL_MILLIS = 500;
+
+    /** Weight of the latest sample in the moving average of throughput. */
+    private static final double SAMPLE_WEIGHT = 0.3;
+
+    /** The instance shared in the process. */
+    private static DownloadScheduler instance = null;
+
+    /**
+     * Lanes of jobs. A job of a higher lane starts first, and may pause a job of a lower lane.
+     */
+    public enum Priority {
+        /** Downloads requested by the user. */
+        USER,
+        /** Downloads of background sync. */
+        BACKGROUND
+    }
+
+    /** States of jobs. */
+    public enum State { QUEUED, RUNNING, FINISHED, FAILED }
+
+    /**
+     * Listener of changes of jobs, called on the main thread.
+     */
+    public interface JobListener {
+        void onJobChanged(Job job);
+    }
+
+    private final Context CONTEXT;
+
+    /** Jobs which are not removed, in the order of request. */
+    private final List<Job> JOBS = new ArrayList<>();
+
+    /** Listeners of changes of jobs. */
+    private final List<JobListener> LISTENERS = new CopyOnWriteArrayList<>();
+
+    /** Bandwidth limit shared by all downloads. */
+    private final TokenBucket THROTTLE;
+
+    /** Executor which writes the queue to disk in order. */
+    private final ExecutorService DISK_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    /** Handler to call back on the main thread. */
+    private final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    /** Limits of concurrent downloads. */
+    private int maxConcurrent = 3, maxPerHost = 2;
+
+    /** Bandwidth limits in bytes per second, when music is not streamed and when it is. 0 means unlimited. */
+    private volatile long bandwidthLimit = 0, streamingBandwidthLimit = 64 * 1024;
+
+    private DownloadScheduler(@NonNull final Context context) {
+        this.CONTEXT = context;
+        this.THROTTLE = new TokenBucket(() ->
+                PlaybackEngine.getInstance().isStreaming() ? this.streamingBandwidthLimit : this.bandwidthLimit
+        );
+        this.JOBS.addAll(this.load());
+    }
+
+    /**
+     * Returns the scheduler shared in the process. Jobs left by the previous launch are started.
+     *
+     * @param context any context, only its application context is kept
+     * @return the shared scheduler
+     */
+    @NonNull
+    public static synchronized DownloadScheduler getInstance(@NonNull final Context context) {
+        if (instance == null) {
+            instance = new DownloadScheduler(context.getApplicationContext());
+            instance.MAIN_HANDLER.post(instance::schedule);
+        }
+        return instance;
+    }
+
+    /**
+     * Adds a download to the queue.
+     *
+     * @param snippet the music to be downloaded
+     * @param destination the file which the music is downloaded to
+     * @param priority lane of the job
+     * @return the job of the download
+     */
+    @NonNull
+    public Job enqueue(@NonNull final MusicSnippet snippet, @NonNull final File destination, @NonNull final Priority priority) {
+        for (final Job job : this.JOBS) {
+            if (job.DESTINATION.equals(destination) && job.state != State.FAILED) return job;
+        }
+
+        final Job job = this.newJob(snippet, destination, priority);
+        this.JOBS.add(job);
+        this.save();
+        this.notifyChanged(job);
+        this.schedule();
+        return job;
+    }
+
+    /**
+     * Cancels and removes a job. The partly downloaded file is kept for a later download of the same destination.
+     *
+     * @param job the job to be removed
+     */
+    public void remove(@NonNull final Job job) {
+        if (!this.JOBS.remove(job)) return;
+        if (job.adapter != null) job.adapter.cancel();
+        job.adapter = null;
+        this.save();
+        this.schedule();
+    }
+
+    /**
+     * Sets the maximum number of downloads at the same time, and of them for a host.
+     *
+     * @param maxConcurrent the number of downloads in total
+     * @param maxPerHost the number of downloads for each host
+     */
+    public void setConcurrency(final int maxConcurrent, final int maxPerHost) {
+        this.maxConcurrent = maxConcurrent;
+        this.maxPerHost = maxPerHost;
+        this.schedule();
+    }
+
+    /**
+     * Sets the bandwidth shared by all downloads.
+     *
+     * @param bytesPerSecond limit while music is not streamed, or 0 for unlimited
+     * @param streamingBytesPerSecond limit while music is streamed, or 0 for unlimited
+     */
+    public void setBandwidthLimit(final long bytesPerSecond, final long streamingBytesPerSecond) {
+        this.bandwidthLimit = bytesPerSecond;
+        this.streamingBandwidthLimit = streamingBytesPerSecond;
+    }
+
+    public void addJobListener(@NonNull final JobListener listener) {
+        this.LISTENERS.add(listener);
+    }
+
+    public void removeJobListener(@NonNull final JobListener listener) {
+        this.LISTENERS.remove(listener);
+    }
+
+    /**
+     * @return jobs in the order of request
+     */
+    @NonNull
+    public List<Job> getJobs() {
+        return Collections.unmodifiableList(this.JOBS);
+    }
+
+    /**
+     * Starts queued jobs as long as the limits allow, the higher lane first.
+     * If a user job can not start only because of the global limit, a background job is paused for it.
+     */
+    private void schedule() {
+        final Map<String, Integer> perHost = new HashMap<>();
+        int running = 0, pausing = 0;
+        for (final Job job : this.JOBS) {
+            if (job.state != State.RUNNING) continue;
+            running++;
+            if (job.paused) pausing++;
+            perHost.merge(job.HOST, 1, Integer::sum);
+        }
+
+        for (final Priority priority : Priority.values()) {
+            for (final Job job : this.JOBS) {
+                if (job.state != State.QUEUED || job.PRIORITY != priority || job.adapter != null) continue;
+                if (perHost.getOrDefault(job.HOST, 0) >= this.maxPerHost) continue;
+
+                // Each pause frees one slot when the paused job ends, so it is kept for one user job.
+                // The slot of a pause still in progress is already kept, so no more job is paused for it.
+                if (running >= this.maxConcurrent) {
+                    if (priority != Priority.USER) return;
+                    if (pausing > 0) {
+                        pausing--;
+                        continue;
+                    }
+                    if (!this.pauseBackgroundJob()) return;
+                    continue;
+                }
+
+                this.start(job);
+                running++;
+                perHost.merge(job.HOST, 1, Integer::sum);
+            }
+        }
+    }
+
+    /**
+     * Pauses the latest running background job. It starts again when it is cancelled, and its progress is kept.
+     *
+     * @return true if a job is paused
+     */
+    private boolean pauseBackgroundJob() {
+        for (int i = this.JOBS.size() - 1; i >= 0; i--) {
+            final Job job = this.JOBS.get(i);
+            if (job.state != State.RUNNING || job.PRIORITY != Priority.BACKGROUND || job.paused) continue;
+
+            job.paused = true;
+            job.adapter.cancel();
+            return true;
+        }
+        return false;
+    }
+
+    private void start(final Job job) {
+        final DownloadingAdapter<?> adapter = DownloadingAdapter.adapterOf(this.CONTEXT, job.SNIPPET, job.DESTINATION);
+        adapter.setThrottle(this.THROTTLE);
+        adapter.setDownloadListener(new DownloadingAdapter.DownloadListener() {
+
+            @Override
+            public void onProgress(long downloaded, long total) {
+                job.onProgress(downloaded, total);
+                notifyChanged(job);
+            }
+
+            @Override
+            public void onFinished(File destination) {
+                onJobEnded(job, State.FINISHED);
+            }
+
+            @Override
+            public void onFailed(Exception cause) {
+
+                // A job paused for a user job only yields, so it goes back to the queue whatever the pause broke.
+                onJobEnded(job, job.paused ? State.QUEUED : State.FAILED);
+            }
+
+            @Override
+            public void onCancelled() {
+                onJobEnded(job, State.QUEUED);
+            }
+        });
+
+        job.adapter = adapter;
+        job.state = State.RUNNING;
+        job.sampledAt = 0;
+        this.notifyChanged(job);
+        adapter.downloadMusic();
+    }
+
+    private Job newJob(final MusicSnippet snippet, final File destination, final Priority priority) {
+        final String host = DownloadingAdapter.adapterOf(this.CONTEXT, snippet, destination).getHost();
+        return new Job(snippet, destination, priority, host);
+    }
+
+    private void onJobEnded(final Job job, final State state) {
+        job.adapter = null;
+        job.paused = false;
+        job.state = state;
+        job.throughput = 0;
+        this.save();
+        this.notifyChanged(job);
+        this.schedule();
+    }
+
+    private void notifyChanged(final Job job) {
+        for (final JobListener listener : this.LISTENERS) listener.onJobChanged(job);
+    }
+
+    /**
+     * Writes jobs not finished yet to disk in background.
+     */
+    private void save() {
+        final JSONArray array = new JSONArray();
+        try {
+            for (final Job job : this.JOBS) {
+                if (job.state == State.FINISHED || job.state == State.FAILED) continue;
+                final JSONObject snippet = SnippetCodec.toJSON(job.SNIPPET);
+                if (snippet == null) continue;
+                array.put(new JSONObject()
+                        .put("snippet", snippet)
+                        .put("destination", job.DESTINATION.getPath())
+                        .put("priority", job.PRIORITY.name()));
+            }
+        } catch (JSONException e) {
+            Log.w(String.format("%s JSONException", TAG), e);
+            return;
+        }
+
+        final File file = new File(this.CONTEXT.getFilesDir(), QUEUE_FILE_NAME);
+        final byte[] bytes = array.toString().getBytes(StandardCharsets.UTF_8);
+        this.DISK_EXECUTOR.execute(() -> {
+
+            // Write to a temporary file first, so that a broken queue is never read.
+            final File temporary = new File(file.getPath() + ".tmp");
+            try (OutputStream out = new FileOutputStream(temporary)) {
+                out.write(bytes);
+            } catch (IOException e) {
+                Log.w(String.format("%s Queue can not be stored", TAG), e);
+                return;
+            }
+            if (!temporary.renameTo(file)) Log.w(TAG, "Queue can not be stored");
+        });
+    }
+
+    /**
+     * Reads jobs persisted by the previous launch.
+     */
+    private List<Job> load() {
+        final List<Job> jobs = new ArrayList<>();
+        final File file = new File(this.CONTEXT.getFilesDir(), QUEUE_FILE_NAME);
+        if (!file.exists()) return jobs;
+
+        try (InputStream in = new FileInputStream(file)) {
+            final byte[] bytes = new byte[(int) file.length()];
+            int offset = 0, n;
+            while (offset < bytes.length && (n = in.read(bytes, offset, bytes.length - offset)) != -1) offset += n;
+
+            final JSONArray array = new JSONArray(new String(bytes, 0, offset, StandardCharsets.UTF_8));
+            for (int i = 0; i < array.length(); i++) {
+                final JSONObject json = array.getJSONObject(i);
+                final MusicSnippet snippet = SnippetCodec.fromJSON(json.getJSONObject("snippet"));
+                if (snippet == null) continue;
+                jobs.add(this.newJob(snippet, new File(json.getString("destination")), Priority.valueOf(json.getString("priority"))));
+            }
+        } catch (IOException | JSONException | IllegalArgumentException e) {
+            Log.w(String.format("%s Broken queue", TAG), e);
+        }
+        return jobs;
+    }
+
+    /**
+     * A download of a music file.
+     */
+    public static final class Job {
+
+        private final MusicSnippet SNIPPET;
+        private final File DESTINATION;
+        private final Priority PRIORITY;
+
+        /** Host which serves the music source. */
+        private final String HOST;
+
+        private State state = State.QUEUED;
+
+        /** Adapter of the download in progress, or null if it is not running. */
+        private DownloadingAdapter<?> adapter;
+
+        /** Whether the job is paused for a user job. */
+        private boolean paused;
+
+        /** Bytes downloaded and the size of the file, or -1 if it is unknown. */
+        private long downloaded, total = -1;
+
+        /** The last sample of throughput. */
+        private long sampledAt, sampledBytes;
+
+        /** Moving average of throughput in bytes per second. */
+        private double throughput;
+
+        private Job(final MusicSnippet snippet, final File destination, final Priority priority, final String host) {
+            this.SNIPPET = snippet;
+            this.DESTINATION = destination;
+            this.PRIORITY = priority;
+            this.HOST = host;
+        }
+
+        private void onProgress(final long downloaded, final long total) {
+            final long now = System.currentTimeMillis();
+            if (this.sampledAt == 0) {
+                this.sampledAt = now;
+                this.sampledBytes = downloaded;
+            } else if (now - this.sampledAt >= SAMPLE_INTERVAL_MILLIS) {
+                final double sample = (downloaded - this.sampledBytes) * 1000.0 / (now - this.sampledAt);
+                this.throughput = this.throughput == 0 ? sample : SAMPLE_WEIGHT * sample + (1 - SAMPLE_WEIGHT) * this.throughput;
+                this.sampledAt = now;
+                this.sampledBytes = downloaded;
+            }
+            this.downloaded = downloaded;
+            this.total = total;
+        }
+
+        @NonNull
+        public MusicSnippet getSNIPPET() {
+            return this.SNIPPET;
+        }
+
+        @NonNull
+        public File getDESTINATION() {
+            return this.DESTINATION;
+        }
+
+        @NonNull
+        public Priority getPRIORITY() {
+            return this.PRIORITY;
+        }
+
+        @NonNull
+        public State getState() {
+            return this.state;
+        }
+
+        public long getDownloaded() {
+            return this.downloaded;
+        }
+
+        public long getTotal() {
+            return this.total;
+        }
+
+        /**
+         * @return moving average of throughput in bytes per second, or 0 if it is not measured yet
+         */
+        public double getThroughput() {
+            return this.throughput;
+        }
+
+        /**
+         * @return estimated seconds until the download finishes, or -1 if it can not be estimated
+         */
+        public long getETASeconds() {
+            if (this.state != State.RUNNING || this.total < 0 || this.throughput <= 0) return -1;
+            return (long) Math.ceil((this.total - this.downloaded) / this.throughput);
+        }
+    }
+}
@@ -1,13 +1,31 @@
 package tech.tenamin.unisound.core.api;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
 
 import androidx.annotation.NonNull;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import tech.tenamin.unisound.core.api.http.HttpStatusException;
+import tech.tenamin.unisound.core.api.impl.SoundCloud;
+import tech.tenamin.unisound.core.api.impl.SoundCloudSnippet;
+import tech.tenamin.unisound.core.api.impl.YouTube;
+import tech.tenamin.unisound.core.api.impl.YouTubeSnippet;
+import tech.tenamin.unisound.core.api.util.ChunkedDownloader;
+import tech.tenamin.unisound.core.api.util.TokenBucket;
+import tech.tenamin.unisound.core.cache.StreamCache;
 
 /**
  * Adapter for downloading music files from data of music snippet.
+ * The music source is downloaded over several connections, and an interrupted download resumes where it stopped.
  *
  * @author tenamen
  * @since 2023/08/17.
@@ -15,18 +33,66 @@ import java.io.File;
  */
 public abstract class DownloadingAdapter<T extends MusicSnippet> extends APIAdapter {
 
+    /** Tag for Android logging system. */
+    private static final String TAG = "Downloading Adapter";
+
+    /** The number of connections used by a download. */
+    private static final int CONNECTIONS = 4;
+
+    /** Executor which runs downloads. */
+    private static final ExecutorService DOWNLOAD_EXECUTOR = Executors.newCachedThreadPool();
+
+    /** Handler to call back on the main thread. */
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
     /** Music snippet which is going to be downloaded. */
     private final T SNIPPET;
 
     /** The destination file which the music file is going to be downloaded. b*/
     private final File DESTINATION;
 
+    /** Receiver of the progress and the result. */
+    private DownloadListener listener;
+
+    /** Downloader of the download in progress. */
+    private volatile ChunkedDownloader downloader;
+
+    /** Incremented on each run of downloadMusic(), so that a cancelled run does not touch the state of a newer one. */
+    private int generation = 0;
+
+    /** Limit of bandwidth shared with other downloads, or null for no limit. */
+    private TokenBucket throttle;
+
     public DownloadingAdapter(@NonNull final Context context, @NonNull final T snippet, @NonNull final File destination) {
         super(context);
         this.SNIPPET = snippet;
         this.DESTINATION = destination;
     }
 
+    /**
+     * Receiver of the progress and the result of a download.
+     * Methods are called on the main thread.
+     */
+    public interface DownloadListener {
+
+        /**
+         * Called as the music file is downloaded.
+         *
+         * @param downloaded bytes downloaded, including ones of the previous tries
+         * @param total size of the music file, or -1 if it is unknown
+         */
+        default void onProgress(long downloaded, long total) { }
+
+        void onFinished(File destination);
+
+        void onFailed(Exception cause);
+
+        /**
+         * Called when the download stops by cancel(). The progress is kept, so downloading again resumes it.
+         */
+        default void onCancelled() { }
+    }
+
     @NonNull
     public final T getSNIPPET() {
         return this.SNIPPET;
@@ -37,8 +103,147 @@ public abstract class DownloadingAdapter<T extends MusicSnippet> extends APIAdap
         return this.DESTINATION;
     }
 
+    public final void setDownloadListener(final DownloadListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Sets the bandwidth limit of the download.
+     *
+     * @param throttle token bucket shared with other downloads, or null for no limit
+     */
+    public final void setThrottle(final TokenBucket throttle) {
+        this.throttle = throttle;
+    }
+
+    /**
+     * Returns the host which serves the music source, which limits concurrent downloads per host.
+     *
+     * @return name of the host
+     */
+    @NonNull
+    public abstract String getHost();
+
+    /**
+     * Returns the key of the resolved music source of the snippet in StreamCache.
+     *
+     * @return cache key of the music source
+     */
+    @NonNull
+    protected abstract String getStreamKey();
+
+    /**
+     * Fetches the URL of the music source. This blocks until it is fetched.
+     *
+     * @return URL of the music source
+     * @throws Exception if the music source can not be fetched
+     */
+    @NonNull
+    protected abstract String fetchStream() throws Exception;
+
+    /**
+     * Execute downloading the music file in background.
+     * If the previous download of the same destination was interrupted, it is resumed.
+     */
+    public final void downloadMusic() {
+
+        final int run;
+        synchronized (this) {
+            if (this.connecting) {
+                Log.w(TAG, "Already connecting!");
+                return;
+            }
+            this.connecting = true;
+            run = ++this.generation;
+        }
+
+        DOWNLOAD_EXECUTOR.execute(() -> {
+            try {
+                this.download(run);
+                this.post(listener -> listener.onFinished(this.DESTINATION));
+            } catch (CancellationException e) {
+                Log.i(TAG, "Download is cancelled");
+                this.post(DownloadListener::onCancelled);
+            } catch (Exception e) {
+                Log.w(String.format("%s Download failed", TAG), e);
+                this.post(listener -> listener.onFailed(e));
+            } finally {
+                synchronized (this) {
+                    if (this.generation == run) {
+                        this.downloader = null;
+                        this.connecting = false;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Downloads the music file with the cached source.
+     * Signed sources expire, so a rejected cached source is resolved again and the download resumes with it.
+     */
+    private void download(final int run) throws Exception {
+        final StreamCache cache = StreamCache.getInstance(this.CONTEXT);
+        final String cached = cache.get(this.getStreamKey());
+
+        if (cached != null) {
+            try {
+                this.downloadFrom(cached, run);
+                return;
+            } catch (IOException e) {
+
+                // Only a source rejected by the server is resolved again, which takes seconds.
+                synchronized (this) {
+                    if (!this.connecting || this.generation != run) throw new CancellationException("Cancelled");
+                }
+                if (!(e instanceof HttpStatusException)) throw e;
+                Log.w(String.format("%s Cached source is rejected", TAG), e);
+                cache.invalidate(this.getStreamKey());
+            }
+        }
+
+        final String url = this.fetchStream();
+        cache.put(this.getStreamKey(), url);
+        this.downloadFrom(url, run);
+    }
+
+    private void downloadFrom(final String url, final int run) throws IOException {
+        final ChunkedDownloader downloader = new ChunkedDownloader(url, this.DESTINATION, CONNECTIONS).setThrottle(this.throttle);
+        synchronized (this) {
+            if (this.generation != run || !this.connecting) throw new CancellationException("Cancelled");
+            this.downloader = downloader;
+        }
+
+        downloader.download((downloaded, total) -> this.post(listener -> listener.onProgress(downloaded, total)));
+    }
+
+    private void post(final Consumer<DownloadListener> callback) {
+        MAIN_HANDLER.post(() -> {
+            if (this.listener != null) callback.accept(this.listener);
+        });
+    }
+
+    @Override
+    protected void onCancelled() {
+        final ChunkedDownloader downloader = this.downloader;
+        if (downloader != null) downloader.cancel();
+    }
+
     /**
-     * Execute
+     * Creates a DownloadingAdapter based on the given MusicSnippet.
+     *
+     * @param context The Context used to create the DownloadingAdapter.
+     * @param snippet The MusicSnippet used to determine the type of DownloadingAdapter to create.
+     * @param destination The file which the music is downloaded to.
+     * @return A DownloadingAdapter based on the given MusicSnippet.
      */
-    public abstract void downloadMusic();
+    public static DownloadingAdapter<?> adapterOf(final Context context, final MusicSnippet snippet, final File destination) {
+        if (snippet instanceof YouTubeSnippet) {
+            return new YouTube.YouTubeDownloadingAdapter(context, (YouTubeSnippet) snippet, destination);
+        } else if (snippet instanceof SoundCloudSnippet) {
+            return new SoundCloud.SoundCloudDownloadingAdapter(context, (SoundCloudSnippet) snippet, destination);
+        } else {
+            throw new RuntimeException(new Exception(String.format("DownloadingAdapter.adapterOf: Unsupported snippet %s", snippet)));
+        }
+    }
 }
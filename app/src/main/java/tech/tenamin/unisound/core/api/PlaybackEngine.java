@@ -0,0 +1,330 @@
+package tech.tenamin.unisound.core.api;
+
+import android.media.AudioManager;
+import android.media.MediaPlayer;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import tech.tenamin.unisound.core.cache.StreamCache;
+import tech.tenamin.unisound.core.cache.StreamProxy;
+import tech.tenamin.unisound.core.history.HistoryLog;
+import tech.tenamin.unisound.core.index.SnippetIndex;
+
+/**
+ * Plays a queue of tracks with two MediaPlayers.
+ * While the current track plays, the next one is resolved and prepared on the other player,
+ * and it is handed to the current one through setNextMediaPlayer(), so the next track starts without a gap.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public final class PlaybackEngine {
+
+    /** Tag for Android logging system. */
+    private static final String TAG = "Playback Engine";
+
+    /** The instance shared in the process. */
+    private static PlaybackEngine instance = null;
+
+    /** Handler to run callbacks on the main thread, where the players deliver their events. */
+    private final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    /** Executor which resolves music sources of next tracks. */
+    private final ExecutorService RESOLVER = Executors.newSingleThreadExecutor();
+
+    /** Tracks played after the current one. */
+    private final Deque<PlayingAdapter<?>> TRACKS = new ArrayDeque<>();
+
+    /** The player of the current track, and the player preparing the next track. */
+    private MediaPlayer current = new MediaPlayer(), next = new MediaPlayer();
+
+    /** The current track, and the next track being prepared. */
+    private PlayingAdapter<?> currentTrack, nextTrack;
+
+    /** Whether the next player is prepared and handed to the current player. */
+    private boolean nextReady;
+
+    /** Whether the current player is prepared, so that its duration and position can be queried. */
+    private boolean prepared;
+
+    /** Whether the current player is preparing, which buffers the music source over the network. */
+    private volatile boolean preparing;
+
+    /** The time when the current track started playing, or 0 if it is not playing or already recorded. */
+    private long playedAt;
+
+    /** Incremented each time the next track is changed, so that a stale preparation is dropped. */
+    private int generation;
+
+    private PlaybackEngine() { }
+
+    @NonNull
+    public static synchronized PlaybackEngine getInstance() {
+        if (instance == null) instance = new PlaybackEngine();
+        return instance;
+    }
+
+    /**
+     * @return the player of the current track, which is used to control and show the playback
+     */
+    @NonNull
+    public synchronized MediaPlayer getPlayer() {
+        return this.current;
+    }
+
+    /**
+     * Returns whether the current player is prepared.
+     * While it is idle or preparing, as it is during a start or a handoff, it has no duration.
+     *
+     * @return true if the current player is prepared, playing, paused or completed
+     */
+    public synchronized boolean isPrepared() {
+        return this.prepared;
+    }
+
+    /**
+     * Returns whether music is streamed now, which downloads in background should yield bandwidth to.
+     *
+     * @return true if the current track is preparing or playing
+     */
+    public boolean isStreaming() {
+        if (this.preparing) return true;
+        try {
+            return this.getPlayer().isPlaying();
+        } catch (IllegalStateException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Replaces tracks played after the current one.
+     * The next track is prepared again if the current one is already playing.
+     *
+     * @param tracks tracks in the order of playback
+     */
+    public synchronized void setQueue(@NonNull final List<? extends PlayingAdapter<?>> tracks) {
+        this.dropNext();
+        this.TRACKS.clear();
+        this.TRACKS.addAll(tracks);
+        if (this.currentTrack != null) this.prepareNext();
+    }
+
+    /**
+     * Plays a track from the beginning on the current player.
+     * The next track is prepared after this one is prepared.
+     *
+     * @param track the track to be played
+     * @param url URL of the music source
+     * @param onError called if the player can not play the source, or null to ignore errors
+     */
+    synchronized void start(
+            @NonNull final PlayingAdapter<?> track,
+            @NonNull final String url,
+            @Nullable final MediaPlayer.OnErrorListener onError
+    ) {
+        this.recordCurrent(positionOf(this.current));
+        this.dropNext();
+
+        // A track replaced before it was prepared never starts, so its trace ends here.
+        // The same track started again with a fresh source keeps its trace.
+        if (this.currentTrack != null && this.currentTrack != track && !this.prepared) this.currentTrack.failTrace("superseded");
+        this.currentTrack = track;
+        this.prepared = false;
+
+        this.current.reset();
+        this.current.setAudioStreamType(AudioManager.STREAM_MUSIC);
+        this.current.setOnErrorListener((player, what, extra) -> {
+            this.preparing = false;
+            synchronized (this) {
+                if (this.currentTrack == track) this.prepared = false;
+            }
+            final boolean handled = onError != null && onError.onError(player, what, extra);
+            if (!handled) track.failTrace(String.format("MediaPlayer error (%d, %d)", what, extra));
+            return handled;
+        });
+        this.current.setOnCompletionListener(this::onCompletion);
+        this.preparing = true;
+        this.current.setOnPreparedListener(player -> {
+            this.preparing = false;
+            track.stage("start");
+            player.start();
+            track.endTrace();
+            synchronized (this) {
+                if (this.currentTrack != track) return;
+                this.prepared = true;
+                this.playedAt = System.currentTimeMillis();
+                this.prepareNext();
+            }
+        });
+
+        try {
+            track.stage("setDataSource");
+            this.current.setDataSource(proxied(track, url));
+        } catch (IOException e) {
+            Log.w(String.format("%s IOException", TAG), e);
+            track.failTrace(e.toString());
+            throw new RuntimeException(e);
+        }
+
+        track.stage("prepareAsync");
+        this.current.prepareAsync();
+    }
+
+    /**
+     * Resolves the first track of the queue in background, and prepares it on the next player.
+     */
+    private void prepareNext() {
+        if (this.nextTrack != null || this.TRACKS.isEmpty()) return;
+
+        final PlayingAdapter<?> track = this.TRACKS.pollFirst();
+        final int generation = ++this.generation;
+        this.nextTrack = track;
+
+        this.RESOLVER.execute(() -> {
+            final String url;
+            try {
+                url = track.resolveStream();
+            } catch (Exception e) {
+                Log.w(String.format("%s Next track can not be resolved", TAG), e);
+                return;
+            }
+            this.MAIN_HANDLER.post(() -> this.prepareNext(track, url, generation));
+        });
+    }
+
+    /**
+     * Prepares the resolved next track and hands it to the current player.
+     *
+     * @param track the next track
+     * @param url URL of the music source
+     * @param generation generation when the preparation started
+     */
+    private synchronized void prepareNext(final PlayingAdapter<?> track, final String url, final int generation) {
+        if (generation != this.generation) return;
+
+        this.next.reset();
+        this.next.setAudioStreamType(AudioManager.STREAM_MUSIC);
+        this.next.setOnCompletionListener(this::onCompletion);
+        this.next.setOnPreparedListener(player -> {
+            synchronized (this) {
+                if (generation != this.generation) return;
+                this.current.setNextMediaPlayer(player);
+                this.nextReady = true;
+            }
+        });
+
+        // A rejected source is dropped from the cache, and the track is resolved again when it is reached.
+        this.next.setOnErrorListener((player, what, extra) -> {
+            Log.w(TAG, String.format("Next track can not be prepared (%d, %d)", what, extra));
+            StreamCache.getInstance(track.APP_VIEW).invalidate(track.getStreamKey());
+            synchronized (this) {
+                if (generation == this.generation) this.nextReady = false;
+            }
+            return true;
+        });
+
+        try {
+            this.next.setDataSource(proxied(track, url));
+        } catch (IOException e) {
+            Log.w(String.format("%s IOException", TAG), e);
+            return;
+        }
+
+        this.next.prepareAsync();
+    }
+
+    /**
+     * Routes a music source through the caching proxy, so replays and seeks into heard parts are read from disk.
+     *
+     * @param track the track of the source
+     * @param url URL of the music source
+     * @return URL which the player reads
+     */
+    private static String proxied(final PlayingAdapter<?> track, final String url) {
+        return StreamProxy.getInstance(track.APP_VIEW).urlOf(track.getStreamKey(), url);
+    }
+
+    /**
+     * Called when a player finishes its track.
+     * If the next player is handed, it is already playing, so the players are swapped.
+     * Otherwise the next track is played the usual way.
+     *
+     * @param finished the player which finished
+     */
+    private synchronized void onCompletion(final MediaPlayer finished) {
+        if (finished != this.current) return;
+        this.recordCurrent(positionOf(finished));
+
+        final PlayingAdapter<?> following = this.nextTrack;
+        if (following == null) return;
+
+        // The next track is not prepared in time, so it is played with a gap.
+        if (!this.nextReady) {
+            this.dropNext();
+            this.TRACKS.remove(following);
+            new Thread(following::play).start();
+            return;
+        }
+
+        // Swap the players. The finished one is reused to prepare the track after next.
+        // The handed player is already prepared, as it is playing.
+        this.current = this.next;
+        this.next = finished;
+        this.next.reset();
+        this.currentTrack = following;
+        this.prepared = true;
+        this.playedAt = System.currentTimeMillis();
+        this.nextTrack = null;
+        this.nextReady = false;
+        this.generation++;
+
+        following.onHandedOff();
+        this.prepareNext();
+    }
+
+    /**
+     * Records the current track in the history, once per play.
+     *
+     * @param listenedMillis how long the track was listened
+     */
+    private void recordCurrent(final long listenedMillis) {
+        if (this.currentTrack == null || this.playedAt == 0) return;
+        HistoryLog.getInstance(this.currentTrack.APP_VIEW).record(this.currentTrack.getSNIPPET(), this.playedAt, listenedMillis);
+        SnippetIndex.getInstance(this.currentTrack.APP_VIEW).add(Collections.singletonList(this.currentTrack.getSNIPPET()), SnippetIndex.Source.PLAYED);
+        this.playedAt = 0;
+    }
+
+    private static long positionOf(final MediaPlayer player) {
+        try {
+            return player.getCurrentPosition();
+        } catch (IllegalStateException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Stops preparing the next track, and takes it back from the current player.
+     * The dropped track goes back to the head of the queue.
+     */
+    private void dropNext() {
+        this.generation++;
+        if (this.nextTrack != null) this.TRACKS.addFirst(this.nextTrack);
+        this.nextTrack = null;
+
+        if (this.nextReady) this.current.setNextMediaPlayer(null);
+        this.nextReady = false;
+        this.next.reset();
+    }
+}
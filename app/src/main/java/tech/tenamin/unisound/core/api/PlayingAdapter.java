@@ -2,16 +2,22 @@ package tech.tenamin.unisound.core.api;
 
 import android.media.MediaPlayer;
 import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
 import android.view.View;
 import android.widget.ImageView;
 import android.widget.SeekBar;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
 
+import com.android.volley.Request;
 import com.android.volley.RequestQueue;
-import com.android.volley.toolbox.Volley;
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.request.RequestOptions;
 
@@ -19,8 +25,13 @@ import jp.wasabeef.glide.transformations.BlurTransformation;
 import tech.tenamin.unisound.MainActivity;
 import tech.tenamin.unisound.R;
 import tech.tenamin.unisound.core.api.impl.SoundCloud;
+import tech.tenamin.unisound.core.api.impl.SoundCloudSnippet;
 import tech.tenamin.unisound.core.api.impl.YouTube;
+import tech.tenamin.unisound.core.api.impl.YouTubeSnippet;
+import tech.tenamin.unisound.core.api.util.NetworkEngine;
 import tech.tenamin.unisound.core.api.util.StringUtil;
+import tech.tenamin.unisound.core.cache.StreamCache;
+import tech.tenamin.unisound.core.trace.PlayTrace;
 
 /**
  * The snippet object contains information about music playback and methods to manipulate it (play(), stop(), etc..).
@@ -31,21 +42,31 @@ import tech.tenamin.unisound.core.api.util.StringUtil;
  */
 public abstract class PlayingAdapter <T extends MusicSnippet> {
 
+    /** Tag for Android logging system. */
+    private static final String TAG = "Playing Adapter";
+
     /** MainActivity instance used to control views of it. */
     protected final AppCompatActivity APP_VIEW;
 
-    /** Request queue used to fetch the information necessary to play music. */
-    protected final RequestQueue QUEUE;
+    /** Tag of requests to play music. Only the latest playback needs its requests. */
+    private static final Object PLAYING_TAG = new Object();
 
     /** The data that forms the basis of the music to be played. */
     protected final T SNIPPET;
 
-    /** The MediaPlayer used to play music. */
-    protected static final MediaPlayer player = new MediaPlayer();
+    /** Runs the seek bar synchronization on the main thread. */
+    private static final Handler SEEK_BAR_HANDLER = new Handler(Looper.getMainLooper());
+
+    /** Synchronizes the seek bar of the activity showing the playback card, or null before a card is shown. */
+    @Nullable
+    private static SeekBarUpdater seekBarUpdater = null;
+
+    /** Trace of the tap which plays this track, or null if it is not traced. */
+    @Nullable
+    private PlayTrace trace = null;
 
     protected PlayingAdapter(@NonNull final AppCompatActivity appView, @NonNull final T data) {
         this.APP_VIEW = appView;
-        this.QUEUE = Volley.newRequestQueue(appView);
         this.SNIPPET = data;
     }
 
@@ -73,61 +94,258 @@ public abstract class PlayingAdapter <T extends MusicSnippet> {
                 .apply(RequestOptions.bitmapTransform(new BlurTransformation(100, 3)))
                 .into(thumbnailView);
 
-        // Seek bar position synchronizes with playback time after each second.
-        final TextView currentPosition = this.APP_VIEW.findViewById(R.id.playing_position);
-        final SeekBar seekBar = this.APP_VIEW.findViewById(R.id.play_current_time);
-        this.APP_VIEW.runOnUiThread(new Runnable() {
-
-            private final Handler handler = new Handler();
-
-            @Override
-            public void run() {
-                final int seconds = player.getCurrentPosition() / 1000;
-                currentPosition.setText(
-                        String.format("%s/%s",
-                                StringUtil.secondsToMMSS(seconds),
-                                StringUtil.secondsToMMSS(player.getDuration() / 1000)
-                        )
-                );
-                seekBar.setProgress(seconds);
-                handler.postDelayed(this, 1000);
-            }
-        });
+        // Seek bar position synchronizes with playback time after each second, while this activity is started.
+        SeekBarUpdater.attach(this.APP_VIEW);
 
         // Allow users to return to the playback position by operating the seek bar.
+        final SeekBar seekBar = this.APP_VIEW.findViewById(R.id.play_current_time);
         seekBar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
 
             @Override
             public void onStopTrackingTouch(SeekBar seekBar) {
-                player.start();
+                if (PlaybackEngine.getInstance().isPrepared()) player().start();
             }
 
             @Override
             public void onStartTrackingTouch(SeekBar seekBar) {
-                player.pause();
+                if (PlaybackEngine.getInstance().isPrepared()) player().pause();
             }
 
             @Override
             public void onProgressChanged(SeekBar seekBar, int progress,boolean fromUser) {
-                if (fromUser) player.seekTo(progress * 1000);
+                if (fromUser && PlaybackEngine.getInstance().isPrepared()) player().seekTo(progress * 1000);
             }
         });
     }
 
+    /**
+     * Synchronizes the seek bar of an activity with the current player after each second.
+     * It runs from the start to the stop of the activity, and is dropped when the activity is destroyed,
+     * so that it neither holds the views of a destroyed activity nor runs in background.
+     * The views and the player are looked up each time, since the player changes when the next track is handed off.
+     * This is used on the main thread only.
+     */
+    private static final class SeekBarUpdater implements Runnable, LifecycleEventObserver {
+
+        /** The activity showing the playback card. */
+        private final AppCompatActivity ACTIVITY;
+
+        private SeekBarUpdater(@NonNull final AppCompatActivity activity) {
+            this.ACTIVITY = activity;
+        }
+
+        /**
+         * Synchronizes the seek bar of the activity, instead of the one of the previous activity.
+         * The updater starts at once if the activity is started.
+         *
+         * @param activity the activity showing the playback card
+         */
+        static void attach(@NonNull final AppCompatActivity activity) {
+            if (seekBarUpdater != null) {
+                if (seekBarUpdater.ACTIVITY == activity) return;
+                seekBarUpdater.detach();
+            }
+            seekBarUpdater = new SeekBarUpdater(activity);
+            activity.getLifecycle().addObserver(seekBarUpdater);
+        }
+
+        /** Stops the updater and forgets the activity. */
+        private void detach() {
+            SEEK_BAR_HANDLER.removeCallbacks(this);
+            this.ACTIVITY.getLifecycle().removeObserver(this);
+            if (seekBarUpdater == this) seekBarUpdater = null;
+        }
+
+        @Override
+        public void onStateChanged(@NonNull final LifecycleOwner source, @NonNull final Lifecycle.Event event) {
+            if (event == Lifecycle.Event.ON_START) {
+                SEEK_BAR_HANDLER.removeCallbacks(this);
+                SEEK_BAR_HANDLER.post(this);
+            } else if (event == Lifecycle.Event.ON_STOP) {
+                SEEK_BAR_HANDLER.removeCallbacks(this);
+            } else if (event == Lifecycle.Event.ON_DESTROY) {
+                this.detach();
+            }
+        }
+
+        @Override
+        public void run() {
+            SEEK_BAR_HANDLER.postDelayed(this, 1000);
+
+            // The player has no duration while it is idle or preparing, as it is during a handoff.
+            if (!PlaybackEngine.getInstance().isPrepared()) return;
+            final TextView currentPosition = this.ACTIVITY.findViewById(R.id.playing_position);
+            final SeekBar seekBar = this.ACTIVITY.findViewById(R.id.play_current_time);
+            if (currentPosition == null || seekBar == null) return;
+
+            final MediaPlayer player = player();
+            final int seconds = player.getCurrentPosition() / 1000;
+            final int duration = player.getDuration() / 1000;
+            currentPosition.setText(
+                    String.format("%s/%s",
+                            StringUtil.secondsToMMSS(seconds),
+                            StringUtil.secondsToMMSS(duration)
+                    )
+            );
+            seekBar.setMax(duration);
+            seekBar.setProgress(seconds);
+        }
+    }
+
+    /**
+     * @return the MediaPlayer playing the current track
+     */
+    protected static MediaPlayer player() {
+        return PlaybackEngine.getInstance().getPlayer();
+    }
+
+    /**
+     * Returns the request queue used to fetch the information necessary to play music, shared in the process.
+     * It is looked up each time, since the engine is started again after it is shut down.
+     *
+     * @return the shared request queue
+     */
+    protected final RequestQueue getQueue() {
+        return NetworkEngine.getInstance(this.APP_VIEW).getQueue();
+    }
+
+    /**
+     * Add a request to fetch music source to the queue.
+     * Requests of the previous playback are cancelled, and the request is sent ahead of other ones (search, etc.).
+     *
+     * @param request request to fetch music source
+     */
+    protected final void enqueue(final Request<?> request) {
+        final RequestQueue queue = this.getQueue();
+        queue.cancelAll(PLAYING_TAG);
+        request.setTag(PLAYING_TAG);
+        queue.add(request);
+    }
+
     public final T getSNIPPET() {
         return this.SNIPPET;
     }
 
+    /**
+     * Ends the current stage of the play trace and begins the next one.
+     *
+     * @param name name of the next stage
+     */
+    protected final void stage(@NonNull final String name) {
+        if (this.trace != null) this.trace.stage(name);
+    }
+
+    /** Ends the play trace, as the audio starts. */
+    final void endTrace() {
+        if (this.trace != null) this.trace.end();
+    }
+
+    /**
+     * Ends the play trace, as the play fails.
+     *
+     * @param reason why the play fails
+     */
+    protected final void failTrace(@NonNull final String reason) {
+        if (this.trace != null) this.trace.fail(reason);
+    }
+
+    /**
+     * Returns the key of the resolved music source of the snippet in StreamCache.
+     *
+     * @return cache key of the music source
+     */
+    @NonNull
+    protected abstract String getStreamKey();
+
+    /**
+     * Fetches the URL of the music source. This blocks until it is fetched, so it is called on a background thread.
+     *
+     * @return URL of the music source
+     * @throws Exception if the music source can not be fetched
+     */
+    @NonNull
+    protected abstract String fetchStream() throws Exception;
+
+    /**
+     * Returns the music source resolved before, which is still usable.
+     *
+     * @return URL of the music source, or null if it must be resolved
+     */
+    @Nullable
+    protected final String getCachedStream() {
+        return StreamCache.getInstance(this.APP_VIEW).get(this.getStreamKey());
+    }
+
+    /**
+     * Returns the music source resolved before for playback.
+     * If a speculative resolution of the snippet is in progress, this waits for it instead of resolving twice.
+     *
+     * @return URL of the music source, or null if it must be resolved
+     */
+    @Nullable
+    protected final String getResolvedStream() {
+        final StreamResolver resolver = StreamResolver.getInstance();
+        resolver.await(this.getStreamKey());
+
+        final String url = this.getCachedStream();
+        resolver.onPlay(this.getStreamKey(), url != null);
+        return url;
+    }
+
+    /**
+     * Resolves the music source without playing it, and caches it.
+     * This blocks until it is resolved, so it is called on a background thread.
+     *
+     * @return URL of the music source
+     * @throws Exception if the music source can not be fetched
+     */
+    @NonNull
+    public final String resolveStream() throws Exception {
+        final String cached = this.getCachedStream();
+        if (cached != null) return cached;
+
+        final String url = this.fetchStream();
+        StreamCache.getInstance(this.APP_VIEW).put(this.getStreamKey(), url);
+        return url;
+    }
+
+    /**
+     * Set the music source to the player and start preparing it.
+     * A newly resolved source is cached. If a cached source is rejected by the server, it is dropped and resolved again.
+     *
+     * @param url URL of the music source
+     * @param cached whether the URL is taken from the cache
+     */
+    protected final void prepare(@NonNull final String url, final boolean cached) {
+        final StreamCache cache = StreamCache.getInstance(this.APP_VIEW);
+        if (!cached) cache.put(this.getStreamKey(), url);
+
+        PlaybackEngine.getInstance().start(this, url, !cached ? null : (mp, what, extra) -> {
+            Log.w(TAG, String.format("Cached source is rejected (%d, %d)", what, extra));
+            cache.invalidate(this.getStreamKey());
+            new Thread(this::play).start();
+            return true;
+        });
+    }
+
+    /**
+     * Called when the engine starts this track right after the previous one, without play().
+     * This is called on the main thread.
+     */
+    void onHandedOff() {
+        MainActivity.currentMusic = this.SNIPPET;
+        this.setPlaybackCardAppearance();
+        this.setPlayButtonAppearance();
+    }
+
     /** Plays music from the beginning. */
     public void play() {
         MainActivity.currentMusic = this.SNIPPET;
+        this.APP_VIEW.runOnUiThread(this::setPlayButtonAppearance);
+    }
 
-        player.setOnPreparedListener((v) -> {
-            final SeekBar seekBar = this.APP_VIEW.findViewById(R.id.play_current_time);
-            seekBar.setMax(player.getDuration() / 1000);
-            v.start();
-        });
-
+    /** Makes the play button pause this track. */
+    private void setPlayButtonAppearance() {
         final ImageView imagePlayButton = this.APP_VIEW.findViewById(R.id.play_button);
         imagePlayButton.setImageResource(R.drawable.ic_pause_24);
         imagePlayButton.setOnClickListener(view -> {
@@ -137,6 +355,7 @@ public abstract class PlayingAdapter <T extends MusicSnippet> {
 
     /** Stops the currently playing music. */
     public void pause() {
+        final MediaPlayer player = player();
         if (!player.isPlaying()) return;
         player.pause();
 
@@ -153,7 +372,8 @@ public abstract class PlayingAdapter <T extends MusicSnippet> {
 
     /** Stops the currently playing music and plays it again from the beginning. */
     public void replay() {
-        if (player.isPlaying()) player.stop();
+        final MediaPlayer player = player();
+        player.seekTo(0);
         player.start();
     }
 
@@ -165,10 +385,31 @@ public abstract class PlayingAdapter <T extends MusicSnippet> {
      * @return A PlayingAdapter based on the given MusicSnippet and Context.
      */
     public static PlayingAdapter<?> adapterOf(final AppCompatActivity context, final MusicSnippet snippet) {
-        if (snippet instanceof YouTube.YouTubeSnippet) {
-            return new YouTube.YouTubePlayingAdapter(context, (YouTube.YouTubeSnippet) snippet);
-        } else if (snippet instanceof SoundCloud.SoundCloudSnippet) {
-            return new SoundCloud.SoundCloudPlayingAdapter(context, (SoundCloud.SoundCloudSnippet) snippet);
+        return adapterOf(context, snippet, null);
+    }
+
+    /**
+     * Creates a PlayingAdapter which writes the stages of its play to the given trace.
+     * The dispatch stage begins here, and ends when play() runs on its thread.
+     *
+     * @param context The Context used to create the PlayingAdapter.
+     * @param snippet The MusicSnippet used to determine the type of PlayingAdapter to create.
+     * @param trace The trace of the tap, or null not to trace the play.
+     * @return A PlayingAdapter based on the given MusicSnippet and Context.
+     */
+    public static PlayingAdapter<?> adapterOf(final AppCompatActivity context, final MusicSnippet snippet, @Nullable final PlayTrace trace) {
+        if (trace != null) trace.stage("adapterOf");
+        final PlayingAdapter<?> adapter = newAdapter(context, snippet);
+        adapter.trace = trace;
+        adapter.stage("dispatch");
+        return adapter;
+    }
+
+    private static PlayingAdapter<?> newAdapter(final AppCompatActivity context, final MusicSnippet snippet) {
+        if (snippet instanceof YouTubeSnippet) {
+            return new YouTube.YouTubePlayingAdapter(context, (YouTubeSnippet) snippet);
+        } else if (snippet instanceof SoundCloudSnippet) {
+            return new SoundCloud.SoundCloudPlayingAdapter(context, (SoundCloudSnippet) snippet);
         } else {
             throw new RuntimeException(new Exception(String.format("PlayingAdapter.adapterOf: Unsupported snippet %s", snippet)));
         }
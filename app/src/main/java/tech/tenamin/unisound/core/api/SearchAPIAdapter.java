@@ -6,7 +6,11 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import tech.tenamin.unisound.core.cache.SearchCache;
 
 /**
  * API adapter to search items.
@@ -32,6 +36,15 @@ public abstract class SearchAPIAdapter<E extends MusicSnippet> extends APIAdapte
     /** List to store items of search result. */
     protected final List<E> SEARCH_RESULT = new ArrayList<>();
 
+    /** Completion of the search in progress, or null if not connecting. */
+    private CompletableFuture<List<E>> pending;
+
+    /** Cache key of the search in progress. */
+    private String pendingKey;
+
+    /** Whether this adapter only refreshes a stale cached page, without looking up the cache. */
+    private boolean revalidating;
+
     public SearchAPIAdapter(Context context) {
         super(context);
     }
@@ -45,38 +58,165 @@ public abstract class SearchAPIAdapter<E extends MusicSnippet> extends APIAdapte
      * Last keyword and search offset will be changed.
      *
      * @param KEYWORD search keyword
+     * @return completion of the search, which gives items of the fetched page on the main thread.
+     * If a search is already in progress, its completion is returned instead.
      */
-    public final void searchFromStart(@NonNull final String KEYWORD) {
+    public final CompletableFuture<List<E>> searchFromStart(@NonNull final String KEYWORD) {
 
-        if (this.connecting) {
-            Log.w(TAG, "Already connecting!");
-            return;
-        }
+        // Share the search in flight instead of sending the same request again.
+        if (this.connecting) return this.pending;
 
         this.searchOffset = 0;
         this.lastKeyword = KEYWORD;
-        this.connecting = true;
 
-        this.search(KEYWORD, this.searchOffset, true);
+        return this.start(KEYWORD, true);
     }
 
     /**
      * Search to next page.
+     *
+     * @return completion of the search, which gives items of the fetched page on the main thread.
+     * If a search is already in progress, its completion is returned instead.
      */
-    public final void searchNext() {
+    public final CompletableFuture<List<E>> searchNext() {
 
-        if (this.connecting) {
-            Log.w(TAG, "Already connecting!");
-            return;
-        }
+        // Share the search in flight instead of sending the same request again.
+        if (this.connecting) return this.pending;
 
+        return this.start(this.lastKeyword, false);
+    }
+
+    /**
+     * Start connecting and create the completion of the search.
+     *
+     * @param KEYWORD search keyword
+     * @param FROM_START whether to search from the first position
+     * @return completion of the search
+     */
+    private CompletableFuture<List<E>> start(final String KEYWORD, final boolean FROM_START) {
+        final CompletableFuture<List<E>> future = new CompletableFuture<>();
+        this.pending = future;
         this.connecting = true;
-        this.search(this.lastKeyword, this.searchOffset, false);
+
+        // The first page has no cursor since it does not depend on previous searches.
+        final String cursor = FROM_START ? "" : this.getCursor();
+        final String key = SearchCache.keyOf(this.getClass().getName(), KEYWORD, cursor);
+        this.pendingKey = key;
+
+        if (this.revalidating) {
+            this.search(KEYWORD, this.searchOffset, FROM_START);
+            return future;
+        }
+
+        // Serve the page from cache if possible, otherwise search through API.
+        SearchCache.getInstance(this.CONTEXT).lookup(key, entry -> {
+
+            // The search may have been cancelled while looking up disk.
+            if (this.pending != future) return;
+
+            if (entry == null) {
+                this.search(KEYWORD, this.searchOffset, FROM_START);
+                return;
+            }
+
+            if (!entry.isFresh()) this.revalidate(KEYWORD, cursor, FROM_START);
+
+            if (entry.getNEXT_CURSOR() != null) this.restoreCursor(entry.getNEXT_CURSOR());
+            @SuppressWarnings("unchecked")
+            final List<E> page = (List<E>) entry.getPAGE();
+            this.finish(page);
+        });
+        return future;
     }
 
+    /**
+     * Refresh a stale cached page in background.
+     * A separate adapter fetches the page, so this adapter's result and cursor are not affected.
+     *
+     * @param KEYWORD search keyword
+     * @param CURSOR cursor of the page
+     * @param FROM_START whether the page is the first one
+     */
+    private void revalidate(final String KEYWORD, final String CURSOR, final boolean FROM_START) {
+        final SearchAPIAdapter<E> adapter = this.newInstance();
+        adapter.revalidating = true;
+        adapter.lastKeyword = KEYWORD;
+        if (!FROM_START) adapter.restoreCursor(CURSOR);
+        adapter.start(KEYWORD, FROM_START);
+    }
+
+    /**
+     * Store items of the fetched page and complete the search.
+     * Child classes call this when the response is parsed.
+     *
+     * @param PAGE items of the fetched page
+     */
+    protected final void onSearchFinished(@NonNull final List<E> PAGE) {
+        SearchCache.getInstance(this.CONTEXT).put(this.pendingKey, PAGE, this.getCursor());
+        this.finish(PAGE);
+    }
+
+    /**
+     * Store items of the page and complete the search.
+     *
+     * @param PAGE items of the page
+     */
+    private void finish(@NonNull final List<E> PAGE) {
+        this.SEARCH_RESULT.addAll(PAGE);
+        this.connecting = false;
+
+        final CompletableFuture<List<E>> future = this.pending;
+        this.pending = null;
+        if (future != null) future.complete(Collections.unmodifiableList(PAGE));
+    }
+
+    /**
+     * Complete the search with an error.
+     * Child classes call this when the request or parsing failed.
+     *
+     * @param cause the cause of failure
+     */
+    protected final void onSearchFailed(@NonNull final Exception cause) {
+        Log.w(String.format("%s Search failed", TAG), cause);
+        this.connecting = false;
+
+        final CompletableFuture<List<E>> future = this.pending;
+        this.pending = null;
+        if (future != null) future.completeExceptionally(cause);
+    }
+
+    @Override
+    protected void onCancelled() {
+        final CompletableFuture<List<E>> future = this.pending;
+        this.pending = null;
+        if (future != null) future.cancel(false);
+    }
+
+    /**
+     * Create an adapter of the same provider, which is used to search in background.
+     *
+     * @return a new adapter
+     */
+    protected abstract SearchAPIAdapter<E> newInstance();
+
+    /**
+     * Describe the position of next page, such as an offset or a continuation token.
+     * Search results are cached by this, and it is restored when a cached page is served.
+     *
+     * @return cursor of next page
+     */
+    protected abstract String getCursor();
+
+    /**
+     * Restore the position of next page described by getCursor().
+     *
+     * @param CURSOR cursor of next page
+     */
+    protected abstract void restoreCursor(@NonNull final String CURSOR);
+
     /**
      * Create a request to search items and add it to queue.
-     * The fetched date will be stored to SEARCH_RESULT.
+     * The fetched data must be passed to onSearchFinished(), or the error to onSearchFailed().
      *
      * @param KEYWORD search keyword
      * @param OFFSET search offset of start position
@@ -0,0 +1,255 @@
+package tech.tenamin.unisound.core.api;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.appcompat.app.AppCompatActivity;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Resolves music sources of snippets in background before they are tapped,
+ * so that play() finds them in StreamCache and starts at once.
+ * Resolution runs at background thread priority, within a number of concurrent resolutions
+ * and a budget of resolutions per hour. The latest requested snippet is resolved first.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public final class StreamResolver {
+
+    /** Tag for Android logging system. */
+    private static final String TAG = "Stream Resolver";
+
+    /** The window of the resolution budget. */
+    private static final long BUDGET_WINDOW_MILLIS = 60 * 60 * 1000L;
+
+    /** How long play() waits for a resolution already running for the same snippet. */
+    private static final long AWAIT_TIMEOUT_SECONDS = 20;
+
+    /** The instance shared in the process. */
+    private static final StreamResolver INSTANCE = new StreamResolver();
+
+    /** Executor which runs resolutions, the latest one first. */
+    private final ThreadPoolExecutor EXECUTOR;
+
+    /** Resolutions queued or running, keyed by the stream key of the snippet. */
+    private final Map<String, FutureTask<String>> IN_FLIGHT = new HashMap<>();
+
+    /** Stream keys resolved speculatively, which are not played yet. */
+    private final Set<String> RESOLVED = Collections.synchronizedSet(new HashSet<>());
+
+    /** Times when resolutions failed, keyed by the stream key, which are not submitted again in the budget window. */
+    private final Map<String, Long> FAILED = new HashMap<>();
+
+    /** Start times of resolutions in the budget window. */
+    private final Deque<Long> STARTED = new ArrayDeque<>();
+
+    /** Taps which found a speculative result, and taps which had to resolve by themselves. */
+    private final AtomicInteger HITS = new AtomicInteger(), MISSES = new AtomicInteger();
+
+    /** The number of speculative resolutions which returned a music source. */
+    private final AtomicInteger RESOLUTIONS = new AtomicInteger();
+
+    /** The number of resolutions allowed in the budget window. */
+    private volatile int budget = 30;
+
+    /** Whether to resolve on metered networks such as mobile data. */
+    private volatile boolean allowMetered = false;
+
+    private StreamResolver() {
+
+        // Queue works as a stack, so that the row the user just looked at goes first.
+        this.EXECUTOR = new ThreadPoolExecutor(2, 2, 30, TimeUnit.SECONDS, new LinkedBlockingDeque<Runnable>() {
+
+            @Override
+            public boolean offer(final Runnable runnable) {
+                return super.offerFirst(runnable);
+            }
+        }, runnable -> new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }, TAG));
+        this.EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    @NonNull
+    public static StreamResolver getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Sets the number of resolutions which run at the same time.
+     *
+     * @param concurrency the number of threads
+     */
+    public void setConcurrency(final int concurrency) {
+        if (concurrency > this.EXECUTOR.getMaximumPoolSize()) {
+            this.EXECUTOR.setMaximumPoolSize(concurrency);
+            this.EXECUTOR.setCorePoolSize(concurrency);
+        } else {
+            this.EXECUTOR.setCorePoolSize(concurrency);
+            this.EXECUTOR.setMaximumPoolSize(concurrency);
+        }
+    }
+
+    /**
+     * Sets the number of resolutions allowed in an hour.
+     *
+     * @param budget the number of resolutions
+     */
+    public void setBudget(final int budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Sets whether to resolve on metered networks.
+     *
+     * @param allowMetered true to resolve on metered networks
+     */
+    public void setAllowMetered(final boolean allowMetered) {
+        this.allowMetered = allowMetered;
+    }
+
+    /**
+     * Resolves music sources of snippets in background.
+     * Snippets already resolved, being resolved or recently failed are skipped, and nothing is started beyond the budget.
+     * The first snippet of the list is resolved first.
+     *
+     * @param appView activity used to create playing adapters
+     * @param snippets snippets likely to be played
+     */
+    public void speculate(@NonNull final AppCompatActivity appView, @NonNull final List<? extends MusicSnippet> snippets) {
+        if (!this.allowMetered && isMetered(appView)) return;
+
+        // Submitted in reverse, as the latest submitted one runs first.
+        for (int i = snippets.size() - 1; i >= 0; i--) {
+            this.submit(PlayingAdapter.adapterOf(appView, snippets.get(i)));
+        }
+    }
+
+    /**
+     * Submits a resolution of the snippet of the adapter unless it is resolved, being resolved, recently failed or out of budget.
+     *
+     * @param adapter playing adapter of the snippet
+     */
+    private synchronized void submit(final PlayingAdapter<?> adapter) {
+        final String key = adapter.getStreamKey();
+        if (this.IN_FLIGHT.containsKey(key) || adapter.getCachedStream() != null) return;
+
+        // Failed ones would fail again and spend the budget each time the list is updated.
+        final long now = System.currentTimeMillis();
+        this.FAILED.values().removeIf(failedAt -> now - failedAt > BUDGET_WINDOW_MILLIS);
+        if (this.FAILED.containsKey(key)) return;
+
+        while (!this.STARTED.isEmpty() && now - this.STARTED.peekFirst() > BUDGET_WINDOW_MILLIS) this.STARTED.pollFirst();
+        if (this.STARTED.size() >= this.budget) return;
+        this.STARTED.addLast(now);
+
+        final FutureTask<String> task = new FutureTask<String>(adapter::resolveStream) {
+
+            @Override
+            protected void done() {
+                synchronized (StreamResolver.this) {
+                    IN_FLIGHT.remove(key);
+                }
+                if (this.isCancelled()) return;
+
+                // Only a resolved source is counted, and can be a hit when it is played.
+                try {
+                    this.get();
+                    RESOLUTIONS.incrementAndGet();
+                    RESOLVED.add(key);
+                } catch (ExecutionException e) {
+                    Log.w(String.format("%s ExecutionException", TAG), e);
+                    synchronized (StreamResolver.this) {
+                        FAILED.put(key, System.currentTimeMillis());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        this.IN_FLIGHT.put(key, task);
+        this.EXECUTOR.execute(task);
+    }
+
+    /**
+     * Waits for a resolution of the stream key if one is queued or running.
+     * A queued one is taken out of the queue and run on the calling thread.
+     * This is called by play() on a background thread.
+     *
+     * @param key stream key of the snippet to be played
+     */
+    void await(@NonNull final String key) {
+        final FutureTask<String> task;
+        synchronized (this) {
+            task = this.IN_FLIGHT.get(key);
+        }
+        if (task == null) return;
+
+        if (this.EXECUTOR.remove(task)) task.run();
+        try {
+            task.get(AWAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            Log.w(String.format("%s Speculative resolution failed", TAG), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Records whether a tap found the music source already resolved.
+     *
+     * @param key stream key of the played snippet
+     * @param cached whether the music source was in the cache
+     */
+    void onPlay(@NonNull final String key, final boolean cached) {
+        final boolean speculated = this.RESOLVED.remove(key);
+        if (!cached) this.MISSES.incrementAndGet();
+        else if (speculated) this.HITS.incrementAndGet();
+    }
+
+    /**
+     * @return the number of taps which found a speculatively resolved music source
+     */
+    public int getHits() {
+        return this.HITS.get();
+    }
+
+    /**
+     * @return the number of taps which had to resolve the music source after the tap
+     */
+    public int getMisses() {
+        return this.MISSES.get();
+    }
+
+    /**
+     * @return the number of speculative resolutions which succeeded, including ones never played
+     */
+    public int getResolutions() {
+        return this.RESOLUTIONS.get();
+    }
+
+    private static boolean isMetered(final Context context) {
+        final ConnectivityManager manager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        return manager == null || manager.isActiveNetworkMetered();
+    }
+}
@@ -1,38 +1,46 @@
 package tech.tenamin.unisound.core.api.impl;
 
-import static java.lang.String.*;
-
-import android.annotation.SuppressLint;
 import android.content.Context;
-import android.media.AudioManager;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 
 import com.android.volley.Request;
 import com.android.volley.RequestQueue;
-import com.android.volley.toolbox.StringRequest;
-
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.RequestFuture;
 
+import java.io.File;
 import java.io.IOException;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-
-import tech.tenamin.unisound.MainActivity;
-import tech.tenamin.unisound.core.api.MusicSnippet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import tech.tenamin.unisound.core.api.DownloadingAdapter;
 import tech.tenamin.unisound.core.api.PlayingAdapter;
 import tech.tenamin.unisound.core.api.SearchAPIAdapter;
-import tech.tenamin.unisound.core.api.util.CustomStringRequest;
-import tech.tenamin.unisound.core.api.util.JSONUtil;
-import tech.tenamin.unisound.core.api.util.StringUtil;
+import tech.tenamin.unisound.core.api.http.HttpTransport;
+import tech.tenamin.unisound.core.api.http.UrlConnectionTransport;
+import tech.tenamin.unisound.core.api.util.StreamingRequest;
+import tech.tenamin.unisound.core.cache.StreamCache;
+import tech.tenamin.unisound.core.metrics.MetricsRegistry;
+import tech.tenamin.unisound.core.metrics.RequestMetrics;
+import tech.tenamin.unisound.core.metrics.RequestTimer;
 
 /**
  * A package of SoundCloud API.
+ * Requests are sent through Volley, and built and parsed by SoundCloudClient of the core library.
+ * Client id is scraped by SoundCloudClient, and persisted in preferences here.
  *
  * @author tenamen
  * @since 2023/08/17.
@@ -45,18 +53,29 @@ public class SoundCloud {
     /** This is like a key to communicate with SoundCloud API */
     private static volatile String clientID = null;
 
-    /** Host URL of SoundCloud API */
-    private static final String API_HOST = "https://api-v2.soundcloud.com";
+    /** Lock to guard client id and the tasks waiting for it. */
+    private static final Object CLIENT_ID_LOCK = new Object();
+
+    /** Tasks waiting for client id which is being fetched, or null if no fetch is in flight. */
+    private static List<PendingTask> pendingTasks = null;
 
-    /** This is a data format used in SoundCloud API */
-    private static final String DATE_PATTERN = "yyyy-MM-dd'T'HH:mm:ss'Z'";
+    /** Name of preferences which persists client id. */
+    private static final String PREFERENCES_NAME = "soundcloud";
 
-    /** Data formatter instance based on a pattern on SoundCloud API */
-    @SuppressLint("SimpleDateFormat")
-    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat(DATE_PATTERN);
+    /** Preference keys of client id and its expiry. */
+    private static final String PREFERENCE_CLIENT_ID = "client_id", PREFERENCE_EXPIRES_AT = "client_id_expires_at";
 
-    /** The limit number to search result amount. */
-    private static final int SEARCH_LIMIT = 20;
+    /** How long a fetched client id is trusted before it is scraped again. */
+    private static final long CLIENT_ID_TTL_MILLIS = 24 * 60 * 60 * 1000L;
+
+    /** Executor which scrapes client id in background. */
+    private static final ExecutorService SCRAPE_EXECUTOR = Executors.newCachedThreadPool();
+
+    /** Transport which SoundCloud web page and asset scripts are downloaded through, to give up on broken pages. */
+    private static final HttpTransport SCRAPE_TRANSPORT = new UrlConnectionTransport(10000);
+
+    /** How long a music source fetched ahead of a tap is waited for. */
+    private static final long STREAM_TIMEOUT_SECONDS = 20;
 
     /** Do not let make instance of SoundCloud */
     private SoundCloud() { }
@@ -68,98 +87,135 @@ public class SoundCloud {
             super(context, data);
         }
 
-        private void onResponse(final String response) {
+        @NonNull
+        @Override
+        protected String getStreamKey() {
+            return StreamCache.keyOf("soundcloud", this.SNIPPET.getTRACK_ID());
+        }
 
-            try {
+        /**
+         * Set the fetched music source to the player.
+         *
+         * @param url URL of the music source
+         */
+        private void onResponse(final String url) {
+            this.prepare(url, false);
+        }
 
-                // Fetch url of the music source from response.
-                final JSONObject object = new JSONObject(response);
-                final String url = object.getString("url");
+        /**
+         * Ends the play trace if the music source can not be fetched.
+         *
+         * @param error error of the request
+         */
+        private void onError(final VolleyError error) {
+            this.failTrace(error.toString());
+        }
 
-                player.setAudioStreamType(AudioManager.STREAM_MUSIC);
+        @Override
+        public void play() {
+            this.stage("resolve");
+
+            // Replaying a track uses the source resolved before, which skips fetching the transcoding.
+            final String cached = this.getResolvedStream();
+            if (cached != null) {
+                this.prepare(cached, true);
+                super.play();
+                return;
+            }
 
-                try {
-                    player.setDataSource(url);
-                } catch (IOException e) {
-                    Log.w(String.format("%s IOException", TAG), e);
-                    throw new RuntimeException(e);
-                }
+            this.stage("client_id");
+            ensureClientId(this.APP_VIEW, () -> this.requestStream(true), this::onError);
+            super.play();
+        }
 
-                player.prepareAsync();
-            } catch (JSONException e) {
-                Log.w(String.format("%s JSONException", TAG), e);
-                throw new RuntimeException(e);
-            }
+        /**
+         * Create a request to fetch music download link and add it to queue.
+         * If client id is rejected, it is refreshed and the request is sent again.
+         *
+         * @param retry whether to refresh client id and retry once if it is rejected
+         */
+        private void requestStream(final boolean retry) {
+            this.stage("resolve");
+            final String usedID = clientID;
+            // Fetching music source is what the user is waiting for, so it goes ahead of other requests.
+            final Request<?> request = new StreamingRequest<>(
+                    SoundCloudClient.streamURL(this.SNIPPET, usedID),
+                    SoundCloudClient::parseStream,
+                    this::onResponse,
+                    refreshOnUnauthorized(this.APP_VIEW, usedID, retry ? () -> this.requestStream(false) : null, this::onError)
+            ).setPriority(Request.Priority.IMMEDIATE).setMetrics(metricsOf(SoundCloudClient.ENDPOINT_STREAM), null);
+
+            this.enqueue(request);
         }
 
+        @NonNull
         @Override
-        public void play() {
-            player.stop();
-            player.reset();
-
-            ensureClientId(QUEUE, () -> {
-
-                // Create a request to fetch music download link.
-                final Request<?> request = new StringRequest(
-                        String.format(
-                                "%s?client_id=%s&track_authorization=%s",
-                                this.SNIPPET.getTRACK_ID(),
-                                clientID,
-                                this.SNIPPET.getTRACK_AUTH()
-                        ),
-                        this::onResponse,
-                        null
-                );
-
-                this.QUEUE.add(request);
-            });
-            super.play();
+        protected String fetchStream() throws InterruptedException, ExecutionException, TimeoutException {
+
+            // Fetched ahead of a tap, so it goes behind other requests and is not cancelled by playback.
+            return resolveAudioURL(this.APP_VIEW, this.getQueue(), this.SNIPPET);
         }
     }
 
     /**
-     * Music snippet for SoundCloud
+     * Downloading adapter for SoundCloud
      */
-    public static class SoundCloudSnippet extends MusicSnippet {
-
-        /** These are like keys needed to get audio data on SoundCloud */
-        private final String TRACK_ID, TRACK_AUTH;
-
-        public SoundCloudSnippet(
-                String TITLE,
-                String PUBLISHER,
-                Date PUBLISHED_AT,
-                final String TRACK_ID,
-                final String TRACK_AUTH,
-                final String THUMBNAIL
-        ) {
-            super(TITLE, PUBLISHER, PUBLISHED_AT, THUMBNAIL);
-            this.TRACK_AUTH = TRACK_AUTH;
-            this.TRACK_ID = TRACK_ID;
+    public static class SoundCloudDownloadingAdapter extends DownloadingAdapter<SoundCloudSnippet> {
+
+        public SoundCloudDownloadingAdapter(@NonNull Context context, @NonNull SoundCloudSnippet snippet, @NonNull File destination) {
+            super(context, snippet, destination);
         }
 
         @NonNull
         @Override
-        public String toString() {
-            return format(
-                    "title:%s,publisher:%s,published_at:%s,track_id:%s,track_auth:%s",
-                    this.getTITLE(),
-                    this.getPUBLISHER(),
-                    this.getPUBLISHED_AT().toString(),
-                    this.TRACK_ID,
-                    this.TRACK_AUTH
-            );
+        protected String getStreamKey() {
+            return StreamCache.keyOf("soundcloud", this.getSNIPPET().getTRACK_ID());
         }
 
-        public String getTRACK_ID() {
-            return this.TRACK_ID;
+        @NonNull
+        @Override
+        public String getHost() {
+            return "sndcdn.com";
         }
 
-        public String getTRACK_AUTH() {
-            return this.TRACK_AUTH;
+        @NonNull
+        @Override
+        protected String fetchStream() throws InterruptedException, ExecutionException, TimeoutException {
+            return resolveAudioURL(this.CONTEXT, this.getQueue(), this.getSNIPPET());
         }
     }
 
+    /**
+     * Resolves URL of the audio source of a track at low priority.
+     * This blocks until it is resolved, so it must not be called on the main thread.
+     *
+     * @param context context used to read the client id
+     * @param queue queue to send the request
+     * @param snippet the track
+     * @return URL of the audio source
+     */
+    private static String resolveAudioURL(
+            final Context context,
+            final RequestQueue queue,
+            final SoundCloudSnippet snippet
+    ) throws InterruptedException, ExecutionException, TimeoutException {
+        final RequestFuture<String> future = RequestFuture.newFuture();
+
+        ensureClientId(context, () -> {
+            final String usedID = clientID;
+            final Request<String> request = new StreamingRequest<>(
+                    SoundCloudClient.streamURL(snippet, usedID),
+                    SoundCloudClient::parseStream,
+                    future,
+                    refreshOnUnauthorized(context, usedID, null, future)
+            ).setPriority(Request.Priority.LOW).setMetrics(metricsOf(SoundCloudClient.ENDPOINT_STREAM), null);
+            future.setRequest(request);
+            queue.add(request);
+        }, future);
+
+        return future.get(STREAM_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
     /**
      * Search API adapter for SoundCloud
      */
@@ -169,15 +225,29 @@ public class SoundCloud {
             super(context);
         }
 
+        @Override
+        protected SearchAPIAdapter<SoundCloudSnippet> newInstance() {
+            return new SoundCloudSearchAPIAdapter(this.CONTEXT);
+        }
+
+        @Override
+        protected String getCursor() {
+            return String.valueOf(this.searchOffset);
+        }
+
+        @Override
+        protected void restoreCursor(@NonNull String CURSOR) {
+            this.searchOffset = Integer.parseInt(CURSOR);
+        }
+
         @Override
         public void search(@NonNull String KEYWORD, int OFFSET, final boolean FROM_FIRST) {
 
             // Create a request and add it to queue using client id.
-            ensureClientId(this.QUEUE, () -> {
-                this.QUEUE.add(
-                        this.createRequest(KEYWORD, OFFSET, SEARCH_LIMIT)
-                );
-            });
+            final Runnable task = () -> this.enqueue(
+                    this.createRequest(KEYWORD, OFFSET, SoundCloudClient.SEARCH_LIMIT, true)
+            );
+            ensureClientId(this.CONTEXT, task, this::onSearchFailed);
         }
 
         /**
@@ -186,95 +256,66 @@ public class SoundCloud {
          * @param KEYWORD search keyword
          * @param OFFSET search offset of start position
          * @param LIMIT search limit
+         * @param RETRY whether to refresh client id and retry once if it is rejected
          * @return request instance to fetch search items
          */
-        private Request<?> createRequest(@NonNull String KEYWORD, int OFFSET, int LIMIT) {
+        private Request<?> createRequest(@NonNull String KEYWORD, int OFFSET, int LIMIT, boolean RETRY) {
 
             // Create a request based on arguments.
-            @SuppressLint("DefaultLocale")
-            final StringRequest request = new StringRequest(
-                    format(
-                        "%s/search?q=%s&client_id=%s&limit=%d&offset=%d",
-                        API_HOST,
-                        StringUtil.encodeKeywordToURL(KEYWORD),
-                        clientID,
-                        LIMIT,
-                        OFFSET
-                    ),
+            // The response is parsed as a stream on the network thread.
+            final String usedID = clientID;
+            final Runnable retry = RETRY ? () -> this.enqueue(this.createRequest(KEYWORD, OFFSET, LIMIT, false)) : null;
+            final StreamingRequest<SoundCloudClient.Page> request = new StreamingRequest<>(
+                    SoundCloudClient.searchURL(KEYWORD, usedID, LIMIT, OFFSET),
+                    SoundCloudClient::parseSearch,
                     this::onResponse,
-                    null
-            );
+                    refreshOnUnauthorized(this.CONTEXT, usedID, retry, this::onSearchFailed)
+            ).setMetrics(metricsOf(SoundCloudClient.ENDPOINT_SEARCH), page -> page.getSNIPPETS().size());
             return request;
         }
 
         /**
-         * Parse search response and add search result to adapter's list.
+         * Add search result to adapter's list.
          *
-         * @param response search response
+         * @param page parsed search response
          */
-        private void onResponse(final String response) {
-            // JSONObject creation and data formatting can make exceptions.
-            try {
-
-                // Convert response to JSONArray.
-                final JSONObject json = new JSONObject(response);
-                final JSONArray array = json.getJSONArray("collection");
-
-                // Parse item data from JSONArray.
-                JSONUtil.streamOf(array)
-                        .filter(JSONUtil.hasFilter("media"))
-                        .forEach(o -> {
-                            try {
-                                // Parse item data from JSONObject.
-                                final String title = o.getString("title");
-                                final String publisher = o.getJSONObject("user").getString("username");
-                                final Date publishedDate = DATE_FORMAT.parse(o.getString("created_at"));
-                                final String trackId = o
-                                        .getJSONObject("media")
-                                        .getJSONArray("transcodings")
-                                        .getJSONObject(1)
-                                        .getString("url");
-                                final String trackAuth = o.getString("track_authorization");
-                                final String thumbnail = o.getString("artwork_url");
-
-                                this.SEARCH_RESULT.add(
-                                        new SoundCloudSnippet(
-                                                StringUtil.decodeKeyword(title),
-                                                publisher,
-                                                publishedDate,
-                                                trackId,
-                                                trackAuth,
-                                                thumbnail
-                                        )
-                                );
-                            } catch (JSONException e) {
-                                Log.w(String.format("%s JSONException", TAG), e);
-                                throw new RuntimeException(e);
-                            } catch (final ParseException e) {
-                                Log.w(format("%s %s", TAG, "Date ParseException"), e);
-                                throw new RuntimeException(e);
-                            }
-                        });
-            } catch (final JSONException e) {
-                Log.w(format("%s %s", TAG, "JSONException"), e);
-                throw new RuntimeException(e);
-            }
+        private void onResponse(final SoundCloudClient.Page page) {
 
             // Count up the search offset.
-            this.searchOffset += SEARCH_LIMIT;
+            this.searchOffset += SoundCloudClient.SEARCH_LIMIT;
 
-            this.connecting = false;
+            this.onSearchFinished(page.getSNIPPETS());
         }
-    };
+    }
 
     /**
      * We sometimes need a client id to communicate with SoundCloud API.
      * Executing task with this method, you can do it with client id.
+     * The client id is persisted with an expiry, and concurrent callers share one fetch.
      *
-     * @param queue queue to be added a request for fetching client id
+     * @param context context used to read and write the persisted client id
      * @param runnable Runnable object contains a method using client id
+     * @param errorListener called if client id can not be fetched
      */
-    public static void ensureClientId(final RequestQueue queue, @NonNull final Runnable runnable) {
+    public static void ensureClientId(
+            @NonNull final Context context,
+            @NonNull final Runnable runnable,
+            @Nullable final Response.ErrorListener errorListener
+    ) {
+
+        synchronized (CLIENT_ID_LOCK) {
+
+            // Restore client id which was fetched in previous launches.
+            if (clientID == null) clientID = loadClientId(context);
+
+            // If a fetch is already in flight, the task waits for it.
+            if (clientID == null) {
+                final boolean inFlight = pendingTasks != null;
+                if (!inFlight) pendingTasks = new ArrayList<>();
+                pendingTasks.add(new PendingTask(runnable, errorListener));
+                if (inFlight) return;
+            }
+        }
 
         // If client id is already fetched, we run as usual.
         if (clientID != null) {
@@ -282,26 +323,165 @@ public class SoundCloud {
             return;
         }
 
-        // Create a request to fetch client id.
-        final Request<?> request = new CustomStringRequest(
-                "https://soundcloud.com",
-                response -> {
-                    // HACK
-                    final String a = response.split("<script crossorigin src=\\\"https://a-v2.sndcdn.com/assets/")[5];
-                    final StringRequest nextRequest = new StringRequest(
-                            String.format("https://a-v2.sndcdn.com/assets/%s", a.substring(0, a.indexOf("\""))),
-                            r -> {
-                                clientID = StringUtil.clip(r, "client_id=", "\"");
-
-                                runnable.run();
-                            },
-                            null
-                    );
-                    queue.add(nextRequest);
-                },
-                null
-        );
-
-        queue.add(request);
+        fetchClientId(context);
+    }
+
+    /**
+     * Forgets the given client id, so that the next ensureClientId() fetches a new one.
+     * This is called when SoundCloud API rejects the client id.
+     *
+     * @param context context used to remove the persisted client id
+     * @param staleID the client id which is rejected
+     */
+    public static void invalidateClientId(@NonNull final Context context, @Nullable final String staleID) {
+        synchronized (CLIENT_ID_LOCK) {
+
+            // Client id may have already been refreshed by another request.
+            if (staleID == null || !staleID.equals(clientID)) return;
+
+            clientID = null;
+            preferencesOf(context).edit()
+                    .remove(PREFERENCE_CLIENT_ID)
+                    .remove(PREFERENCE_EXPIRES_AT)
+                    .apply();
+        }
+    }
+
+    /**
+     * Creates an error listener which refreshes the client id and retries once
+     * when SoundCloud API answers 401 or 403.
+     *
+     * @param context context used to refresh the client id
+     * @param usedID the client id used by the failed request
+     * @param retry task which sends the request again with the new client id, or null not to retry
+     * @param errorListener called for other errors, or if the retry is not possible
+     * @return error listener for requests using client id
+     */
+    private static Response.ErrorListener refreshOnUnauthorized(
+            @NonNull final Context context,
+            @Nullable final String usedID,
+            @Nullable final Runnable retry,
+            @Nullable final Response.ErrorListener errorListener
+    ) {
+        return error -> {
+            final int status = error.networkResponse == null ? -1 : error.networkResponse.statusCode;
+            if (status == 401 || status == 403) {
+                Log.w(TAG, String.format("Client id is rejected (%d), refreshing", status));
+                invalidateClientId(context, usedID);
+                if (retry != null) {
+                    ensureClientId(context, retry, errorListener);
+                    return;
+                }
+            }
+            if (errorListener != null) errorListener.onErrorResponse(error);
+        };
+    }
+
+    /**
+     * Fetches client id by scraping SoundCloud web page in background, then runs the pending tasks.
+     *
+     * @param context context used to persist the client id
+     */
+    private static void fetchClientId(@NonNull final Context context) {
+        final Handler handler = new Handler(Looper.getMainLooper());
+        final RequestTimer timer = metricsOf(SoundCloudClient.ENDPOINT_CLIENT_ID).start();
+        SCRAPE_EXECUTOR.execute(() -> {
+            timer.dispatched();
+            try {
+                final String id = SoundCloudClient.scrapeClientId(SCRAPE_TRANSPORT, SCRAPE_EXECUTOR);
+                if (id != null) {
+                    timer.finish();
+                    handler.post(() -> onClientIdFetched(context, id));
+                } else {
+                    timer.fail();
+                    handler.post(() -> onClientIdFailed(new VolleyError("Client id is not found")));
+                }
+            } catch (final IOException | InterruptedException e) {
+                timer.fail();
+                handler.post(() -> onClientIdFailed(new VolleyError(e)));
+            }
+        });
+    }
+
+    /**
+     * @param endpoint endpoint of SoundCloud
+     * @return metrics of the endpoint
+     */
+    private static RequestMetrics metricsOf(@NonNull final String endpoint) {
+        return MetricsRegistry.getInstance().of(SoundCloudClient.PROVIDER, endpoint);
+    }
+
+    /**
+     * Stores the fetched client id and runs the tasks waiting for it.
+     *
+     * @param context context used to persist the client id
+     * @param id fetched client id
+     */
+    private static void onClientIdFetched(@NonNull final Context context, @NonNull final String id) {
+        final List<PendingTask> tasks;
+        synchronized (CLIENT_ID_LOCK) {
+            clientID = id;
+            preferencesOf(context).edit()
+                    .putString(PREFERENCE_CLIENT_ID, id)
+                    .putLong(PREFERENCE_EXPIRES_AT, System.currentTimeMillis() + CLIENT_ID_TTL_MILLIS)
+                    .apply();
+
+            tasks = pendingTasks;
+            pendingTasks = null;
+        }
+
+        if (tasks != null) tasks.forEach(t -> t.TASK.run());
+    }
+
+    /**
+     * Tells the tasks waiting for client id that it can not be fetched.
+     * The next ensureClientId() starts a new fetch.
+     *
+     * @param error error of the request for fetching client id
+     */
+    private static void onClientIdFailed(@NonNull final VolleyError error) {
+        Log.w(String.format("%s Client id fetch failed", TAG), error);
+
+        final List<PendingTask> tasks;
+        synchronized (CLIENT_ID_LOCK) {
+            tasks = pendingTasks;
+            pendingTasks = null;
+        }
+
+        if (tasks == null) return;
+        tasks.stream()
+                .filter(t -> t.ERROR_LISTENER != null)
+                .forEach(t -> t.ERROR_LISTENER.onErrorResponse(error));
+    }
+
+    /**
+     * Reads the persisted client id if it is not expired yet.
+     *
+     * @param context context used to read the persisted client id
+     * @return client id, or null if there is no valid one
+     */
+    @Nullable
+    private static String loadClientId(@NonNull final Context context) {
+        final SharedPreferences preferences = preferencesOf(context);
+        if (preferences.getLong(PREFERENCE_EXPIRES_AT, 0) < System.currentTimeMillis()) return null;
+        return preferences.getString(PREFERENCE_CLIENT_ID, null);
+    }
+
+    private static SharedPreferences preferencesOf(@NonNull final Context context) {
+        return context.getApplicationContext().getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * A task waiting for client id, with the listener to call if client id can not be fetched.
+     */
+    private static class PendingTask {
+
+        private final Runnable TASK;
+        private final Response.ErrorListener ERROR_LISTENER;
+
+        private PendingTask(final Runnable task, final Response.ErrorListener errorListener) {
+            this.TASK = task;
+            this.ERROR_LISTENER = errorListener;
+        }
     }
 }
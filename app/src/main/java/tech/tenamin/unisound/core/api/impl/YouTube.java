@@ -1,37 +1,30 @@
 package tech.tenamin.unisound.core.api.impl;
 
 import android.content.Context;
-import android.media.AudioManager;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 
 import com.android.volley.Request;
-import com.android.volley.toolbox.JsonObjectRequest;
 import com.yausername.youtubedl_android.YoutubeDL;
 import com.yausername.youtubedl_android.YoutubeDLException;
 import com.yausername.youtubedl_android.YoutubeDLRequest;
 import com.yausername.youtubedl_android.mapper.VideoInfo;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import java.io.File;
 
-import java.io.IOException;
-import java.util.Date;
-import java.util.Optional;
-
-import tech.tenamin.unisound.MainActivity;
-import tech.tenamin.unisound.core.api.MusicSnippet;
+import tech.tenamin.unisound.core.api.DownloadingAdapter;
 import tech.tenamin.unisound.core.api.PlayingAdapter;
 import tech.tenamin.unisound.core.api.SearchAPIAdapter;
-import tech.tenamin.unisound.core.api.util.CustomStringRequest;
-import tech.tenamin.unisound.core.api.util.JSONUtil;
-import tech.tenamin.unisound.core.api.util.StringUtil;
+import tech.tenamin.unisound.core.api.util.StreamingRequest;
+import tech.tenamin.unisound.core.cache.StreamCache;
+import tech.tenamin.unisound.core.metrics.MetricsRegistry;
+import tech.tenamin.unisound.core.metrics.RequestTimer;
 
 /**
  * A package of YouTube API.
+ * Search requests are sent through Volley, and built and parsed by YouTubeClient of the core library.
  *
  * @author tenamen
  * @since 2023/08/17.
@@ -41,12 +34,6 @@ public class YouTube {
     /** Tag for Android logging system */
     private static final String TAG = "YouTube API Adapter";
 
-    /** Video tag for filtering search result */
-    private static final String VIDEO_TAG = "EgIQAQ%3D%3D";
-
-    /** The host URL of YouTube */
-    private static final String HOST_URL = "https://www.youtube.com";
-
     /** Do not let make instance of YouTube */
     private YouTube() { }
 
@@ -55,70 +42,117 @@ public class YouTube {
      */
     public static class YouTubePlayingAdapter extends PlayingAdapter <YouTubeSnippet> {
 
-        public YouTubePlayingAdapter(final AppCompatActivity context, YouTube.YouTubeSnippet data) {
+        public YouTubePlayingAdapter(final AppCompatActivity context, YouTubeSnippet data) {
             super(context, data);
         }
 
+        @NonNull
         @Override
-        public void play() {
-            player.stop();
-            player.reset();
-
-            // Create a request for Youtube DL API.
-            final YoutubeDLRequest request = new YoutubeDLRequest(
-                    String.format(
-                            "https://www.youtube.com/watch?v=%s",
-                            this.SNIPPET.getVIDEO_ID()
-                    )
-            );
+        protected String getStreamKey() {
+            return StreamCache.keyOf("youtube", this.SNIPPET.getVIDEO_ID());
+        }
 
-            // Add audio options to request.
-            request.addOption("--extract-audio");
-            request.addOption("--audio-format", "mp3");
-            request.addOption("--extract-audio");
+        @Override
+        public void play() {
+            this.stage("resolve");
 
-            player.setAudioStreamType(AudioManager.STREAM_MUSIC);
+            // Replaying a track uses the source resolved before, which skips YouTube DL.
+            final String cached = this.getResolvedStream();
+            if (cached != null) {
+                this.prepare(cached, true);
+                super.play();
+                return;
+            }
 
+            final String url;
             try {
-
-                // Fetch video info through YouTube DL API and set player's data source.
-                final VideoInfo info = YoutubeDL.getInstance().getInfo(request);
-                player.setDataSource(info.getUrl());
-                System.out.println(info.getUrl());
+                url = this.fetchStream();
             } catch (YoutubeDLException e) {
                 Log.w(String.format("%s YoutubeDLException", TAG), e);
+                this.failTrace(e.toString());
                 throw new RuntimeException(e);
             } catch (InterruptedException e) {
                 Log.w(String.format("%s InterruptedException", TAG), e);
+                this.failTrace(e.toString());
                 throw new RuntimeException(e);
             } catch (YoutubeDL.CanceledException e) {
                 Log.w(String.format("%s YouTubeDL.CanceledException", TAG), e);
-                throw new RuntimeException(e);
-            } catch (IOException e) {
-                Log.w(String.format("%s IOException", TAG), e);
+                this.failTrace(e.toString());
                 throw new RuntimeException(e);
             }
 
-            player.prepareAsync();
+            this.prepare(url, false);
             super.play();
         }
+
+        @NonNull
+        @Override
+        protected String fetchStream() throws YoutubeDLException, InterruptedException, YoutubeDL.CanceledException {
+            return resolveAudioURL(this.SNIPPET.getVIDEO_ID());
+        }
     }
 
     /**
-     * Music snippet for YouTube
+     * Downloading adapter for YouTube
      */
-    public static class YouTubeSnippet extends MusicSnippet {
+    public static class YouTubeDownloadingAdapter extends DownloadingAdapter<YouTubeSnippet> {
+
+        public YouTubeDownloadingAdapter(@NonNull Context context, @NonNull YouTubeSnippet snippet, @NonNull File destination) {
+            super(context, snippet, destination);
+        }
 
-        /** This is an id which is needed to play music. */
-        private final String VIDEO_ID;
+        @NonNull
+        @Override
+        protected String getStreamKey() {
+            return StreamCache.keyOf("youtube", this.getSNIPPET().getVIDEO_ID());
+        }
+
+        @NonNull
+        @Override
+        public String getHost() {
+            return "googlevideo.com";
+        }
 
-        public YouTubeSnippet(String TITLE, String PUBLISHER, Date PUBLISHED_AT, final String VIDEO_ID, final String THUMBNAIL) {
-            super(TITLE, PUBLISHER, PUBLISHED_AT, THUMBNAIL);
-            this.VIDEO_ID = VIDEO_ID;
+        @NonNull
+        @Override
+        protected String fetchStream() throws YoutubeDLException, InterruptedException, YoutubeDL.CanceledException {
+            return resolveAudioURL(this.getSNIPPET().getVIDEO_ID());
         }
+    }
 
-        public String getVIDEO_ID() {
-            return this.VIDEO_ID;
+    /**
+     * Resolves URL of the audio source of a video through YouTube DL API.
+     * This blocks until it is resolved.
+     *
+     * @param videoId id of the video
+     * @return URL of the audio source
+     */
+    private static String resolveAudioURL(final String videoId) throws YoutubeDLException, InterruptedException, YoutubeDL.CanceledException {
+
+        // Create a request for Youtube DL API.
+        final YoutubeDLRequest request = new YoutubeDLRequest(
+                String.format(
+                        "https://www.youtube.com/watch?v=%s",
+                        videoId
+                )
+        );
+
+        // Add audio options to request.
+        request.addOption("--extract-audio");
+        request.addOption("--audio-format", "mp3");
+        request.addOption("--extract-audio");
+
+        // Fetch video info through YouTube DL API.
+        // YouTube DL runs the whole resolution at once, so only the total time is measured.
+        final RequestTimer timer = MetricsRegistry.getInstance().of(YouTubeClient.PROVIDER, YouTubeClient.ENDPOINT_STREAM).start();
+        timer.dispatched();
+        try {
+            final VideoInfo info = YoutubeDL.getInstance().getInfo(request);
+            timer.finish();
+            return info.getUrl();
+        } catch (Exception e) {
+            timer.fail();
+            throw e;
         }
     }
 
@@ -128,174 +162,69 @@ public class YouTube {
     public static class YouTubeSearchAPIAdapter extends SearchAPIAdapter<YouTubeSnippet> {
 
         private String countToken;
-        private JSONObject context;
+        private String context;
         private String apiToken;
 
         public YouTubeSearchAPIAdapter(Context context) {
             super(context);
         }
 
-        /**
-         * Parse video info and add it to search list.
-         *
-         * @param array json array which contains video info.
-         * @throws JSONException parsing info from json can make json exceptions.
-         */
-        private void parseAndAddContents(final JSONArray array) throws JSONException {
+        @Override
+        protected SearchAPIAdapter<YouTubeSnippet> newInstance() {
+            return new YouTubeSearchAPIAdapter(this.CONTEXT);
+        }
 
-            // Parse count token from json.
-            // The count token will be used to fetch next page data.
-            final Optional<String> countTokenOptional = JSONUtil.streamOf(array)
-                    .filter(JSONUtil.hasFilter("continuationItemRenderer"))
-                    .map(JSONUtil.getObject("continuationItemRenderer"))
-                    .map(JSONUtil.getObject("continuationEndpoint"))
-                    .map(JSONUtil.getObject("continuationCommand"))
-                    .map(JSONUtil.getString("token"))
-                    .findAny();
-
-            if (countTokenOptional.isPresent()) countToken = countTokenOptional.get();
-
-            // Parse video info from json.
-            JSONUtil.streamOf(array)
-                    .filter(JSONUtil.hasFilter("itemSectionRenderer"))
-                    .map(JSONUtil.getObject("itemSectionRenderer"))
-                    .map(JSONUtil.getArray("contents"))
-                    .forEach(contents -> JSONUtil.streamOf(contents)
-                            .filter(JSONUtil.hasFilter("videoRenderer"))
-                            .map(JSONUtil.getObject("videoRenderer"))
-                            .filter(JSONUtil.hasFilter("videoId"))
-                            .forEach(videoRenderer -> {
-                                try {
-
-                                    // Parse video info from video renderer.
-                                    final String videoId = videoRenderer.getString("videoId");
-                                    final String thumbnail = videoRenderer
-                                            .getJSONObject("thumbnail")
-                                            .getJSONArray("thumbnails")
-                                            .getJSONObject(0)
-                                            .getString("url");
-                                    final String title = videoRenderer
-                                            .getJSONObject("title")
-                                            .getJSONArray("runs")
-                                            .getJSONObject(0)
-                                            .getString("text");
-                                    String publisher = null;
-                                    if (
-                                            videoRenderer.has("ownerText") &&
-                                                    videoRenderer.getJSONObject("ownerText").has("runs")
-                                    ) {
-                                        publisher = videoRenderer
-                                                .getJSONObject("ownerText")
-                                                .getJSONArray("runs")
-                                                .getJSONObject(0)
-                                                .getString("text");
-                                    }
-
-                                    // Create a snippet instance and add it to result list.
-                                    this.SEARCH_RESULT.add(
-                                            new YouTubeSnippet(
-                                                    title,
-                                                    publisher,
-                                                    null,
-                                                    videoId,
-                                                    thumbnail
-                                            )
-                                    );
-
-                                    this.searchOffset++;
-                                } catch (JSONException e) {
-                                    Log.w(String.format("%s JSONException"), e);
-                                    throw new RuntimeException(e);
-                                }
-                            })
-                    );
+        @Override
+        protected String getCursor() {
+            return new YouTubeClient.Cursor(this.countToken, this.apiToken, this.context).toString();
+        }
 
+        @Override
+        protected void restoreCursor(@NonNull String CURSOR) {
+            final YouTubeClient.Cursor cursor = YouTubeClient.Cursor.parse(CURSOR);
+            this.countToken = cursor.getCOUNT_TOKEN();
+            this.apiToken = cursor.getAPI_TOKEN();
+            this.context = cursor.getCONTEXT();
         }
 
         /**
          * Parse search response and add search result to adapter's list.
          * This is called at first search time of search.
          *
-         * @param response search response
+         * @param page parsed search response
          */
-        private void onResponseForStart(final String response) {
+        private void onResponseForStart(final YouTubeClient.Page page) {
 
-            final String[] ytInitData = response.split("var ytInitialData =");
+            // API token and context are needed to search next page.
+            this.apiToken = page.getApiToken();
+            this.context = page.getContext();
 
-            // No search result.
-            if (ytInitData.length <= 1) {
-                return;
-            }
-
-            final String s = ytInitData[1].split("</script>")[0];
-            final String data = s.substring(0, s.length() - 1);
-
-            // JSONObject creation and data formatting can make exceptions.
-            try {
-
-                final JSONObject initdata = new JSONObject(data);;
-
-                // Parse API token which one is needed to search next page.
-                this.apiToken = null;
-                if (response.split("innertubeApiKey").length > 0) {
-                    this.apiToken = response
-                            .split("innertubeApiKey")[1]
-                            .trim()
-                            .split(",")[0]
-                            .split("\"")[2];
-                }
-
-                // Parse context which one is needed to search next page.
-                this.context = null;
-                if (response.split("INNERTUBE_CONTEXT").length > 0) {
-                    final String s2 = response
-                            .split("INNERTUBE_CONTEXT")[1]
-                            .trim();
-                    this.context = new JSONObject(
-                            s2.substring(2, s2.length() -2)
-                    );
-                }
-
-                final JSONArray array = initdata
-                        .getJSONObject("contents")
-                        .getJSONObject("twoColumnSearchResultsRenderer")
-                        .getJSONObject("primaryContents")
-                        .getJSONObject("sectionListRenderer")
-                        .getJSONArray("contents");
-
-                // This token is needed to search next page.
-                this.countToken = null;
-
-                this.parseAndAddContents(array);
-            } catch (JSONException e) {
-                Log.w(String.format("%s JSONException", TAG), e);
-                throw new RuntimeException(e);
-            }
-
-            this.connecting = false;
+            this.addPage(page);
         }
 
         /**
          * Parse search response and add search result to adapter's list.
          * This is called to update search result.
          *
-         * @param response search response
+         * @param page parsed search response
          */
-        private void onResponseForNext(final JSONObject response) {
+        private void onResponseForNext(final YouTubeClient.Page page) {
+            this.addPage(page);
+        }
 
-            try {
-                final JSONObject item1 = response
-                        .getJSONArray("onResponseReceivedCommands")
-                        .getJSONObject(0)
-                        .getJSONObject("appendContinuationItemsAction");
-
-                final JSONArray continuationItems = item1.getJSONArray("continuationItems");
-                this.parseAndAddContents(continuationItems);
-            } catch (JSONException e) {
-                Log.w(String.format("%s JSONException", TAG), e);
-                throw new RuntimeException(e);
-            }
-            this.connecting = false;
+        /**
+         * Add videos of the page to search list.
+         *
+         * @param page parsed search response
+         */
+        private void addPage(final YouTubeClient.Page page) {
+
+            // The count token will be used to fetch next page data.
+            this.countToken = page.getCountToken();
+
+            this.searchOffset += page.getSNIPPETS().size();
+
+            this.onSearchFinished(page.getSNIPPETS());
         }
 
         /**
@@ -303,46 +232,37 @@ public class YouTube {
          *
          * @param KEYWORD search keyword
          * @param OFFSET search offset of start position
-         * @return request instance to fetch search items
          */
         @Override
         public void search(@NonNull String KEYWORD, int OFFSET, final boolean FROM_FIRST) {
 
             // Crate a request instance.
+            // Responses are parsed as streams on the network thread, so the page is never held as a String.
             Request<?> request = null;
             if (FROM_FIRST) {
-                request = new CustomStringRequest(
-                        String.format(
-                                "%s/results?search_query=%s&sp=%s",
-                                HOST_URL,
-                                StringUtil.encodeKeywordToURL(KEYWORD),
-                                VIDEO_TAG
-                        ),
+                request = new StreamingRequest<>(
+                        YouTubeClient.resultPageURL(KEYWORD),
+                        YouTubeClient::parseResultPage,
                         this::onResponseForStart,
-                        null
+                        this::onSearchFailed
+                ).setMetrics(
+                        MetricsRegistry.getInstance().of(YouTubeClient.PROVIDER, YouTubeClient.ENDPOINT_SEARCH),
+                        page -> page.getSNIPPETS().size()
                 );
             } else {
-                JSONObject jsonObject = new JSONObject();
-                try {
-                    jsonObject.put("context", this.context);
-                    jsonObject.put("continuation", this.countToken);
-                } catch (JSONException e) {
-                    Log.w(String.format("%s JSONException"), e);
-                    throw new RuntimeException(e);
-                }
-                request = new JsonObjectRequest(
+                request = new StreamingRequest<>(
                         Request.Method.POST,
-                        String.format(
-                                "%s/youtubei/v1/search?key=",
-                                HOST_URL,
-                                this.apiToken
-                        ),
-                        jsonObject,
+                        YouTubeClient.continuationURL(this.apiToken),
+                        YouTubeClient.continuationBody(this.context, this.countToken),
+                        YouTubeClient::parseContinuation,
                         this::onResponseForNext,
-                        null
+                        this::onSearchFailed
+                ).setMetrics(
+                        MetricsRegistry.getInstance().of(YouTubeClient.PROVIDER, YouTubeClient.ENDPOINT_CONTINUATION),
+                        page -> page.getSNIPPETS().size()
                 );
             }
-            this.QUEUE.add(request);
+            this.enqueue(request);
         }
     }
 }
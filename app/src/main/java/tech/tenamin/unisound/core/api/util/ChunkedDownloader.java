@@ -0,0 +1,425 @@
+package tech.tenamin.unisound.core.api.util;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import tech.tenamin.unisound.core.api.http.HttpStatusException;
+
+/**
+ * Downloads a file over several connections with HTTP Range requests.
+ * The file is split into fixed size chunks, which are written into a pre-allocated file at their positions.
+ * The progress of each chunk is persisted next to the file, so an interrupted download resumes where it stopped.
+ * Servers which do not support Range requests are downloaded over one connection from the start.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public class ChunkedDownloader {
+
+    /**
+     * Receiver of the progress. It is called on download threads.
+     */
+    public interface ProgressListener {
+        void onProgress(long downloaded, long total);
+    }
+
+    /** Size of a chunk, which is the unit of a Range request. */
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    /** Size of the buffer of each connection. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** How many times a chunk is requested again after a connection error or an early end. */
+    private static final int MAX_RETRIES = 3;
+
+    /** Wait before the first retry, which doubles on each retry. */
+    private static final long RETRY_BACKOFF_MILLIS = 500;
+
+    /** Bytes written to a chunk between checkpoints of its progress. */
+    private static final int CHECKPOINT_BYTES = 256 * 1024;
+
+    /** Timeout of connecting and reading. */
+    private static final int TIMEOUT_MILLIS = 15000;
+
+    /** Marks the state file, and the version of its format. */
+    private static final int STATE_MAGIC = 0x554e4431;
+
+    /** Size of the state file header: magic, total size, chunk size and the number of chunks. */
+    private static final int STATE_HEADER_SIZE = 4 + 8 + 4 + 4;
+
+    /** Total size in Content-Range header. */
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes \\d+-\\d+/(\\d+)");
+
+    /** URL of the file. */
+    private final String URL;
+
+    /** The file to be downloaded, and the files used while downloading. */
+    private final File DESTINATION, PART, STATE;
+
+    /** The number of connections used at the same time. */
+    private final int CONNECTIONS;
+
+    /** Connections in use, which are disconnected on cancel. */
+    private final List<HttpURLConnection> OPEN = new ArrayList<>();
+
+    /** Limit of bandwidth shared with other downloads, or null for no limit. */
+    private TokenBucket throttle;
+
+    private volatile boolean cancelled = false;
+
+    public ChunkedDownloader(final String url, final File destination, final int connections) {
+        this.URL = url;
+        this.DESTINATION = destination;
+        this.PART = new File(destination.getPath() + ".part");
+        this.STATE = new File(destination.getPath() + ".state");
+        this.CONNECTIONS = connections;
+    }
+
+    /**
+     * Downloads the file, resuming a previous download if its progress is left.
+     * This blocks until the file is downloaded.
+     *
+     * @param listener receiver of the progress
+     * @throws IOException if the file can not be downloaded. The progress is kept for the next try
+     * @throws HttpStatusException if the server rejects the URL, which may have expired
+     * @throws CancellationException if cancel() is called
+     */
+    public void download(final ProgressListener listener) throws IOException {
+
+        // Ask the first byte to know whether Range requests are supported and the total size.
+        final long total;
+        final HttpURLConnection probe = this.open(0, 0);
+        try {
+            // An error keeps the progress, since the URL may have expired and a new one can resume it.
+            if (probe.getResponseCode() >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                throw new HttpStatusException(probe.getResponseCode(), this.URL);
+            }
+
+            final Matcher matcher = CONTENT_RANGE.matcher(String.valueOf(probe.getHeaderField("Content-Range")));
+            if (probe.getResponseCode() != HttpURLConnection.HTTP_PARTIAL || !matcher.matches()) {
+                probe.disconnect();
+                this.downloadAtOnce(listener);
+                return;
+            }
+            total = Long.parseLong(matcher.group(1));
+        } catch (IOException e) {
+
+            // cancel() disconnects the probe, which ends a pending request with an IOException.
+            if (this.cancelled) throw new CancellationException("Cancelled");
+            throw e;
+        } finally {
+            this.close(probe);
+        }
+
+        final int count = (int) ((total + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        final long[] done = this.loadState(total, count);
+        final AtomicLong downloaded = new AtomicLong();
+        final Queue<Integer> remaining = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < count; i++) {
+            downloaded.addAndGet(done[i]);
+            if (done[i] < chunkLength(i, total)) remaining.add(i);
+        }
+        listener.onProgress(downloaded.get(), total);
+
+        // Each connection takes chunks until all of them are downloaded.
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(this.CONNECTIONS, remaining.size())));
+        try (RandomAccessFile part = new RandomAccessFile(this.PART, "rw");
+             RandomAccessFile state = new RandomAccessFile(this.STATE, "rw")) {
+            final FileChannel partChannel = part.getChannel(), stateChannel = state.getChannel();
+
+            final List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < this.CONNECTIONS; i++) {
+                workers.add(executor.submit(() -> {
+                    Integer chunk;
+                    while ((chunk = remaining.poll()) != null) {
+                        this.downloadChunk(chunk, total, done, partChannel, stateChannel, downloaded, listener);
+                    }
+                    return null;
+                }));
+            }
+
+            for (final Future<?> worker : workers) {
+                try {
+                    worker.get();
+                } catch (ExecutionException e) {
+                    this.cancelled = true;
+                    this.disconnectAll();
+                    if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+                    if (e.getCause() instanceof CancellationException) throw (CancellationException) e.getCause();
+                    throw new IOException(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException("Interrupted");
+                }
+            }
+            partChannel.force(true);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Verify that every byte arrived before the file replaces the destination.
+        if (this.PART.length() != total || downloaded.get() != total) {
+            throw new IOException(String.format("Size mismatch: %d of %d bytes", downloaded.get(), total));
+        }
+        this.complete();
+    }
+
+    /**
+     * Sets the bandwidth limit. This is called before download().
+     *
+     * @param throttle token bucket shared with other downloads, or null for no limit
+     * @return this downloader
+     */
+    public ChunkedDownloader setThrottle(final TokenBucket throttle) {
+        this.throttle = throttle;
+        return this;
+    }
+
+    /**
+     * Stops downloading. The progress is kept, so the download can be resumed later.
+     */
+    public void cancel() {
+        this.cancelled = true;
+        this.disconnectAll();
+    }
+
+    /**
+     * Downloads the rest of a chunk, retrying on connection errors from where it stopped.
+     */
+    private void downloadChunk(
+            final int chunk,
+            final long total,
+            final long[] done,
+            final FileChannel part,
+            final FileChannel state,
+            final AtomicLong downloaded,
+            final ProgressListener listener
+    ) throws IOException {
+        final long start = (long) chunk * CHUNK_SIZE, length = chunkLength(chunk, total);
+        final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        final ByteBuffer progress = ByteBuffer.allocate(8);
+        IOException failure = null;
+
+        for (int attempt = 0; done[chunk] < length; attempt++) {
+            if (this.cancelled) throw new CancellationException("Cancelled");
+
+            // A server which keeps ending the body early is given up on, like one which keeps failing.
+            if (attempt > MAX_RETRIES) {
+                throw new IOException(String.format("Chunk %d is not completed after %d retries", chunk, MAX_RETRIES), failure);
+            }
+            if (attempt > 0) {
+                try {
+                    Thread.sleep(RETRY_BACKOFF_MILLIS << (attempt - 1));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException("Interrupted");
+                }
+            }
+
+            long checkpoint = done[chunk];
+            final HttpURLConnection connection = this.open(start + done[chunk], start + length - 1);
+            try (InputStream in = this.inputOf(connection)) {
+                if (connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+                    throw new IOException(String.format("Range is not served: %d", connection.getResponseCode()));
+                }
+
+                int n;
+                while (done[chunk] < length && (n = in.read(buffer.array(), 0, (int) Math.min(BUFFER_SIZE, length - done[chunk]))) != -1) {
+                    if (this.cancelled) throw new CancellationException("Cancelled");
+                    this.throttle(n);
+
+                    buffer.clear().limit(n);
+                    long position = start + done[chunk];
+                    while (buffer.hasRemaining()) position += part.write(buffer, position);
+                    done[chunk] += n;
+
+                    if (done[chunk] - checkpoint >= CHECKPOINT_BYTES) {
+                        this.checkpoint(chunk, done[chunk], part, state, progress);
+                        checkpoint = done[chunk];
+                    }
+
+                    listener.onProgress(downloaded.addAndGet(n), total);
+                }
+            } catch (IOException e) {
+                if (this.cancelled) throw new CancellationException("Cancelled");
+
+                // A rejected URL is not served by asking again.
+                if (e instanceof HttpStatusException) throw e;
+                failure = e;
+            } finally {
+                this.close(connection);
+                if (done[chunk] > checkpoint) this.checkpoint(chunk, done[chunk], part, state, progress);
+            }
+        }
+    }
+
+    /**
+     * Persists how far a chunk is written.
+     * The data is forced to disk first, so that a resume after a power loss never skips bytes which were not written.
+     */
+    private void checkpoint(final int chunk, final long written, final FileChannel part, final FileChannel state, final ByteBuffer progress) throws IOException {
+        part.force(false);
+        progress.clear();
+        progress.putLong(written).flip();
+        state.write(progress, STATE_HEADER_SIZE + 8L * chunk);
+    }
+
+    /**
+     * Downloads the whole file over one connection, for servers which do not support Range requests.
+     */
+    private void downloadAtOnce(final ProgressListener listener) throws IOException {
+        if (this.STATE.exists() && !this.STATE.delete()) throw new IOException("State can not be deleted");
+
+        final HttpURLConnection connection = this.open(-1, -1);
+        try (InputStream in = this.inputOf(connection);
+             RandomAccessFile part = new RandomAccessFile(this.PART, "rw")) {
+            final long total = connection.getContentLengthLong();
+            part.setLength(0);
+
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            long downloaded = 0;
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                if (this.cancelled) throw new CancellationException("Cancelled");
+                this.throttle(n);
+                part.write(buffer, 0, n);
+                listener.onProgress(downloaded += n, total);
+            }
+            part.getFD().sync();
+
+            if (total >= 0 && downloaded != total) {
+                throw new IOException(String.format("Size mismatch: %d of %d bytes", downloaded, total));
+            }
+        } catch (IOException e) {
+            if (this.cancelled) throw new CancellationException("Cancelled");
+            throw e;
+        } finally {
+            this.close(connection);
+        }
+        this.complete();
+    }
+
+    /**
+     * Reads the progress of each chunk. If no usable progress is left, the file is allocated and the progress is reset.
+     *
+     * @return bytes written of each chunk
+     */
+    private long[] loadState(final long total, final int count) throws IOException {
+        final long[] done = new long[count];
+
+        if (this.STATE.exists() && this.PART.exists() && this.PART.length() == total) {
+            try (DataInputStream in = new DataInputStream(new FileInputStream(this.STATE))) {
+                if (in.readInt() == STATE_MAGIC && in.readLong() == total && in.readInt() == CHUNK_SIZE && in.readInt() == count) {
+                    for (int i = 0; i < count; i++) done[i] = Math.min(in.readLong(), chunkLength(i, total));
+                    return done;
+                }
+            } catch (IOException e) {
+                // The state is broken, so the download starts over.
+            }
+        }
+
+        // Allocate the whole file first, so that chunks can be written at their positions.
+        try (RandomAccessFile part = new RandomAccessFile(this.PART, "rw")) {
+            part.setLength(total);
+        }
+        final ByteBuffer header = ByteBuffer.allocate(STATE_HEADER_SIZE + 8 * count);
+        header.putInt(STATE_MAGIC).putLong(total).putInt(CHUNK_SIZE).putInt(count);
+        header.position(header.capacity()).flip();
+        try (RandomAccessFile state = new RandomAccessFile(this.STATE, "rw")) {
+            state.setLength(0);
+            state.getChannel().write(header, 0);
+        }
+        return done;
+    }
+
+    /**
+     * Moves the downloaded file to the destination and deletes the progress.
+     */
+    private void complete() throws IOException {
+        if (this.DESTINATION.exists() && !this.DESTINATION.delete()) throw new IOException("Destination can not be replaced");
+        if (!this.PART.renameTo(this.DESTINATION)) throw new IOException("Downloaded file can not be moved");
+        if (this.STATE.exists() && !this.STATE.delete()) throw new IOException("State can not be deleted");
+    }
+
+    /**
+     * Opens a connection asking the range of bytes.
+     *
+     * @param first position of the first byte, or -1 to ask the whole file
+     * @param last position of the last byte
+     */
+    private HttpURLConnection open(final long first, final long last) throws IOException {
+        if (this.cancelled) throw new CancellationException("Cancelled");
+
+        final HttpURLConnection connection = (HttpURLConnection) new URL(this.URL).openConnection();
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+        connection.setRequestProperty("User-agent", CustomStringRequest.USER_AGENT);
+        if (first >= 0) connection.setRequestProperty("Range", String.format("bytes=%d-%d", first, last));
+
+        synchronized (this.OPEN) {
+            this.OPEN.add(connection);
+        }
+        return connection;
+    }
+
+    /**
+     * Opens the body of a response, telling a rejection apart from other errors.
+     */
+    private InputStream inputOf(final HttpURLConnection connection) throws IOException {
+        if (connection.getResponseCode() >= HttpURLConnection.HTTP_BAD_REQUEST) {
+            throw new HttpStatusException(connection.getResponseCode(), this.URL);
+        }
+        return connection.getInputStream();
+    }
+
+    /**
+     * Waits until the bytes read are allowed by the bandwidth limit.
+     */
+    private void throttle(final int bytes) {
+        if (this.throttle == null) return;
+        try {
+            this.throttle.acquire(bytes);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted");
+        }
+    }
+
+    private void close(final HttpURLConnection connection) {
+        synchronized (this.OPEN) {
+            this.OPEN.remove(connection);
+        }
+        connection.disconnect();
+    }
+
+    private void disconnectAll() {
+        synchronized (this.OPEN) {
+            for (final HttpURLConnection connection : this.OPEN) connection.disconnect();
+            this.OPEN.clear();
+        }
+    }
+
+    private static long chunkLength(final int chunk, final long total) {
+        return Math.min(CHUNK_SIZE, total - (long) chunk * CHUNK_SIZE);
+    }
+}
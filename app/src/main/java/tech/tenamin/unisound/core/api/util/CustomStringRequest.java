@@ -8,6 +8,8 @@ import com.android.volley.toolbox.StringRequest;
 import java.util.HashMap;
 import java.util.Map;
 
+import tech.tenamin.unisound.core.api.http.HttpTransport;
+
 /**
  * StringRequest class which has a particular user agent.
  *
@@ -16,8 +18,8 @@ import java.util.Map;
  */
 public class CustomStringRequest extends StringRequest {
 
-    /** This is a user agent to fetch a client id. */
-    private static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/105.0.0.0 Safari/537.36 OPR/91.0.4516.72 (Edition GX-CN)";
+    /** This is a user agent to fetch a client id, shared with HttpTransport of the core library. */
+    public static final String USER_AGENT = HttpTransport.USER_AGENT;
 
     public CustomStringRequest(String url, Response.Listener<String> listener, @Nullable Response.ErrorListener errorListener) {
         super(url, listener, errorListener);
@@ -0,0 +1,156 @@
+package tech.tenamin.unisound.core.api.util;
+
+import android.content.Context;
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+
+import com.android.volley.AuthFailureError;
+import com.android.volley.Request;
+import com.android.volley.RequestQueue;
+import com.android.volley.toolbox.BasicNetwork;
+import com.android.volley.toolbox.DiskBasedCache;
+import com.android.volley.toolbox.HttpResponse;
+import com.android.volley.toolbox.HurlStack;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide Volley queue shared by all API adapters and playing adapters.
+ * One bounded set of dispatcher threads, one disk cache and one connection pool are used for the whole app,
+ * instead of creating them for each adapter.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public final class NetworkEngine {
+
+    /** The number of threads which dispatch network requests. */
+    private static final int DISPATCHER_THREADS = 4;
+
+    /** The size of disk cache for responses. */
+    private static final int DISK_CACHE_BYTES = 5 * 1024 * 1024;
+
+    /** The number of keep-alive connections kept in the pool of each host. */
+    private static final int MAX_IDLE_CONNECTIONS_PER_HOST = 5;
+
+    /** The instance shared in the process, or null if it is not started. */
+    private static NetworkEngine instance = null;
+
+    /** The queue which every request is added to. */
+    private final RequestQueue QUEUE;
+
+    /** Requests waiting for a dispatcher, and requests being sent over the network. */
+    private final Set<Request<?>> WAITING = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final Set<Request<?>> ACTIVE = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    private NetworkEngine(@NonNull final Context context) {
+
+        // HttpURLConnection keeps connections alive and pools them per host.
+        // These properties are read by the pool when it is created.
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", String.valueOf(MAX_IDLE_CONNECTIONS_PER_HOST));
+
+        this.QUEUE = new RequestQueue(
+                new DiskBasedCache(new File(context.getCacheDir(), "volley"), DISK_CACHE_BYTES),
+                new BasicNetwork(new TimingStack()),
+                DISPATCHER_THREADS
+        );
+
+        // Count requests for each state.
+        this.QUEUE.addRequestEventListener((request, event) -> {
+            switch (event) {
+                case RequestQueue.RequestEvent.REQUEST_QUEUED:
+                    this.WAITING.add(request);
+                    break;
+                case RequestQueue.RequestEvent.REQUEST_NETWORK_DISPATCH_STARTED:
+                    this.WAITING.remove(request);
+                    this.ACTIVE.add(request);
+                    break;
+                case RequestQueue.RequestEvent.REQUEST_NETWORK_DISPATCH_FINISHED:
+                    this.ACTIVE.remove(request);
+                    break;
+                case RequestQueue.RequestEvent.REQUEST_FINISHED:
+                    this.WAITING.remove(request);
+                    this.ACTIVE.remove(request);
+                    break;
+            }
+        });
+
+        this.QUEUE.start();
+    }
+
+    /**
+     * Returns the engine shared in the process, and starts it if it is not started yet.
+     *
+     * @param context any context, only its application context is kept
+     * @return the shared engine
+     */
+    @NonNull
+    public static synchronized NetworkEngine getInstance(@NonNull final Context context) {
+        if (instance == null) instance = new NetworkEngine(context.getApplicationContext());
+        return instance;
+    }
+
+    /**
+     * Stops the shared engine. Requests in the queue are cancelled.
+     * The next getInstance() starts a new one, so callers must not keep the queue of a stopped engine.
+     */
+    public static synchronized void shutdown() {
+        if (instance == null) return;
+        instance.QUEUE.cancelAll(r -> true);
+        instance.QUEUE.stop();
+        instance = null;
+    }
+
+    @NonNull
+    public RequestQueue getQueue() {
+        return this.QUEUE;
+    }
+
+    /**
+     * @return the number of requests waiting for a dispatcher
+     */
+    public int getQueuedRequests() {
+        return this.WAITING.size();
+    }
+
+    /**
+     * @return the number of requests being sent over the network, which hold a connection
+     */
+    public int getOpenConnections() {
+        return this.ACTIVE.size();
+    }
+
+    /**
+     * @return the number of requests being sent over the network for each host
+     */
+    @NonNull
+    public Map<String, Integer> getOpenConnectionsPerHost() {
+        final Map<String, Integer> counts = new HashMap<>();
+        for (final Request<?> request : this.ACTIVE) {
+            counts.merge(String.valueOf(Uri.parse(request.getUrl()).getHost()), 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    /**
+     * HurlStack which tells measured requests when their response headers arrive.
+     * HurlStack returns as soon as the headers are read, and the body is read by BasicNetwork afterwards.
+     */
+    private static final class TimingStack extends HurlStack {
+
+        @Override
+        public HttpResponse executeRequest(final Request<?> request, final Map<String, String> additionalHeaders) throws IOException, AuthFailureError {
+            final HttpResponse response = super.executeRequest(request, additionalHeaders);
+            if (request instanceof StreamingRequest) ((StreamingRequest<?>) request).onHeadersReceived();
+            return response;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package tech.tenamin.unisound.core.api.util;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.android.volley.NetworkResponse;
+import com.android.volley.ParseError;
+import com.android.volley.Request;
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.HttpHeaderParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+import tech.tenamin.unisound.core.metrics.RequestMetrics;
+import tech.tenamin.unisound.core.metrics.RequestTimer;
+
+/**
+ * Volley request which parses the response body as a stream of chars.
+ * Unlike StringRequest, the body is never copied into a String,
+ * and parsing runs on the network thread instead of the main thread.
+ * If metrics are set, each stage of the request is recorded into them.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ * @param <T> the type of parsed response
+ */
+public class StreamingRequest<T> extends Request<T> {
+
+    /** Content type of json request body. */
+    private static final String JSON_CONTENT_TYPE = "application/json; charset=utf-8";
+
+    /**
+     * Parser of response body.
+     *
+     * @param <T> the type of parsed response
+     */
+    public interface Parser<T> {
+        T parse(Reader reader) throws IOException;
+    }
+
+    /** Lock to guard LISTENER as it is cleared on cancel() and read on delivery. */
+    private final Object LOCK = new Object();
+
+    /** Parser which converts the response body. */
+    private final Parser<T> PARSER;
+
+    /** Json request body, or null for requests without body. */
+    private final String BODY;
+
+    /** Priority in the shared queue. */
+    private Priority priority = Priority.NORMAL;
+
+    /** Timer of the request, or null if it is not measured. */
+    @Nullable
+    private RequestTimer timer = null;
+
+    /** Counts snippets in the parsed response, or null if it does not produce snippets. */
+    @Nullable
+    private ToIntFunction<T> produced = null;
+
+    @GuardedBy("LOCK")
+    @Nullable
+    private Response.Listener<T> listener;
+
+    public StreamingRequest(
+            final int method,
+            @NonNull final String url,
+            @Nullable final String jsonBody,
+            @NonNull final Parser<T> parser,
+            @Nullable final Response.Listener<T> listener,
+            @Nullable final Response.ErrorListener errorListener
+    ) {
+        super(method, url, errorListener);
+        this.BODY = jsonBody;
+        this.PARSER = parser;
+        this.listener = listener;
+    }
+
+    public StreamingRequest(
+            @NonNull final String url,
+            @NonNull final Parser<T> parser,
+            @Nullable final Response.Listener<T> listener,
+            @Nullable final Response.ErrorListener errorListener
+    ) {
+        this(Method.GET, url, null, parser, listener, errorListener);
+    }
+
+    /**
+     * Sets the priority in the queue, so that the request can be sent ahead of others.
+     *
+     * @param priority priority of the request
+     * @return this request
+     */
+    public StreamingRequest<T> setPriority(@NonNull final Priority priority) {
+        this.priority = priority;
+        return this;
+    }
+
+    @Override
+    public Priority getPriority() {
+        return this.priority;
+    }
+
+    /**
+     * Measures the request from now on. Call this right before the request is queued.
+     *
+     * @param metrics metrics of the endpoint
+     * @param produced counts snippets in the parsed response, or null if it does not produce snippets
+     * @return this request
+     */
+    public StreamingRequest<T> setMetrics(@NonNull final RequestMetrics metrics, @Nullable final ToIntFunction<T> produced) {
+        this.timer = metrics.start();
+        this.produced = produced;
+        return this;
+    }
+
+    // Volley marks each stage of the request, and taking it from the network queue is when it is sent.
+    @Override
+    public void addMarker(final String tag) {
+        super.addMarker(tag);
+        if (this.timer != null && "network-queue-take".equals(tag)) this.timer.dispatched();
+    }
+
+    /**
+     * Called by the network stack when the response headers arrive.
+     */
+    void onHeadersReceived() {
+        if (this.timer != null) this.timer.firstByte();
+    }
+
+    @Override
+    public void cancel() {
+        super.cancel();
+        synchronized (this.LOCK) {
+            this.listener = null;
+        }
+    }
+
+    // Same user agent as CustomStringRequest, since YouTube serves a different page for unknown clients.
+    @Override
+    public Map<String, String> getHeaders() {
+        final Map<String, String> headers = new HashMap<>();
+        headers.put("User-agent", CustomStringRequest.USER_AGENT);
+        return headers;
+    }
+
+    @Override
+    public String getBodyContentType() {
+        return this.BODY == null ? super.getBodyContentType() : JSON_CONTENT_TYPE;
+    }
+
+    @Override
+    public byte[] getBody() {
+        return this.BODY == null ? null : this.BODY.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    protected Response<T> parseNetworkResponse(final NetworkResponse response) {
+        final RequestTimer timer = this.timer;
+        if (timer != null) {
+            timer.bytes(response.data.length);
+            timer.beginParse();
+        }
+
+        final Charset charset = Charset.forName(HttpHeaderParser.parseCharset(response.headers, "UTF-8"));
+        try (Reader reader = new InputStreamReader(new ByteArrayInputStream(response.data), charset)) {
+            final T parsed = this.PARSER.parse(reader);
+            if (timer != null) {
+                timer.endParse(this.produced == null || parsed == null ? -1 : this.produced.applyAsInt(parsed));
+                timer.finish();
+            }
+            return Response.success(parsed, HttpHeaderParser.parseCacheHeaders(response));
+        } catch (IOException | RuntimeException e) {
+            if (timer != null) timer.fail();
+            return Response.error(new ParseError(e));
+        }
+    }
+
+    @Override
+    public void deliverError(final VolleyError error) {
+        if (this.timer != null) this.timer.fail();
+        super.deliverError(error);
+    }
+
+    @Override
+    protected void deliverResponse(final T response) {
+        final Response.Listener<T> listener;
+        synchronized (this.LOCK) {
+            listener = this.listener;
+        }
+        if (listener != null) listener.onResponse(response);
+    }
+}
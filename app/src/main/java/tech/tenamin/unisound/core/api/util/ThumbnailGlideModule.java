@@ -0,0 +1,46 @@
+package tech.tenamin.unisound.core.api.util;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.GlideBuilder;
+import com.bumptech.glide.annotation.GlideModule;
+import com.bumptech.glide.load.DecodeFormat;
+import com.bumptech.glide.load.engine.cache.InternalCacheDiskCacheFactory;
+import com.bumptech.glide.load.engine.cache.LruResourceCache;
+import com.bumptech.glide.load.engine.cache.MemorySizeCalculator;
+import com.bumptech.glide.module.AppGlideModule;
+import com.bumptech.glide.request.RequestOptions;
+
+/**
+ * Glide configuration of the app.
+ * Caches are sized for lists of small thumbnails.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+@GlideModule
+public class ThumbnailGlideModule extends AppGlideModule {
+
+    /** The size of disk cache for thumbnails. */
+    private static final long DISK_CACHE_BYTES = 64 * 1024 * 1024;
+
+    @Override
+    public void applyOptions(@NonNull final Context context, @NonNull final GlideBuilder builder) {
+
+        // Memory cache and bitmap pool are sized from the screen and memory class of the device.
+        final MemorySizeCalculator calculator = new MemorySizeCalculator.Builder(context).build();
+        builder.setMemoryCache(new LruResourceCache(calculator.getMemoryCacheSize()));
+
+        builder.setDiskCache(new InternalCacheDiskCacheFactory(context, "thumbnails", DISK_CACHE_BYTES));
+
+        // Thumbnails are opaque, so half the memory of ARGB_8888 is enough.
+        builder.setDefaultRequestOptions(new RequestOptions().format(DecodeFormat.PREFER_RGB_565));
+    }
+
+    @Override
+    public boolean isManifestParsingEnabled() {
+        return false;
+    }
+}
@@ -0,0 +1,76 @@
+package tech.tenamin.unisound.core.api.util;
+
+import android.content.Context;
+import android.widget.ImageView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.request.RequestOptions;
+
+/**
+ * Loads thumbnails of music snippets into rows of lists.
+ * Loading goes through Glide, which keeps decoded thumbnails in a memory LRU and downloaded ones in a disk cache,
+ * decodes them sampled down to the size of the view and reuses bitmaps.
+ * A load bound to a view is cancelled when the view is reused for another row,
+ * and loads of the same URL in flight are shared.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public class ThumbnailLoader {
+
+    /**
+     * Options shared by loads and preloads.
+     * The transformation is set explicitly, because the one Glide picks from the scale type of the view
+     * would otherwise give a loaded thumbnail another cache key than the preloaded one.
+     */
+    private static final RequestOptions OPTIONS = new RequestOptions()
+            .fitCenter()
+            .priority(Priority.LOW)
+            .diskCacheStrategy(DiskCacheStrategy.RESOURCE);
+
+    /** Do not let make instance of ThumbnailLoader */
+    private ThumbnailLoader() { }
+
+    /**
+     * Loads the thumbnail into the view, replacing the load previously bound to it.
+     *
+     * @param view the view to show the thumbnail
+     * @param url URL of the thumbnail, or null to clear the view
+     */
+    public static void load(@NonNull final ImageView view, @Nullable final String url) {
+        Glide.with(view)
+                .load(url)
+                .apply(OPTIONS)
+                .into(view);
+    }
+
+    /**
+     * Cancels the load bound to the view and releases its bitmap.
+     * This is called when the row is recycled.
+     *
+     * @param view the view which is no longer shown
+     */
+    public static void cancel(@NonNull final ImageView view) {
+        Glide.with(view).clear(view);
+    }
+
+    /**
+     * Downloads and decodes the thumbnail into the caches ahead of time, so that it is shown instantly later.
+     *
+     * @param context context used to start loading
+     * @param url URL of the thumbnail
+     * @param size width and height of the view in pixels, which the thumbnail is decoded for
+     */
+    public static void preload(@NonNull final Context context, @Nullable final String url, final int size) {
+        if (url == null) return;
+        Glide.with(context.getApplicationContext())
+                .load(url)
+                .apply(OPTIONS)
+                .preload(size, size);
+    }
+}
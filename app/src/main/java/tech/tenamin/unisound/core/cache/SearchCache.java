@@ -0,0 +1,303 @@
+package tech.tenamin.unisound.core.cache;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import tech.tenamin.unisound.core.api.MusicSnippet;
+/**
+ * Two-tier (memory LRU and disk) cache of search result pages.
+ * Pages are keyed by provider, normalized keyword and the cursor (offset or continuation token) of the request.
+ * A page younger than the time to live is fresh. An older page is still served within the stale window,
+ * and the caller is expected to revalidate it in background.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public final class SearchCache {
+
+    /** Tag for Android logging system. */
+    private static final String TAG = "Search Cache";
+
+    /** The number of pages kept in memory. */
+    private static final int MEMORY_ENTRIES = 64;
+
+    /** The number of pages and the total size of them kept on disk. Older pages are deleted first. */
+    private static final int DISK_ENTRIES = 256;
+    private static final long DISK_BYTES = 8 * 1024 * 1024;
+
+    /** The instance shared in the process. */
+    private static SearchCache instance = null;
+
+    /** Pages recently used, keyed by the hash of cache key. */
+    private final LruCache<String, Entry> MEMORY = new LruCache<>(MEMORY_ENTRIES);
+
+    /** Directory of pages on disk. */
+    private final File DIRECTORY;
+
+    /** Executor which reads and writes pages on disk in order. */
+    private final ExecutorService DISK_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    /** Handler to call back on the main thread. */
+    private final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    /** How long a page is fresh, and how long after that a stale page is still served. */
+    private volatile long timeToLiveMillis = 30 * 60 * 1000L, staleWindowMillis = 7 * 24 * 60 * 60 * 1000L;
+
+    private SearchCache(@NonNull final Context context) {
+        this.DIRECTORY = new File(context.getCacheDir(), "search");
+    }
+
+    @NonNull
+    public static synchronized SearchCache getInstance(@NonNull final Context context) {
+        if (instance == null) instance = new SearchCache(context.getApplicationContext());
+        return instance;
+    }
+
+    /**
+     * Sets how long a page is served without revalidation.
+     *
+     * @param millis time to live in milliseconds
+     */
+    public void setTimeToLive(final long millis) {
+        this.timeToLiveMillis = millis;
+    }
+
+    /**
+     * Sets how long after its time to live a page is still served while it is revalidated.
+     * A long window lets repeated searches work offline.
+     *
+     * @param millis stale window in milliseconds
+     */
+    public void setStaleWhileRevalidate(final long millis) {
+        this.staleWindowMillis = millis;
+    }
+
+    /**
+     * Builds a cache key of a search request.
+     *
+     * @param provider name of the search provider
+     * @param keyword search keyword, which is normalized
+     * @param cursor offset or continuation token of the request, or an empty string for the first page
+     * @return cache key
+     */
+    @NonNull
+    public static String keyOf(@NonNull final String provider, @NonNull final String keyword, @NonNull final String cursor) {
+        final String normalized = keyword.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+        return hash(provider + '\n' + normalized + '\n' + cursor);
+    }
+
+    /**
+     * Looks up a page. Memory is looked up first, then disk in background.
+     *
+     * @param key cache key built by keyOf()
+     * @param callback called on the main thread with the page, or null if there is no usable page
+     */
+    public void lookup(@NonNull final String key, @NonNull final Consumer<Entry> callback) {
+        final long now = System.currentTimeMillis();
+        final Entry cached = this.MEMORY.get(key);
+        if (cached != null && cached.isUsable(now)) {
+            callback.accept(cached);
+            return;
+        }
+        if (cached != null) this.MEMORY.remove(key);
+
+        this.DISK_EXECUTOR.execute(() -> {
+            Entry entry = this.read(key);
+
+            // A page past its stale window is never served again, so it is deleted.
+            if (entry != null && !entry.isUsable(now)) {
+                if (!this.fileOf(key).delete()) Log.w(TAG, "Expired entry can not be deleted");
+                entry = null;
+            }
+            if (entry != null) this.MEMORY.put(key, entry);
+
+            final Entry result = entry;
+            this.MAIN_HANDLER.post(() -> callback.accept(result));
+        });
+    }
+
+    /**
+     * Stores a page in memory and writes it to disk in background.
+     *
+     * @param key cache key built by keyOf()
+     * @param page items of the page
+     * @param nextCursor cursor to fetch the page after this one
+     */
+    public void put(@NonNull final String key, @NonNull final List<? extends MusicSnippet> page, @Nullable final String nextCursor) {
+        final Entry entry = new Entry(new ArrayList<>(page), nextCursor, System.currentTimeMillis());
+        this.MEMORY.put(key, entry);
+        this.DISK_EXECUTOR.execute(() -> this.write(key, entry));
+    }
+
+    /**
+     * A cached page.
+     */
+    public final class Entry {
+
+        /** Items of the page. */
+        private final List<MusicSnippet> PAGE;
+
+        /** Cursor to fetch the page after this one. */
+        private final String NEXT_CURSOR;
+
+        /** The time when the page was fetched. */
+        private final long FETCHED_AT;
+
+        private Entry(final List<MusicSnippet> page, final String nextCursor, final long fetchedAt) {
+            this.PAGE = Collections.unmodifiableList(page);
+            this.NEXT_CURSOR = nextCursor;
+            this.FETCHED_AT = fetchedAt;
+        }
+
+        public List<MusicSnippet> getPAGE() {
+            return this.PAGE;
+        }
+
+        public String getNEXT_CURSOR() {
+            return this.NEXT_CURSOR;
+        }
+
+        /**
+         * @return true if the page can be served without revalidation
+         */
+        public boolean isFresh() {
+            return System.currentTimeMillis() - this.FETCHED_AT < timeToLiveMillis;
+        }
+
+        private boolean isUsable(final long now) {
+            return now - this.FETCHED_AT < timeToLiveMillis + staleWindowMillis;
+        }
+    }
+
+    private File fileOf(final String key) {
+        return new File(this.DIRECTORY, key);
+    }
+
+    @Nullable
+    private Entry read(final String key) {
+        final File file = this.fileOf(key);
+        if (!file.exists()) return null;
+
+        try (InputStream in = new FileInputStream(file)) {
+            final byte[] bytes = new byte[(int) file.length()];
+            int offset = 0, n;
+            while (offset < bytes.length && (n = in.read(bytes, offset, bytes.length - offset)) != -1) offset += n;
+
+            final JSONObject json = new JSONObject(new String(bytes, 0, offset, StandardCharsets.UTF_8));
+            final JSONArray array = json.getJSONArray("page");
+            final List<MusicSnippet> page = new ArrayList<>(array.length());
+            for (int i = 0; i < array.length(); i++) {
+                final MusicSnippet snippet = SnippetCodec.fromJSON(array.getJSONObject(i));
+                if (snippet != null) page.add(snippet);
+            }
+            return new Entry(page, json.optString("next", null), json.getLong("fetched_at"));
+        } catch (IOException | JSONException e) {
+            Log.w(String.format("%s Broken entry", TAG), e);
+            if (!file.delete()) Log.w(TAG, "Broken entry can not be deleted");
+            return null;
+        }
+    }
+
+    private void write(final String key, final Entry entry) {
+        if (!this.DIRECTORY.exists() && !this.DIRECTORY.mkdirs()) return;
+
+        try {
+            final JSONArray array = new JSONArray();
+            for (final MusicSnippet snippet : entry.PAGE) {
+                final JSONObject json = SnippetCodec.toJSON(snippet);
+                if (json != null) array.put(json);
+            }
+            final JSONObject json = new JSONObject()
+                    .put("page", array)
+                    .put("next", entry.NEXT_CURSOR)
+                    .put("fetched_at", entry.FETCHED_AT);
+
+            // Write to a temporary file first, so that a broken entry is never read.
+            final File temporary = new File(this.DIRECTORY, key + ".tmp");
+            try (OutputStream out = new FileOutputStream(temporary)) {
+                out.write(json.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            final File file = this.fileOf(key);
+            if (!temporary.renameTo(file)) {
+                Log.w(TAG, "Entry can not be stored");
+                return;
+            }
+
+            // The modified time tells the age of the page when the directory is trimmed.
+            if (!file.setLastModified(entry.FETCHED_AT)) Log.w(TAG, "Fetched time can not be stored");
+        } catch (IOException | JSONException e) {
+            Log.w(String.format("%s Entry can not be stored", TAG), e);
+        }
+
+        this.trim(entry.FETCHED_AT);
+    }
+
+    /**
+     * Deletes pages past their stale window, then the oldest pages until the disk tier fits its limits.
+     *
+     * @param now the current time
+     */
+    private void trim(final long now) {
+        final File[] files = this.DIRECTORY.listFiles((directory, name) -> !name.endsWith(".tmp"));
+        if (files == null) return;
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+
+        long bytes = 0;
+        for (final File file : files) bytes += file.length();
+
+        int entries = files.length;
+        for (final File file : files) {
+            final boolean expired = now - file.lastModified() >= this.timeToLiveMillis + this.staleWindowMillis;
+            if (!expired && entries <= DISK_ENTRIES && bytes <= DISK_BYTES) break;
+
+            final long length = file.length();
+            if (!file.delete()) {
+                Log.w(TAG, "Old entry can not be deleted");
+                continue;
+            }
+            entries--;
+            bytes -= length;
+        }
+    }
+
+    /** Hashes a cache key into a file name. */
+    private static String hash(final String key) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (final byte b : digest) builder.append(String.format("%02x", b));
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
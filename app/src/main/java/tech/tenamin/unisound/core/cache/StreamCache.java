@@ -0,0 +1,178 @@
+package tech.tenamin.unisound.core.cache;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Base64;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Cache of resolved audio stream URLs, keyed by provider and track.
+ * Resolved URLs are signed and stop working at some point, so each one lives until the expiry written in the URL
+ * ("expire" of YouTube, "expires" or the CloudFront policy of SoundCloud).
+ * Entries are persisted in shared preferences, so they survive restarts.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public final class StreamCache {
+
+    /** Tag for Android logging system. */
+    private static final String TAG = "Stream Cache";
+
+    /** Name of shared preferences which stores entries. */
+    private static final String PREFERENCES_NAME = "streams";
+
+    /** Suffix of preference keys of expiry. */
+    private static final String EXPIRES_AT_SUFFIX = "@expires_at";
+
+    /** Lifetime of URLs which do not tell their expiry. */
+    private static final long DEFAULT_TTL_MILLIS = 30 * 60 * 1000L;
+
+    /** URLs are dropped this long before they expire, so that the stream does not expire while it is played. */
+    private static final long EXPIRY_MARGIN_MILLIS = 10 * 60 * 1000L;
+
+    /** Expiry in CloudFront policy, which SoundCloud uses to sign URLs. */
+    private static final Pattern POLICY_EXPIRY = Pattern.compile("\"AWS:EpochTime\"\\s*:\\s*(\\d+)");
+
+    /** The instance shared in the process. */
+    private static StreamCache instance = null;
+
+    /** Entries of URLs and their expiry. */
+    private final SharedPreferences PREFERENCES;
+
+    private StreamCache(@NonNull final Context context) {
+        this.PREFERENCES = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    @NonNull
+    public static synchronized StreamCache getInstance(@NonNull final Context context) {
+        if (instance == null) instance = new StreamCache(context.getApplicationContext());
+        return instance;
+    }
+
+    /**
+     * Builds a cache key of a track.
+     *
+     * @param provider name of the provider
+     * @param id id of the track in the provider
+     * @return cache key
+     */
+    @NonNull
+    public static String keyOf(@NonNull final String provider, @NonNull final String id) {
+        return SnippetCodec.keyOf(provider, id);
+    }
+
+    /**
+     * Returns the resolved URL if it is not going to expire.
+     *
+     * @param key cache key built by keyOf()
+     * @return the resolved URL, or null if there is no usable URL
+     */
+    @Nullable
+    public String get(@NonNull final String key) {
+        final String url = this.PREFERENCES.getString(key, null);
+        if (url == null) return null;
+
+        if (System.currentTimeMillis() >= this.PREFERENCES.getLong(key + EXPIRES_AT_SUFFIX, 0)) {
+            this.invalidate(key);
+            return null;
+        }
+        return url;
+    }
+
+    /**
+     * Stores a resolved URL until its expiry.
+     * Expired entries of other tracks are removed at the same time.
+     *
+     * @param key cache key built by keyOf()
+     * @param url the resolved URL
+     */
+    public void put(@NonNull final String key, @NonNull final String url) {
+        final long now = System.currentTimeMillis();
+        final long expiresAt = expiryOf(url, now) - EXPIRY_MARGIN_MILLIS;
+        if (expiresAt <= now) return;
+
+        final SharedPreferences.Editor editor = this.PREFERENCES.edit();
+        for (final Map.Entry<String, ?> entry : this.PREFERENCES.getAll().entrySet()) {
+            if (!entry.getKey().endsWith(EXPIRES_AT_SUFFIX) || !(entry.getValue() instanceof Long)) continue;
+            if ((Long) entry.getValue() > now) continue;
+
+            final String expiredKey = entry.getKey();
+            editor.remove(expiredKey).remove(expiredKey.substring(0, expiredKey.length() - EXPIRES_AT_SUFFIX.length()));
+        }
+
+        editor.putString(key, url)
+                .putLong(key + EXPIRES_AT_SUFFIX, expiresAt)
+                .apply();
+    }
+
+    /**
+     * Removes a URL, which is called when the URL is rejected before its expiry.
+     *
+     * @param key cache key built by keyOf()
+     */
+    public void invalidate(@NonNull final String key) {
+        this.PREFERENCES.edit()
+                .remove(key)
+                .remove(key + EXPIRES_AT_SUFFIX)
+                .apply();
+    }
+
+    /**
+     * Reads the expiry from query parameters of a signed URL.
+     *
+     * @param url the signed URL
+     * @param now current time in milliseconds
+     * @return expiry in milliseconds, or the default lifetime from now if the URL does not tell it
+     */
+    private static long expiryOf(final String url, final long now) {
+        final int start = url.indexOf('?');
+        if (start < 0) return now + DEFAULT_TTL_MILLIS;
+
+        for (final String parameter : url.substring(start + 1).split("&")) {
+            final int separator = parameter.indexOf('=');
+            if (separator < 0) continue;
+            final String name = parameter.substring(0, separator);
+            final String value = parameter.substring(separator + 1);
+
+            try {
+                switch (name) {
+                    case "expire":
+                    case "expires":
+                    case "Expires":
+                        return Long.parseLong(value) * 1000L;
+                    case "Policy":
+                        final Long expiry = expiryOfPolicy(URLDecoder.decode(value, "UTF-8"));
+                        if (expiry != null) return expiry;
+                        break;
+                }
+            } catch (Exception e) {
+                Log.w(String.format("%s Broken expiry", TAG), e);
+            }
+        }
+        return now + DEFAULT_TTL_MILLIS;
+    }
+
+    /**
+     * Reads the expiry from a CloudFront policy.
+     *
+     * @param policy the policy encoded in URL-safe base64 of CloudFront
+     * @return expiry in milliseconds, or null if the policy does not tell it
+     */
+    @Nullable
+    private static Long expiryOfPolicy(final String policy) {
+        final String base64 = policy.replace('-', '+').replace('_', '=').replace('~', '/');
+        final String json = new String(Base64.decode(base64, Base64.DEFAULT), StandardCharsets.UTF_8);
+        final Matcher matcher = POLICY_EXPIRY.matcher(json);
+        return matcher.find() ? Long.parseLong(matcher.group(1)) * 1000L : null;
+    }
+}
@@ -0,0 +1,598 @@
+package tech.tenamin.unisound.core.cache;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import tech.tenamin.unisound.core.api.util.CustomStringRequest;
+
+/**
+ * Loopback HTTP proxy which caches music sources on disk while they are streamed.
+ * The player reads from the proxy, which serves the ranges already cached from disk,
+ * and fetches only the missing ranges from upstream while writing them into the cache.
+ * Tracks are cached by a stable key instead of the signed URL, so a new URL of the same track reuses the cache.
+ * The cache is bounded in size, and the least recently played tracks are evicted.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public final class StreamProxy {
+
+    /** Tag for Android logging system. */
+    private static final String TAG = "Stream Proxy";
+
+    /** Size of the buffer of each connection. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Timeout of connecting and reading upstream. */
+    private static final int TIMEOUT_MILLIS = 15000;
+
+    /** Content type used if upstream does not tell it. */
+    private static final String DEFAULT_CONTENT_TYPE = "audio/mpeg";
+
+    /** Range header of requests. */
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+
+    /** Total size in Content-Range header. */
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes \\d+-\\d+/(\\d+)");
+
+    /** The instance shared in the process. */
+    private static StreamProxy instance = null;
+
+    /** Directory of cached tracks. */
+    private final File DIRECTORY;
+
+    /** Tracks registered to the proxy, keyed by the path of local URL. */
+    private final Map<String, Entry> ENTRIES = new ConcurrentHashMap<>();
+
+    /** Executor which serves connections from the player. */
+    private final ExecutorService EXECUTOR = Executors.newCachedThreadPool();
+
+    /** Socket which accepts connections from the player. */
+    private final ServerSocket SERVER;
+
+    /** Size limit of the cache in bytes. */
+    private volatile long maxBytes = 512L * 1024 * 1024;
+
+    private StreamProxy(@NonNull final File directory) throws IOException {
+        this.DIRECTORY = directory;
+        this.SERVER = new ServerSocket(0, 16, InetAddress.getByName("127.0.0.1"));
+
+        final Thread acceptor = new Thread(this::accept, TAG);
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @NonNull
+    public static synchronized StreamProxy getInstance(@NonNull final Context context) {
+        if (instance == null) {
+            try {
+                instance = new StreamProxy(new File(context.getCacheDir(), "audio"));
+            } catch (IOException e) {
+                Log.w(String.format("%s IOException", TAG), e);
+                throw new RuntimeException(e);
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Sets the size limit of the cache.
+     *
+     * @param maxBytes limit in bytes
+     */
+    public void setMaxBytes(final long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Registers a music source and returns the local URL which the player reads instead.
+     *
+     * @param key stable key of the track, such as the key in StreamCache
+     * @param upstream URL of the music source, which is used to fetch ranges not cached
+     * @return URL of the proxy
+     */
+    @NonNull
+    public String urlOf(@NonNull final String key, @NonNull final String upstream) {
+        final String name = hash(key);
+        final Entry entry = this.ENTRIES.computeIfAbsent(name, Entry::new);
+        entry.upstream = upstream;
+        return String.format(Locale.ROOT, "http://127.0.0.1:%d/%s", this.SERVER.getLocalPort(), name);
+    }
+
+    private void accept() {
+        while (!this.SERVER.isClosed()) {
+            try {
+                final Socket socket = this.SERVER.accept();
+                this.EXECUTOR.execute(() -> this.serve(socket));
+            } catch (IOException e) {
+                Log.w(String.format("%s IOException", TAG), e);
+            }
+        }
+    }
+
+    /**
+     * Serves a request of the player.
+     */
+    private void serve(final Socket socket) {
+        try (Socket s = socket;
+             InputStream in = s.getInputStream();
+             OutputStream out = s.getOutputStream()) {
+
+            // Read the request line and headers.
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.ISO_8859_1));
+            final String[] request = String.valueOf(reader.readLine()).split(" ");
+            final Map<String, String> headers = new HashMap<>();
+            String line;
+            while ((line = reader.readLine()) != null && !line.isEmpty()) {
+                final int separator = line.indexOf(':');
+                if (separator > 0) headers.put(line.substring(0, separator).trim().toLowerCase(Locale.ROOT), line.substring(separator + 1).trim());
+            }
+
+            // Any local process can connect, so malformed requests are answered instead of trusted.
+            if (request.length < 3 || !request[1].startsWith("/")) {
+                writeHeaders(out, "400 Bad Request", null, 0, null);
+                return;
+            }
+
+            final Entry entry = this.ENTRIES.get(request[1].substring(1));
+            if (entry == null) {
+                writeHeaders(out, "404 Not Found", null, 0, null);
+                return;
+            }
+
+            synchronized (this) {
+                entry.users++;
+            }
+            try {
+                this.serve(entry, !"HEAD".equals(request[0]), headers.get("range"), out);
+            } finally {
+                synchronized (this) {
+                    entry.users--;
+
+                    // A changed source is discarded by the last connection, since others may still read the cache.
+                    if (entry.users == 0 && entry.stale) entry.discard();
+                }
+                this.evict();
+            }
+        } catch (IOException e) {
+
+            // The player closes connections when it seeks, which is not an error.
+            Log.d(TAG, "Connection closed", e);
+        } catch (RuntimeException e) {
+            Log.w(String.format("%s RuntimeException", TAG), e);
+        }
+    }
+
+    /**
+     * Serves the requested range of a track, from the cache and from upstream.
+     */
+    private void serve(final Entry entry, final boolean withBody, final String range, final OutputStream out) throws IOException {
+        final Source source = entry.open();
+        if (source == null) {
+            writeHeaders(out, "502 Bad Gateway", null, 0, null);
+            return;
+        }
+
+        long first = 0, last = source.TOTAL - 1;
+        final Matcher matcher = range == null ? null : RANGE.matcher(range);
+        boolean satisfiable = true;
+        if (matcher != null && matcher.matches()) {
+            try {
+                if (matcher.group(1).isEmpty()) {
+                    satisfiable = !matcher.group(2).isEmpty();
+                    if (satisfiable) first = Math.max(0, source.TOTAL - Long.parseLong(matcher.group(2)));
+                } else {
+                    first = Long.parseLong(matcher.group(1));
+                    if (!matcher.group(2).isEmpty()) last = Math.min(last, Long.parseLong(matcher.group(2)));
+                }
+            } catch (NumberFormatException e) {
+                satisfiable = false;
+            }
+        }
+        if (!satisfiable || first > last) {
+            writeHeaders(out, "416 Range Not Satisfiable", null, 0, String.format(Locale.ROOT, "bytes */%d", source.TOTAL));
+            return;
+        }
+
+        final boolean partial = matcher != null && matcher.matches();
+        writeHeaders(
+                out,
+                partial ? "206 Partial Content" : "200 OK",
+                source.CONTENT_TYPE,
+                last - first + 1,
+                partial ? String.format(Locale.ROOT, "bytes %d-%d/%d", first, last, source.TOTAL) : null
+        );
+        if (!withBody) return;
+
+        // Cached ranges are read from disk, and gaps between them are fetched from upstream.
+        final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long position = first;
+        while (position <= last) {
+            final long cachedEnd = entry.cachedEnd(position);
+            if (cachedEnd > position) {
+                final long end = Math.min(cachedEnd, last + 1);
+                while (position < end) {
+                    buffer.clear().limit((int) Math.min(BUFFER_SIZE, end - position));
+                    final int n = entry.read(buffer, position);
+                    if (n <= 0) throw new IOException("Cache is broken");
+                    out.write(buffer.array(), 0, n);
+                    position += n;
+                }
+            } else {
+                final long end = Math.min(entry.nextCachedStart(position), last + 1);
+                position = this.fetch(entry, source, position, end, out);
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Fetches a range from upstream, sends it to the player and writes it into the cache.
+     *
+     * @return the position after the bytes sent
+     */
+    private long fetch(final Entry entry, final Source source, final long first, final long end, final OutputStream out) throws IOException {
+        final HttpURLConnection connection = open(entry.upstream, first, end - 1);
+        try (InputStream in = connection.getInputStream()) {
+
+            // A new source of the same key may be another encoding, which does not match cached bytes.
+            final Matcher matcher = CONTENT_RANGE.matcher(String.valueOf(connection.getHeaderField("Content-Range")));
+            if (matcher.matches() && Long.parseLong(matcher.group(1)) != source.TOTAL) {
+                entry.stale = true;
+                throw new IOException("Upstream source is changed");
+            }
+
+            // Servers ignoring Range send the whole file, so bytes before the range are skipped.
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL && first > 0) {
+                long skipped = 0;
+                while (skipped < first) {
+                    final long n = in.skip(first - skipped);
+                    if (n <= 0) throw new IOException("Upstream ended before the range");
+                    skipped += n;
+                }
+            }
+
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            long position = first;
+            int n;
+            try {
+                while (position < end && (n = in.read(buffer, 0, (int) Math.min(BUFFER_SIZE, end - position))) != -1) {
+                    entry.write(buffer, n, position);
+                    position += n;
+                    out.write(buffer, 0, n);
+                }
+            } finally {
+                entry.saveRanges();
+            }
+            if (position < end) throw new IOException("Upstream ended before the range");
+            return position;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Deletes the least recently played tracks until the cache fits in its limit.
+     * Tracks being served are kept.
+     * Data files are sparse, so their size is counted by the cached ranges instead of their length.
+     */
+    private synchronized void evict() {
+        final File[] files = this.DIRECTORY.listFiles((dir, name) -> name.endsWith(".meta"));
+        if (files == null) return;
+
+        long size = 0;
+        final List<File> metas = new ArrayList<>(Arrays.asList(files));
+        for (final File meta : metas) size += cachedBytesOf(meta);
+        if (size <= this.maxBytes) return;
+
+        metas.sort((a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (final File meta : metas) {
+            if (size <= this.maxBytes) return;
+            final String name = meta.getName().substring(0, meta.getName().length() - ".meta".length());
+            final Entry entry = this.ENTRIES.get(name);
+            if (entry != null && entry.users > 0) continue;
+            if (entry != null) entry.close();
+
+            size -= cachedBytesOf(meta);
+            final File data = new File(dataOf(meta));
+            if (!data.delete() | !meta.delete() | !new File(this.DIRECTORY, name + ".ranges").delete()) {
+                Log.w(TAG, String.format("Cache of %s can not be deleted", name));
+            }
+        }
+    }
+
+    private static String dataOf(final File meta) {
+        final String path = meta.getPath();
+        return path.substring(0, path.length() - ".meta".length()) + ".data";
+    }
+
+    /**
+     * @return the number of bytes cached for the track, summed from its saved ranges
+     */
+    private static long cachedBytesOf(final File meta) {
+        final String path = meta.getPath();
+        final File ranges = new File(path.substring(0, path.length() - ".meta".length()) + ".ranges");
+        if (!ranges.exists()) return 0;
+
+        long bytes = 0;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(ranges))) {
+            final int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                final long start = in.readLong();
+                bytes += in.readLong() - start;
+            }
+        } catch (IOException e) {
+
+            // Ranges which can not be read are not served either, so the allocated size is the best guess.
+            Log.w(String.format("%s Broken ranges", TAG), e);
+            return new File(dataOf(meta)).length();
+        }
+        return bytes;
+    }
+
+    private static HttpURLConnection open(final String url, final long first, final long last) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+        connection.setRequestProperty("User-agent", CustomStringRequest.USER_AGENT);
+        connection.setRequestProperty("Range", String.format(Locale.ROOT, "bytes=%d-%d", first, last));
+        if (connection.getResponseCode() >= HttpURLConnection.HTTP_BAD_REQUEST) {
+            connection.disconnect();
+            throw new IOException(String.format("Upstream rejected: %d", connection.getResponseCode()));
+        }
+        return connection;
+    }
+
+    private static void writeHeaders(
+            final OutputStream out,
+            final String status,
+            final String contentType,
+            final long contentLength,
+            final String contentRange
+    ) throws IOException {
+        final StringBuilder builder = new StringBuilder("HTTP/1.1 ").append(status).append("\r\n");
+        if (contentType != null) builder.append("Content-Type: ").append(contentType).append("\r\n");
+        builder.append("Content-Length: ").append(contentLength).append("\r\n");
+        if (contentRange != null) builder.append("Content-Range: ").append(contentRange).append("\r\n");
+        builder.append("Accept-Ranges: bytes\r\nConnection: close\r\n\r\n");
+        out.write(builder.toString().getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+    }
+
+    /** Hashes a key into a file name. */
+    private static String hash(final String key) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (final byte b : digest) builder.append(String.format("%02x", b));
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Size and content type of a source, which are read together while the track is served.
+     */
+    private static final class Source {
+
+        private final long TOTAL;
+        private final String CONTENT_TYPE;
+
+        private Source(final long total, final String contentType) {
+            this.TOTAL = total;
+            this.CONTENT_TYPE = contentType;
+        }
+    }
+
+    /**
+     * A cached track: a sparse data file, ranges written to it, and metadata of the source.
+     */
+    private final class Entry {
+
+        private final String NAME;
+
+        /** Cached ranges, as start to end (exclusive). Ranges never overlap or touch. */
+        private final TreeMap<Long, Long> RANGES = new TreeMap<>();
+
+        /** URL of the latest registered source. */
+        private volatile String upstream;
+
+        /** Size and content type of the source, or -1 if not known yet. */
+        private long total = -1;
+        private String contentType;
+
+        /** Data file which is open while the track is served. */
+        private RandomAccessFile file;
+        private FileChannel channel;
+
+        /** The number of connections being served, guarded by the proxy. */
+        private int users;
+
+        /** Whether upstream is changed, so the cache is discarded when the last connection leaves. Guarded by the proxy. */
+        private volatile boolean stale;
+
+        private Entry(final String name) {
+            this.NAME = name;
+        }
+
+        /**
+         * Opens the data file, reading the metadata from disk or asking it upstream.
+         * The metadata is returned as read under the lock, since the entry may be closed by eviction afterwards.
+         *
+         * @return size and content type of the source, or null if the size can not be known
+         */
+        private synchronized Source open() throws IOException {
+            final File meta = new File(DIRECTORY, this.NAME + ".meta");
+            if (this.total < 0 && meta.exists()) {
+                try (DataInputStream in = new DataInputStream(new FileInputStream(meta))) {
+                    this.total = in.readLong();
+                    this.contentType = in.readUTF();
+                }
+                this.loadRanges();
+            }
+
+            // Ask the first byte to know the size.
+            if (this.total < 0) {
+                final HttpURLConnection connection = StreamProxy.open(this.upstream, 0, 0);
+                try {
+                    final Matcher matcher = CONTENT_RANGE.matcher(String.valueOf(connection.getHeaderField("Content-Range")));
+                    this.total = matcher.matches() ? Long.parseLong(matcher.group(1)) : connection.getContentLengthLong();
+                    this.contentType = connection.getContentType() == null ? DEFAULT_CONTENT_TYPE : connection.getContentType();
+                } finally {
+                    connection.disconnect();
+                }
+                if (this.total < 0) return null;
+
+                if (!DIRECTORY.exists() && !DIRECTORY.mkdirs()) throw new IOException("Cache directory can not be made");
+                try (DataOutputStream out = new DataOutputStream(new FileOutputStream(meta))) {
+                    out.writeLong(this.total);
+                    out.writeUTF(this.contentType);
+                }
+            }
+
+            if (this.file == null) {
+                this.file = new RandomAccessFile(new File(DIRECTORY, this.NAME + ".data"), "rw");
+                this.channel = this.file.getChannel();
+            }
+
+            // The time of metadata marks when the track was last played.
+            if (!meta.setLastModified(System.currentTimeMillis())) Log.w(TAG, "Access time can not be updated");
+            return new Source(this.total, this.contentType);
+        }
+
+        private synchronized void close() {
+            if (this.file == null) return;
+            try {
+                this.file.close();
+            } catch (IOException e) {
+                Log.w(String.format("%s IOException", TAG), e);
+            }
+            this.file = null;
+            this.channel = null;
+            this.RANGES.clear();
+            this.total = -1;
+        }
+
+        /**
+         * Deletes the cache of the track, so it is cached again from the next connection.
+         * This must be called while no connection is served.
+         */
+        private synchronized void discard() {
+            this.close();
+            this.stale = false;
+            for (final String extension : new String[]{".meta", ".ranges", ".data"}) {
+                final File file = new File(DIRECTORY, this.NAME + extension);
+                if (file.exists() && !file.delete()) Log.w(TAG, String.format("%s can not be deleted", file));
+            }
+        }
+
+        /**
+         * @return the end of the cached range containing the position, or the position if it is not cached
+         */
+        private synchronized long cachedEnd(final long position) {
+            final Map.Entry<Long, Long> range = this.RANGES.floorEntry(position);
+            return range != null && range.getValue() > position ? range.getValue() : position;
+        }
+
+        /**
+         * @return the start of the first cached range after the position, or the size of the source
+         */
+        private synchronized long nextCachedStart(final long position) {
+            final Long start = this.RANGES.higherKey(position);
+            return start == null ? this.total : start;
+        }
+
+        /**
+         * Reads cached bytes from the data file.
+         *
+         * @return the number of bytes read
+         */
+        private synchronized int read(final ByteBuffer buffer, final long position) throws IOException {
+            if (this.channel == null) throw new IOException("Cache is closed");
+            return this.channel.read(buffer, position);
+        }
+
+        /**
+         * Writes bytes into the data file and marks them cached.
+         */
+        private synchronized void write(final byte[] bytes, final int length, final long position) throws IOException {
+            if (this.channel == null) throw new IOException("Cache is closed");
+            final ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+            long offset = position;
+            while (buffer.hasRemaining()) offset += this.channel.write(buffer, offset);
+
+            long start = position, end = position + length;
+            final Map.Entry<Long, Long> before = this.RANGES.floorEntry(start);
+            if (before != null && before.getValue() >= start) {
+                start = before.getKey();
+                end = Math.max(end, before.getValue());
+            }
+            Map.Entry<Long, Long> after;
+            while ((after = this.RANGES.ceilingEntry(start)) != null && after.getKey() <= end) {
+                end = Math.max(end, after.getValue());
+                this.RANGES.remove(after.getKey());
+            }
+            this.RANGES.put(start, end);
+        }
+
+        private synchronized void saveRanges() throws IOException {
+            final File ranges = new File(DIRECTORY, this.NAME + ".ranges");
+            try (DataOutputStream out = new DataOutputStream(new FileOutputStream(ranges))) {
+                out.writeInt(this.RANGES.size());
+                for (final Map.Entry<Long, Long> range : this.RANGES.entrySet()) {
+                    out.writeLong(range.getKey());
+                    out.writeLong(range.getValue());
+                }
+            }
+        }
+
+        private void loadRanges() {
+            final File ranges = new File(DIRECTORY, this.NAME + ".ranges");
+            if (!ranges.exists()) return;
+            try (DataInputStream in = new DataInputStream(new FileInputStream(ranges))) {
+                final int count = in.readInt();
+                for (int i = 0; i < count; i++) this.RANGES.put(in.readLong(), in.readLong());
+            } catch (IOException e) {
+                Log.w(String.format("%s Broken ranges", TAG), e);
+                this.RANGES.clear();
+            }
+        }
+    }
+}
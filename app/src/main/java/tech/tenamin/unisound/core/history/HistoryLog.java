@@ -0,0 +1,371 @@
+package tech.tenamin.unisound.core.history;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import tech.tenamin.unisound.core.api.MusicSnippet;
+import tech.tenamin.unisound.core.cache.SnippetCodec;
+
+/**
+ * Append-only log of played music.
+ * Play events are appended to the log as length-prefixed records, and written together in a batch off the main thread.
+ * The log is compacted from time to time into the index, which holds one record per music.
+ * For compaction the log is renamed aside with a generation, and the index tells the last generation merged into it,
+ * so a crash at any point neither loses nor merges twice the events of the log.
+ * Both files are read through memory mapping.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public final class HistoryLog {
+
+    /** Tag for Android logging system. */
+    private static final String TAG = "History Log";
+
+    /** Delay to gather play events into one write. */
+    private static final long COMMIT_DELAY_MILLIS = 1000;
+
+    /** Size of the log at which it is compacted into the index. */
+    private static final long COMPACT_BYTES = 64 * 1024;
+
+    /** Interval of compaction, even if the log is small. */
+    private static final long COMPACT_INTERVAL_MINUTES = 15;
+
+    /** Size of fields before the snippet in a record: last played at, listened millis and play count. */
+    private static final int HEADER_BYTES = 8 + 8 + 4;
+
+    /** Marks the header of the index. It is negative, so it is never taken for the length of a record. */
+    private static final int INDEX_MAGIC = 0xC8494458;
+
+    /** Size of the header of the index: magic and the last generation of logs merged into it. */
+    private static final int INDEX_HEADER_BYTES = 4 + 8;
+
+    /** Name of logs set aside for compaction, which is followed by the generation. */
+    private static final String ASIDE_PREFIX = "history.log.";
+
+    /** The instance shared in the process. */
+    private static HistoryLog instance = null;
+
+    /** Directory of the files. */
+    private final File DIRECTORY;
+
+    /** Play events appended after the last compaction. */
+    private final File LOG;
+
+    /** Compacted history, one record per music. */
+    private final File INDEX;
+
+    /** Single thread which writes, compacts and reads the files in order. */
+    private final ScheduledExecutorService WRITER = Executors.newSingleThreadScheduledExecutor();
+
+    /** Play events which are not written yet. */
+    private final List<HistorySnippet> PENDING = new ArrayList<>();
+
+    /** Whether a write of pending events is scheduled. */
+    private boolean committing = false;
+
+    private HistoryLog(@NonNull final File directory) {
+        if (!directory.exists() && !directory.mkdirs()) Log.w(TAG, "History directory can not be made");
+        this.DIRECTORY = directory;
+        this.LOG = new File(directory, "history.log");
+        this.INDEX = new File(directory, "history.index");
+
+        // The writer runs in order, so the log is repaired before anything is appended to it.
+        this.WRITER.execute(this::repair);
+        this.WRITER.scheduleWithFixedDelay(this::compact, 0, COMPACT_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    @NonNull
+    public static synchronized HistoryLog getInstance(@NonNull final Context context) {
+        if (instance == null) instance = new HistoryLog(new File(context.getApplicationContext().getFilesDir(), "history"));
+        return instance;
+    }
+
+    /**
+     * Records that a music was played. This returns at once, and the event is written later with others.
+     *
+     * @param snippet the music which was played
+     * @param playedAt the time when it started, in milliseconds since epoch
+     * @param listenedMillis how long it was listened
+     */
+    public void record(@NonNull final MusicSnippet snippet, final long playedAt, final long listenedMillis) {
+        synchronized (this.PENDING) {
+            this.PENDING.add(new HistorySnippet(snippet, playedAt, listenedMillis, 1));
+            if (this.committing) return;
+            this.committing = true;
+        }
+        this.WRITER.schedule(this::commit, COMMIT_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Lists the history of every music, the most recently played first.
+     *
+     * @return future of the history, completed in background
+     */
+    @NonNull
+    public CompletableFuture<List<HistorySnippet>> list() {
+        return CompletableFuture.supplyAsync(() -> {
+            this.commit();
+            final List<HistorySnippet> history = new ArrayList<>(this.load().values());
+            history.sort((a, b) -> Long.compare(b.getLAST_PLAYED_AT(), a.getLAST_PLAYED_AT()));
+            return history;
+        }, this.WRITER);
+    }
+
+    /**
+     * Appends pending events to the log in one write.
+     */
+    private void commit() {
+        final List<HistorySnippet> events;
+        synchronized (this.PENDING) {
+            events = new ArrayList<>(this.PENDING);
+            this.PENDING.clear();
+            this.committing = false;
+        }
+        if (events.isEmpty()) return;
+
+        try (FileOutputStream out = new FileOutputStream(this.LOG, true)) {
+            final FileChannel channel = out.getChannel();
+            final ByteBuffer buffer = encode(events);
+            while (buffer.hasRemaining()) channel.write(buffer);
+            channel.force(false);
+        } catch (IOException e) {
+            Log.w(String.format("%s IOException", TAG), e);
+        }
+
+        if (this.LOG.length() >= COMPACT_BYTES) this.compact();
+    }
+
+    /**
+     * Cuts a record torn by a crash off the end of the log.
+     * Otherwise events appended after it would never be read, and would be lost by the next compaction.
+     */
+    private void repair() {
+        if (!this.LOG.exists()) return;
+
+        try (RandomAccessFile file = new RandomAccessFile(this.LOG, "rw")) {
+            final FileChannel channel = file.getChannel();
+            final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            long valid = 0;
+            while (buffer.remaining() >= 4) {
+                final int length = buffer.getInt();
+                if (length < HEADER_BYTES || length > buffer.remaining()) break;
+                buffer.position(buffer.position() + length);
+                valid = buffer.position();
+            }
+
+            if (valid < channel.size()) {
+                Log.w(TAG, String.format("Torn record is cut off the log (%d bytes)", channel.size() - valid));
+                channel.truncate(valid);
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            Log.w(String.format("%s IOException", TAG), e);
+        }
+    }
+
+    /**
+     * Merges the log into the index.
+     * The log is renamed aside first, so events appended meanwhile go to a new log.
+     * The new index records the generation of the logs merged into it, and is renamed into place in one step.
+     * Logs set aside are deleted afterwards, and ones left by a crash are skipped by their generation.
+     */
+    private void compact() {
+        this.commit();
+
+        final long merged = this.indexGeneration();
+        final List<File> asides = this.asideLogs(merged);
+        if (this.LOG.length() > 0) {
+            final long next = asides.isEmpty() ? merged + 1 : generationOf(asides.get(asides.size() - 1)) + 1;
+            final File aside = new File(this.DIRECTORY, ASIDE_PREFIX + next);
+            if (!this.LOG.renameTo(aside)) {
+                Log.w(TAG, "Log can not be set aside");
+                return;
+            }
+            asides.add(aside);
+        }
+        if (asides.isEmpty()) {
+            this.deleteAsideLogs(merged);
+            return;
+        }
+
+        final long generation = generationOf(asides.get(asides.size() - 1));
+        final Map<String, HistorySnippet> history = new LinkedHashMap<>();
+        read(this.INDEX, history);
+        for (final File aside : asides) read(aside, history);
+
+        final File temporary = new File(this.INDEX.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temporary)) {
+            final FileChannel channel = out.getChannel();
+            final ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER_BYTES).putInt(INDEX_MAGIC).putLong(generation);
+            header.flip();
+            while (header.hasRemaining()) channel.write(header);
+            final ByteBuffer buffer = encode(history.values());
+            while (buffer.hasRemaining()) channel.write(buffer);
+            channel.force(false);
+        } catch (IOException e) {
+            Log.w(String.format("%s IOException", TAG), e);
+            return;
+        }
+
+        if (!temporary.renameTo(this.INDEX)) {
+            Log.w(TAG, "Index can not be replaced");
+            return;
+        }
+        this.deleteAsideLogs(generation);
+    }
+
+    /**
+     * Reads the index, the logs set aside and the log, and merges events of the same music.
+     *
+     * @return history keyed by the music
+     */
+    private Map<String, HistorySnippet> load() {
+        final Map<String, HistorySnippet> history = new LinkedHashMap<>();
+        read(this.INDEX, history);
+        for (final File aside : this.asideLogs(this.indexGeneration())) read(aside, history);
+        read(this.LOG, history);
+        return history;
+    }
+
+    /**
+     * @return the last generation of logs merged into the index, or 0 if none is
+     */
+    private long indexGeneration() {
+        if (this.INDEX.length() < INDEX_HEADER_BYTES) return 0;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(this.INDEX))) {
+            return in.readInt() == INDEX_MAGIC ? in.readLong() : 0;
+        } catch (IOException e) {
+            Log.w(String.format("%s IOException", TAG), e);
+            return 0;
+        }
+    }
+
+    /**
+     * @param after the generation merged into the index
+     * @return logs set aside which are not merged into the index yet, in the order of generation
+     */
+    private List<File> asideLogs(final long after) {
+        final List<File> asides = new ArrayList<>();
+        final File[] files = this.DIRECTORY.listFiles((directory, name) -> name.startsWith(ASIDE_PREFIX));
+        if (files == null) return asides;
+        for (final File file : files) {
+            if (generationOf(file) > after) asides.add(file);
+        }
+        asides.sort(Comparator.comparingLong(HistoryLog::generationOf));
+        return asides;
+    }
+
+    /** Deletes logs set aside which are already merged into the index. */
+    private void deleteAsideLogs(final long merged) {
+        final File[] files = this.DIRECTORY.listFiles((directory, name) -> name.startsWith(ASIDE_PREFIX));
+        if (files == null) return;
+        for (final File file : files) {
+            if (generationOf(file) <= merged && !file.delete()) Log.w(TAG, "Merged log can not be deleted");
+        }
+    }
+
+    /** Returns the generation of a log set aside, or -1 if the name is broken. */
+    private static long generationOf(final File aside) {
+        try {
+            return Long.parseLong(aside.getName().substring(ASIDE_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void read(final File file, final Map<String, HistorySnippet> history) {
+        if (!file.exists() || file.length() == 0) return;
+
+        try (FileInputStream in = new FileInputStream(file)) {
+            final FileChannel channel = in.getChannel();
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            // The index starts with its header. An index written before the header has none.
+            if (buffer.remaining() >= INDEX_HEADER_BYTES && buffer.getInt(0) == INDEX_MAGIC) {
+                buffer.position(INDEX_HEADER_BYTES);
+            }
+
+            while (buffer.remaining() >= 4) {
+                final int length = buffer.getInt();
+
+                // A record cut by a crash is the last one, so reading stops there.
+                if (length < HEADER_BYTES || length > buffer.remaining()) break;
+
+                final long lastPlayedAt = buffer.getLong();
+                final long listenedMillis = buffer.getLong();
+                final int playCount = buffer.getInt();
+
+                // The snippet is decoded straight out of the mapped file.
+                final ByteBuffer body = buffer.slice();
+                body.limit(length - HEADER_BYTES);
+                buffer.position(buffer.position() + length - HEADER_BYTES);
+
+                final List<MusicSnippet> snippets;
+                try {
+                    snippets = SnippetCodec.fromBytes(body);
+                } catch (IllegalArgumentException e) {
+                    Log.w(String.format("%s Broken record", TAG), e);
+                    continue;
+                }
+                if (snippets.isEmpty()) continue;
+                final MusicSnippet snippet = snippets.get(0);
+
+                final HistorySnippet event = new HistorySnippet(snippet, lastPlayedAt, listenedMillis, playCount);
+                history.merge(SnippetCodec.keyOf(snippet), event, HistorySnippet::merge);
+            }
+        } catch (IOException e) {
+            Log.w(String.format("%s IOException", TAG), e);
+        }
+    }
+
+    /**
+     * Encodes history into records: length, last played at, listened millis, play count and the binary form of the snippet.
+     */
+    private static ByteBuffer encode(final Collection<HistorySnippet> history) {
+        final List<byte[]> bodies = new ArrayList<>(history.size());
+        int size = 0;
+        for (final HistorySnippet snippet : history) {
+            final byte[] body = SnippetCodec.toBytes(Collections.singletonList(snippet.getSNIPPET()));
+            bodies.add(body);
+            size += 4 + HEADER_BYTES + body.length;
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate(size);
+        int i = 0;
+        for (final HistorySnippet snippet : history) {
+            final byte[] body = bodies.get(i++);
+            buffer.putInt(HEADER_BYTES + body.length)
+                    .putLong(snippet.getLAST_PLAYED_AT())
+                    .putLong(snippet.getLISTENED_MILLIS())
+                    .putInt(snippet.getPLAY_COUNT())
+                    .put(body);
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -1,8 +1,83 @@
 package tech.tenamin.unisound.core.history;
 
+import androidx.annotation.NonNull;
+
+import tech.tenamin.unisound.core.api.MusicSnippet;
+
 /**
+ * The snippet object contains the history of a music: when it was last played, how long and how many times.
+ * A single play event is also this object whose play count is 1.
+ *
  * @author tenamen
  * @since 2023/08/17.
  */
 public class HistorySnippet {
+
+    /** The music which was played. */
+    private final MusicSnippet SNIPPET;
+
+    /** The time when the music was last played, in milliseconds since epoch. */
+    private final long LAST_PLAYED_AT;
+
+    /** Total time which the music was listened, in milliseconds. */
+    private final long LISTENED_MILLIS;
+
+    /** The number of times which the music was played. */
+    private final int PLAY_COUNT;
+
+    public HistorySnippet(
+            @NonNull final MusicSnippet SNIPPET,
+            final long LAST_PLAYED_AT,
+            final long LISTENED_MILLIS,
+            final int PLAY_COUNT
+    ) {
+        this.SNIPPET = SNIPPET;
+        this.LAST_PLAYED_AT = LAST_PLAYED_AT;
+        this.LISTENED_MILLIS = LISTENED_MILLIS;
+        this.PLAY_COUNT = PLAY_COUNT;
+    }
+
+    /**
+     * Merges the history of the same music.
+     *
+     * @param other history of the same music
+     * @return history which sums both
+     */
+    @NonNull
+    public HistorySnippet merge(@NonNull final HistorySnippet other) {
+        final boolean newer = other.LAST_PLAYED_AT >= this.LAST_PLAYED_AT;
+        return new HistorySnippet(
+                newer ? other.SNIPPET : this.SNIPPET,
+                Math.max(this.LAST_PLAYED_AT, other.LAST_PLAYED_AT),
+                this.LISTENED_MILLIS + other.LISTENED_MILLIS,
+                this.PLAY_COUNT + other.PLAY_COUNT
+        );
+    }
+
+    public MusicSnippet getSNIPPET() {
+        return SNIPPET;
+    }
+
+    public long getLAST_PLAYED_AT() {
+        return LAST_PLAYED_AT;
+    }
+
+    public long getLISTENED_MILLIS() {
+        return LISTENED_MILLIS;
+    }
+
+    public int getPLAY_COUNT() {
+        return PLAY_COUNT;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "HistorySnippet{" +
+                "SNIPPET=" + SNIPPET +
+                ", LAST_PLAYED_AT=" + LAST_PLAYED_AT +
+                ", LISTENED_MILLIS=" + LISTENED_MILLIS +
+                ", PLAY_COUNT=" + PLAY_COUNT +
+                '}';
+    }
 }
@@ -0,0 +1,474 @@
+package tech.tenamin.unisound.core.index;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import tech.tenamin.unisound.core.api.MusicSnippet;
+import tech.tenamin.unisound.core.cache.SnippetCodec;
+
+/**
+ * Local inverted index over titles and publishers of every music which the app has seen.
+ * Text is split into words, and each word is indexed by its n-grams: trigrams for alphabets,
+ * and bigrams for CJK text which has no spaces between words. Query words shorter than a gram match the start of words.
+ * The index is held in memory and rebuilt from a log of snippets on start, so it works with no connectivity.
+ * Replaced music leaves its postings behind, so the index is rebuilt in memory once most of it is replaced.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public final class SnippetIndex {
+
+    /** Tag for Android logging system. */
+    private static final String TAG = "Snippet Index";
+
+    /** Delay to gather snippets into one write. */
+    private static final long COMMIT_DELAY_MILLIS = 1000;
+
+    /**
+     * How the app has seen a music. Music which the user played or liked ranks above music only seen in results.
+     */
+    public enum Source {
+        SEEN, PLAYED, LIKED
+    }
+
+    /** The instance shared in the process. */
+    private static SnippetIndex instance = null;
+
+    /** Log of indexed snippets. A later line of the same music replaces an earlier one. */
+    private final File LOG;
+
+    /** Single thread which loads and writes the log. */
+    private final ScheduledExecutorService WRITER = Executors.newSingleThreadScheduledExecutor();
+
+    /** Indexed music, by ID. Replaced music leaves null. */
+    private final List<Document> DOCUMENTS = new ArrayList<>();
+
+    /** IDs of indexed music, keyed by the provider-qualified key. */
+    private final Map<String, Integer> IDS = new HashMap<>();
+
+    /** IDs of music which contains each gram, in ascending order. */
+    private final TreeMap<String, Postings> POSTINGS = new TreeMap<>();
+
+    /** The number of replaced music, whose IDs are left in postings. */
+    private int dead = 0;
+
+    /** Lines which are not written to the log yet. */
+    private final List<String> PENDING = new ArrayList<>();
+
+    /** Whether a write of pending lines is scheduled. */
+    private boolean committing = false;
+
+    private SnippetIndex(@NonNull final File directory) {
+        if (!directory.exists() && !directory.mkdirs()) Log.w(TAG, "Index directory can not be made");
+        this.LOG = new File(directory, "snippets.log");
+        this.WRITER.execute(this::load);
+    }
+
+    @NonNull
+    public static synchronized SnippetIndex getInstance(@NonNull final Context context) {
+        if (instance == null) instance = new SnippetIndex(new File(context.getApplicationContext().getFilesDir(), "index"));
+        return instance;
+    }
+
+    /**
+     * Indexes music. Music already indexed is indexed again only if its text changes or it is seen in a stronger way.
+     *
+     * @param snippets the music
+     * @param source how the app has seen the music
+     */
+    public void add(@NonNull final Collection<? extends MusicSnippet> snippets, @NonNull final Source source) {
+        final List<String> lines = new ArrayList<>();
+        synchronized (this) {
+            for (final MusicSnippet snippet : snippets) {
+                if (this.put(snippet, source.ordinal())) lines.add(lineOf(snippet, source.ordinal()));
+            }
+            this.rebuildIfSparse();
+        }
+        if (lines.isEmpty()) return;
+
+        synchronized (this.PENDING) {
+            this.PENDING.addAll(lines);
+            if (this.committing) return;
+            this.committing = true;
+        }
+        this.WRITER.schedule(this::commit, COMMIT_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Finds music whose title or publisher contains every word of the query.
+     * A word shorter than a gram is matched only at the start of a word, as it is looked up by the prefix of grams.
+     * Music matched in the title, then music played or liked, ranks first.
+     *
+     * @param query words to be found
+     * @param limit the maximum number of results
+     * @return the music found, the best match first
+     */
+    @NonNull
+    public synchronized List<MusicSnippet> search(@NonNull final String query, final int limit) {
+        final List<String> words = wordsOf(normalize(query));
+        if (words.isEmpty()) return new ArrayList<>();
+
+        // Candidates contain all grams of every word, and are checked against the text afterwards.
+        int[] candidates = null;
+        for (final String word : words) {
+            final int[] ids = this.idsOf(word);
+            candidates = candidates == null ? ids : Postings.intersect(candidates, ids);
+            if (candidates.length == 0) return new ArrayList<>();
+        }
+
+        final List<Document> hits = new ArrayList<>();
+        for (final int id : candidates) {
+            final Document document = this.DOCUMENTS.get(id);
+            if (document == null) continue;
+
+            int score = 0;
+            for (final String word : words) {
+                if (matches(document.TITLE, word)) score += 2;
+                else if (matches(document.PUBLISHER, word)) score += 1;
+                else {
+                    score = -1;
+                    break;
+                }
+            }
+            if (score < 0) continue;
+            document.score = score * 4 + document.source;
+            hits.add(document);
+        }
+
+        hits.sort((a, b) -> a.score != b.score ? Integer.compare(b.score, a.score) : Integer.compare(b.ID, a.ID));
+        final List<MusicSnippet> results = new ArrayList<>();
+        for (int i = 0; i < Math.min(limit, hits.size()); i++) results.add(hits.get(i).SNIPPET);
+        return results;
+    }
+
+    /**
+     * Checks the text of a candidate in the same way as idsOf looks it up.
+     *
+     * @return true if the text contains the word, or a word starting with it if it is shorter than a gram
+     */
+    private static boolean matches(final String text, final String word) {
+        if (word.codePointCount(0, word.length()) >= gramLength(word)) return text.contains(word);
+        if (!text.contains(word)) return false;
+        for (final String textWord : wordsOf(text)) {
+            if (textWord.startsWith(word)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns IDs of music which may contain the word.
+     */
+    private int[] idsOf(final String word) {
+        final int n = gramLength(word);
+
+        // A short word matches every gram which starts with it.
+        if (word.codePointCount(0, word.length()) < n) {
+            final List<int[]> lists = new ArrayList<>();
+            for (final Postings postings : this.POSTINGS.subMap(word, word + Character.MAX_VALUE).values()) {
+                lists.add(postings.toArray());
+            }
+            return Postings.union(lists);
+        }
+
+        int[] ids = null;
+        for (final String gram : gramsOf(word, n)) {
+            final Postings postings = this.POSTINGS.get(gram);
+            if (postings == null) return new int[0];
+            ids = ids == null ? postings.toArray() : Postings.intersect(ids, postings.toArray());
+        }
+        return ids == null ? new int[0] : ids;
+    }
+
+    /**
+     * Indexes a music in memory.
+     *
+     * @return true if the index is changed
+     */
+    private boolean put(final MusicSnippet snippet, final int source) {
+        final String key = SnippetCodec.keyOf(snippet);
+        if (key == null || snippet.getTITLE() == null) return false;
+
+        final String title = normalize(snippet.getTITLE());
+        final String publisher = snippet.getPUBLISHER() == null ? "" : normalize(snippet.getPUBLISHER());
+
+        final Integer oldId = this.IDS.get(key);
+        int strongest = source;
+        if (oldId != null) {
+            final Document old = this.DOCUMENTS.get(oldId);
+            if (old.TITLE.equals(title) && old.PUBLISHER.equals(publisher)) {
+                if (source <= old.source) return false;
+                old.source = source;
+                return true;
+            }
+
+            // Changed text is indexed as new music, and the old one is left out of results.
+            strongest = Math.max(source, old.source);
+            this.DOCUMENTS.set(oldId, null);
+            this.dead++;
+        }
+
+        final int id = this.DOCUMENTS.size();
+        final Document document = new Document(id, snippet, title, publisher);
+        document.source = strongest;
+        this.DOCUMENTS.add(document);
+        this.IDS.put(key, id);
+
+        for (final String word : wordsOf(title + ' ' + publisher)) {
+            final int n = gramLength(word);
+            final List<String> grams = word.codePointCount(0, word.length()) < n
+                    ? Arrays.asList(word)
+                    : gramsOf(word, n);
+            for (final String gram : grams) {
+                Postings postings = this.POSTINGS.get(gram);
+                if (postings == null) this.POSTINGS.put(gram, postings = new Postings());
+                postings.add(id);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Indexes live music again from scratch once replaced music outnumbers it, in the same way as the log is rewritten.
+     * Otherwise postings of replaced music are kept forever, and every search skips them.
+     */
+    private void rebuildIfSparse() {
+        if (this.dead * 2 <= this.DOCUMENTS.size()) return;
+
+        final List<Document> live = new ArrayList<>(this.DOCUMENTS.size() - this.dead);
+        for (final Document document : this.DOCUMENTS) {
+            if (document != null) live.add(document);
+        }
+        this.DOCUMENTS.clear();
+        this.IDS.clear();
+        this.POSTINGS.clear();
+        this.dead = 0;
+
+        // IDs are given again in the same order, so postings stay in ascending order.
+        for (final Document document : live) this.put(document.SNIPPET, document.source);
+    }
+
+    /**
+     * Reads the log into memory. The log is rewritten if it holds many replaced lines.
+     */
+    private void load() {
+        if (!this.LOG.exists()) return;
+
+        int lines = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(this.LOG), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines++;
+                try {
+                    final JSONObject json = new JSONObject(line);
+                    final MusicSnippet snippet = SnippetCodec.fromJSON(json.getJSONObject("snippet"));
+                    if (snippet == null) continue;
+                    synchronized (this) {
+                        this.put(snippet, json.getInt("source"));
+                    }
+                } catch (JSONException e) {
+                    Log.w(String.format("%s Broken line", TAG), e);
+                }
+            }
+        } catch (IOException e) {
+            Log.w(String.format("%s IOException", TAG), e);
+        }
+
+        final List<String> live = new ArrayList<>();
+        synchronized (this) {
+            this.rebuildIfSparse();
+            if (lines <= this.IDS.size() * 2) return;
+            for (final Document document : this.DOCUMENTS) {
+                if (document != null) live.add(lineOf(document.SNIPPET, document.source));
+            }
+        }
+        this.write(live, false);
+    }
+
+    /**
+     * Appends pending lines to the log in one write.
+     */
+    private void commit() {
+        final List<String> lines;
+        synchronized (this.PENDING) {
+            lines = new ArrayList<>(this.PENDING);
+            this.PENDING.clear();
+            this.committing = false;
+        }
+        if (!lines.isEmpty()) this.write(lines, true);
+    }
+
+    private void write(final List<String> lines, final boolean append) {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(this.LOG, append), StandardCharsets.UTF_8)) {
+            for (final String line : lines) writer.write(line + '\n');
+        } catch (IOException e) {
+            Log.w(String.format("%s IOException", TAG), e);
+        }
+    }
+
+    private static String lineOf(final MusicSnippet snippet, final int source) {
+        try {
+            final JSONObject json = SnippetCodec.toJSON(snippet);
+            return new JSONObject().put("source", source).put("snippet", json).toString();
+        } catch (JSONException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Normalizes width and case, so that full-width and half-width forms match.
+     */
+    static String normalize(final String text) {
+        return Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Splits text into words. A run of CJK characters is a word of its own, even without spaces around it.
+     */
+    static List<String> wordsOf(final String text) {
+        final List<String> words = new ArrayList<>();
+        final StringBuilder word = new StringBuilder();
+        boolean cjk = false;
+        for (int i = 0; i < text.length(); ) {
+            final int codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+
+            if (!Character.isLetterOrDigit(codePoint)) {
+                if (word.length() > 0) words.add(word.toString());
+                word.setLength(0);
+                continue;
+            }
+            if (word.length() > 0 && isCJK(codePoint) != cjk) {
+                words.add(word.toString());
+                word.setLength(0);
+            }
+            cjk = isCJK(codePoint);
+            word.appendCodePoint(codePoint);
+        }
+        if (word.length() > 0) words.add(word.toString());
+        return words;
+    }
+
+    static List<String> gramsOf(final String word, final int n) {
+        final List<String> grams = new ArrayList<>();
+        final int count = word.codePointCount(0, word.length());
+        for (int i = 0; i + n <= count; i++) {
+            final int start = word.offsetByCodePoints(0, i);
+            grams.add(word.substring(start, word.offsetByCodePoints(start, n)));
+        }
+        return grams;
+    }
+
+    private static int gramLength(final String word) {
+        return isCJK(word.codePointAt(0)) ? 2 : 3;
+    }
+
+    private static boolean isCJK(final int codePoint) {
+        final Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+
+    /**
+     * An indexed music, with its normalized text.
+     */
+    private static final class Document {
+
+        private final int ID;
+        private final MusicSnippet SNIPPET;
+        private final String TITLE, PUBLISHER;
+
+        /** The strongest way which the app has seen the music, as the ordinal of Source. */
+        private int source;
+
+        /** Score of the current query. */
+        private int score;
+
+        private Document(final int id, final MusicSnippet snippet, final String title, final String publisher) {
+            this.ID = id;
+            this.SNIPPET = snippet;
+            this.TITLE = title;
+            this.PUBLISHER = publisher;
+        }
+    }
+
+    /**
+     * Sorted list of IDs. IDs are given in ascending order, so adding is appending.
+     */
+    private static final class Postings {
+
+        private int[] ids = new int[4];
+        private int size;
+
+        private void add(final int id) {
+            if (this.size > 0 && this.ids[this.size - 1] == id) return;
+            if (this.size == this.ids.length) this.ids = Arrays.copyOf(this.ids, this.size * 2);
+            this.ids[this.size++] = id;
+        }
+
+        private int[] toArray() {
+            return Arrays.copyOf(this.ids, this.size);
+        }
+
+        private static int[] intersect(final int[] a, final int[] b) {
+            final int[] result = new int[Math.min(a.length, b.length)];
+            int i = 0, j = 0, size = 0;
+            while (i < a.length && j < b.length) {
+                if (a[i] < b[j]) i++;
+                else if (a[i] > b[j]) j++;
+                else {
+                    result[size++] = a[i];
+                    i++;
+                    j++;
+                }
+            }
+            return Arrays.copyOf(result, size);
+        }
+
+        private static int[] union(final List<int[]> lists) {
+            int total = 0;
+            for (final int[] list : lists) total += list.length;
+            final int[] all = new int[total];
+            int offset = 0;
+            for (final int[] list : lists) {
+                System.arraycopy(list, 0, all, offset, list.length);
+                offset += list.length;
+            }
+            Arrays.sort(all);
+
+            int size = 0;
+            for (int i = 0; i < all.length; i++) {
+                if (size == 0 || all[size - 1] != all[i]) all[size++] = all[i];
+            }
+            return Arrays.copyOf(all, size);
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package tech.tenamin.unisound.core.library;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import tech.tenamin.unisound.core.api.MusicSnippet;
+import tech.tenamin.unisound.core.cache.SnippetCodec;
+import tech.tenamin.unisound.core.index.SnippetIndex;
+
+/**
+ * Local store of liked music and playlists.
+ * Music is keyed by the provider-qualified ID such as youtube:video_id.
+ * Liked keys are also held in memory, so whether a music is liked is answered at once on any thread.
+ * Writes return at once, and are applied together in one transaction by a single writer thread.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public final class LibraryStore {
+
+    /** Tag for Android logging system. */
+    private static final String TAG = "Library Store";
+
+    /** Delay to gather writes into one transaction. */
+    private static final long COMMIT_DELAY_MILLIS = 500;
+
+    /** The instance shared in the process. */
+    private static LibraryStore instance = null;
+
+    /** Application context. */
+    private final Context CONTEXT;
+
+    /** Database of the library. */
+    private final Helper HELPER;
+
+    /** Single thread which writes and reads the database in order. */
+    private final ScheduledExecutorService WRITER = Executors.newSingleThreadScheduledExecutor();
+
+    /** Writes which are not applied yet. */
+    private final List<Consumer<SQLiteDatabase>> PENDING = new ArrayList<>();
+
+    /** Keys of liked music. */
+    private final Set<String> LIKED = Collections.synchronizedSet(new HashSet<>());
+
+    /** Whether a transaction of pending writes is scheduled. */
+    private boolean committing = false;
+
+    private LibraryStore(@NonNull final Context context) {
+        this.CONTEXT = context;
+        this.HELPER = new Helper(context);
+
+        // Liked keys are loaded before anything else runs on the writer.
+        this.WRITER.execute(() -> {
+            try (Cursor cursor = this.HELPER.getReadableDatabase().rawQuery("SELECT key FROM likes", null)) {
+                while (cursor.moveToNext()) this.LIKED.add(cursor.getString(0));
+            }
+        });
+    }
+
+    @NonNull
+    public static synchronized LibraryStore getInstance(@NonNull final Context context) {
+        if (instance == null) instance = new LibraryStore(context.getApplicationContext());
+        return instance;
+    }
+
+    /**
+     * Returns whether a music is liked. This does not touch the database.
+     * Likes are loaded in background when the store is created, so this may answer false until they are loaded.
+     *
+     * @param snippet the music
+     * @return true if the music is liked
+     */
+    public boolean isLiked(@NonNull final MusicSnippet snippet) {
+        final String key = SnippetCodec.keyOf(snippet);
+        return key != null && this.LIKED.contains(key);
+    }
+
+    /**
+     * Likes or unlikes a music.
+     *
+     * @param snippet the music
+     * @param liked true to like it
+     */
+    public void setLiked(@NonNull final MusicSnippet snippet, final boolean liked) {
+        final String key = SnippetCodec.keyOf(snippet);
+        if (key == null) return;
+
+        if (liked) {
+            this.LIKED.add(key);
+            SnippetIndex.getInstance(this.CONTEXT).add(Collections.singletonList(snippet), SnippetIndex.Source.LIKED);
+            final long likedAt = System.currentTimeMillis();
+            this.submit(database -> {
+                putSnippet(database, key, snippet);
+                final ContentValues values = new ContentValues();
+                values.put("key", key);
+                values.put("liked_at", likedAt);
+                database.insertWithOnConflict("likes", null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            });
+        } else {
+            this.LIKED.remove(key);
+            this.submit(database -> database.delete("likes", "key = ?", new String[]{key}));
+        }
+    }
+
+    /**
+     * Lists liked music, the most recently liked first.
+     *
+     * @return future of the liked music, completed in background
+     */
+    @NonNull
+    public CompletableFuture<List<MusicSnippet>> listLikes() {
+        return this.query(database -> {
+            final List<MusicSnippet> likes = new ArrayList<>();
+            try (Cursor cursor = database.rawQuery(
+                    "SELECT s.json FROM likes l JOIN snippets s ON s.key = l.key ORDER BY l.liked_at DESC",
+                    null
+            )) {
+                while (cursor.moveToNext()) {
+                    final MusicSnippet snippet = decode(cursor.getString(0));
+                    if (snippet != null) likes.add(snippet);
+                }
+            }
+            return likes;
+        });
+    }
+
+    /**
+     * Creates an empty playlist.
+     *
+     * @param name name of the playlist
+     * @return future of the ID of the playlist
+     */
+    @NonNull
+    public CompletableFuture<Long> createPlaylist(@NonNull final String name) {
+        return this.query(database -> {
+            final ContentValues values = new ContentValues();
+            values.put("name", name);
+            values.put("created_at", System.currentTimeMillis());
+            return database.insertOrThrow("playlists", null, values);
+        });
+    }
+
+    /**
+     * Lists playlists in the order of creation.
+     *
+     * @return future of names of playlists keyed by their IDs
+     */
+    @NonNull
+    public CompletableFuture<Map<Long, String>> listPlaylists() {
+        return this.query(database -> {
+            final Map<Long, String> playlists = new LinkedHashMap<>();
+            try (Cursor cursor = database.rawQuery("SELECT id, name FROM playlists ORDER BY created_at", null)) {
+                while (cursor.moveToNext()) playlists.put(cursor.getLong(0), cursor.getString(1));
+            }
+            return playlists;
+        });
+    }
+
+    public void renamePlaylist(final long id, @NonNull final String name) {
+        this.submit(database -> {
+            final ContentValues values = new ContentValues();
+            values.put("name", name);
+            database.update("playlists", values, "id = ?", new String[]{String.valueOf(id)});
+        });
+    }
+
+    public void deletePlaylist(final long id) {
+        this.submit(database -> {
+            database.delete("playlist_tracks", "playlist_id = ?", new String[]{String.valueOf(id)});
+            database.delete("playlists", "id = ?", new String[]{String.valueOf(id)});
+        });
+    }
+
+    /**
+     * Opens a playlist. Tracks are read in one indexed query, and each snippet is decoded when it is first shown.
+     *
+     * @param id ID of the playlist
+     * @return future of the playlist
+     */
+    @NonNull
+    public CompletableFuture<Playlist> openPlaylist(final long id) {
+        return this.query(database -> {
+            try (Cursor cursor = database.rawQuery(
+                    "SELECT t.position, t.key, s.json FROM playlist_tracks t JOIN snippets s ON s.key = t.key"
+                            + " WHERE t.playlist_id = ? ORDER BY t.position",
+                    new String[]{String.valueOf(id)}
+            )) {
+                final Playlist playlist = new Playlist(this, id, cursor.getCount());
+                while (cursor.moveToNext()) playlist.load(cursor.getLong(0), cursor.getString(1), cursor.getString(2));
+                return playlist;
+            }
+        });
+    }
+
+    /**
+     * Queues a write, which is applied with others in one transaction.
+     *
+     * @param write the write applied on the database
+     */
+    void submit(@NonNull final Consumer<SQLiteDatabase> write) {
+        synchronized (this.PENDING) {
+            this.PENDING.add(write);
+            if (this.committing) return;
+            this.committing = true;
+        }
+        this.WRITER.schedule(this::commit, COMMIT_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs a read on the writer after pending writes are applied, so that it sees them.
+     */
+    private <R> CompletableFuture<R> query(final Function<SQLiteDatabase, R> read) {
+        return CompletableFuture.supplyAsync(() -> {
+            this.commit();
+            return read.apply(this.HELPER.getWritableDatabase());
+        }, this.WRITER);
+    }
+
+    /**
+     * Applies pending writes in one transaction.
+     * If a write fails, the transaction is rolled back and the writes are applied again one by one,
+     * so that the failing write drops only itself.
+     * Savepoints are not used, since SQLiteDatabase takes "ROLLBACK TO" for a rollback of the whole transaction.
+     */
+    private void commit() {
+        final List<Consumer<SQLiteDatabase>> writes;
+        synchronized (this.PENDING) {
+            writes = new ArrayList<>(this.PENDING);
+            this.PENDING.clear();
+            this.committing = false;
+        }
+        if (writes.isEmpty()) return;
+
+        final SQLiteDatabase database = this.HELPER.getWritableDatabase();
+        if (apply(database, writes)) return;
+        for (final Consumer<SQLiteDatabase> write : writes) apply(database, Collections.singletonList(write));
+    }
+
+    /**
+     * Applies writes in one transaction.
+     *
+     * @return true if every write is applied, false if they are rolled back
+     */
+    private static boolean apply(final SQLiteDatabase database, final List<Consumer<SQLiteDatabase>> writes) {
+        database.beginTransaction();
+        try {
+            for (final Consumer<SQLiteDatabase> write : writes) write.accept(database);
+            database.setTransactionSuccessful();
+            return true;
+        } catch (RuntimeException e) {
+            Log.w(String.format("%s Transaction failed", TAG), e);
+            return false;
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    /**
+     * Stores the latest snippet of a music, which likes and playlists refer to by the key.
+     */
+    static void putSnippet(final SQLiteDatabase database, final String key, final MusicSnippet snippet) {
+        try {
+            final JSONObject json = SnippetCodec.toJSON(snippet);
+            if (json == null) return;
+            final ContentValues values = new ContentValues();
+            values.put("key", key);
+            values.put("json", json.toString());
+            database.insertWithOnConflict("snippets", null, values, SQLiteDatabase.CONFLICT_REPLACE);
+        } catch (JSONException e) {
+            Log.w(String.format("%s JSONException", TAG), e);
+        }
+    }
+
+    static MusicSnippet decode(final String json) {
+        try {
+            return SnippetCodec.fromJSON(new JSONObject(json));
+        } catch (JSONException e) {
+            Log.w(String.format("%s JSONException", TAG), e);
+            return null;
+        }
+    }
+
+    /**
+     * Creates and upgrades the database.
+     * Tracks of playlists are keyed by the playlist and a sparse position,
+     * so a moved track is one updated row, and opening a playlist is a range scan of the primary key.
+     */
+    private static final class Helper extends SQLiteOpenHelper {
+
+        private static final int VERSION = 1;
+
+        private Helper(final Context context) {
+            super(context, "library.db", null, VERSION);
+        }
+
+        @Override
+        public void onCreate(final SQLiteDatabase database) {
+            database.execSQL("CREATE TABLE snippets (key TEXT PRIMARY KEY, json TEXT NOT NULL) WITHOUT ROWID");
+            database.execSQL("CREATE TABLE likes (key TEXT PRIMARY KEY, liked_at INTEGER NOT NULL) WITHOUT ROWID");
+            database.execSQL("CREATE INDEX likes_liked_at ON likes (liked_at)");
+            database.execSQL("CREATE TABLE playlists (id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT NOT NULL, created_at INTEGER NOT NULL)");
+            database.execSQL("CREATE TABLE playlist_tracks ("
+                    + "playlist_id INTEGER NOT NULL, position INTEGER NOT NULL, key TEXT NOT NULL,"
+                    + " PRIMARY KEY (playlist_id, position)) WITHOUT ROWID");
+        }
+
+        @Override
+        public void onUpgrade(final SQLiteDatabase database, final int oldVersion, final int newVersion) {
+            // Do nothing, as there is only the first version.
+        }
+    }
+}
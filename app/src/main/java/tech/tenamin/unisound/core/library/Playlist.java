@@ -0,0 +1,193 @@
+package tech.tenamin.unisound.core.library;
+
+import android.content.ContentValues;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import tech.tenamin.unisound.core.api.MusicSnippet;
+import tech.tenamin.unisound.core.cache.SnippetCodec;
+
+/**
+ * An opened playlist, which holds its tracks in memory and writes changes through LibraryStore.
+ * Each track has a sparse position, so a moved track takes a position between its new neighbours
+ * and only its row is rewritten. Positions are numbered again only when two neighbours leave no room.
+ * Changes should be made through one opened instance of a playlist.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public final class Playlist {
+
+    /** Gap between positions of tracks when they are numbered. */
+    private static final long STEP = 1024;
+
+    /** Store which the playlist is written to. */
+    private final LibraryStore STORE;
+
+    /** ID of the playlist. */
+    private final long ID;
+
+    /** Positions, keys and stored snippets of tracks, in the order of playback. */
+    private final List<Long> POSITIONS;
+    private final List<String> KEYS;
+    private final List<String> JSONS;
+
+    /** Snippets decoded from json, or null if the track is not shown yet. */
+    private final List<MusicSnippet> SNIPPETS;
+
+    Playlist(@NonNull final LibraryStore store, final long id, final int size) {
+        this.STORE = store;
+        this.ID = id;
+        this.POSITIONS = new ArrayList<>(size);
+        this.KEYS = new ArrayList<>(size);
+        this.JSONS = new ArrayList<>(size);
+        this.SNIPPETS = new ArrayList<>(size);
+    }
+
+    /**
+     * Adds a track read from the database.
+     */
+    void load(final long position, final String key, final String json) {
+        this.POSITIONS.add(position);
+        this.KEYS.add(key);
+        this.JSONS.add(json);
+        this.SNIPPETS.add(null);
+    }
+
+    public long getID() {
+        return this.ID;
+    }
+
+    public synchronized int size() {
+        return this.KEYS.size();
+    }
+
+    /**
+     * Returns the snippet of a track, decoding it the first time.
+     *
+     * @param index index of the track
+     * @return snippet of the track, or null if it can not be decoded
+     */
+    @Nullable
+    public synchronized MusicSnippet get(final int index) {
+        MusicSnippet snippet = this.SNIPPETS.get(index);
+        if (snippet == null) {
+            snippet = LibraryStore.decode(this.JSONS.get(index));
+            this.SNIPPETS.set(index, snippet);
+        }
+        return snippet;
+    }
+
+    /**
+     * Adds a track at the end.
+     *
+     * @param snippet the music to be added
+     */
+    public synchronized void add(@NonNull final MusicSnippet snippet) {
+        final String key = SnippetCodec.keyOf(snippet);
+        if (key == null) return;
+
+        final long position = this.POSITIONS.isEmpty() ? STEP : this.POSITIONS.get(this.POSITIONS.size() - 1) + STEP;
+        this.POSITIONS.add(position);
+        this.KEYS.add(key);
+        this.JSONS.add(null);
+        this.SNIPPETS.add(snippet);
+
+        this.STORE.submit(database -> {
+            LibraryStore.putSnippet(database, key, snippet);
+            database.insertOrThrow("playlist_tracks", null, this.valuesOf(position, key));
+        });
+    }
+
+    /**
+     * Removes a track.
+     *
+     * @param index index of the track
+     */
+    public synchronized void remove(final int index) {
+        final long position = this.POSITIONS.remove(index);
+        this.KEYS.remove(index);
+        this.JSONS.remove(index);
+        this.SNIPPETS.remove(index);
+
+        this.STORE.submit(database -> database.delete(
+                "playlist_tracks",
+                "playlist_id = ? AND position = ?",
+                new String[]{String.valueOf(this.ID), String.valueOf(position)}
+        ));
+    }
+
+    /**
+     * Moves a track to another index. Only the moved track is rewritten.
+     *
+     * @param from index of the track
+     * @param to index which the track is moved to
+     */
+    public synchronized void move(final int from, final int to) {
+        if (from == to) return;
+
+        final long oldPosition = this.POSITIONS.remove(from);
+        this.KEYS.add(to, this.KEYS.remove(from));
+        this.JSONS.add(to, this.JSONS.remove(from));
+        this.SNIPPETS.add(to, this.SNIPPETS.remove(from));
+
+        final Long before = to > 0 ? this.POSITIONS.get(to - 1) : null;
+        final Long after = to < this.POSITIONS.size() ? this.POSITIONS.get(to) : null;
+        final long newPosition;
+        if (before == null && after == null) {
+            newPosition = oldPosition;
+        } else if (before == null) {
+            newPosition = after - STEP;
+        } else if (after == null) {
+            newPosition = before + STEP;
+        } else if (after - before > 1) {
+            newPosition = before + (after - before) / 2;
+        } else {
+
+            // No room between the neighbours, so the whole playlist is numbered again.
+            this.POSITIONS.add(to, oldPosition);
+            this.renumber();
+            return;
+        }
+        this.POSITIONS.add(to, newPosition);
+
+        this.STORE.submit(database -> {
+            final ContentValues values = new ContentValues();
+            values.put("position", newPosition);
+            database.update(
+                    "playlist_tracks",
+                    values,
+                    "playlist_id = ? AND position = ?",
+                    new String[]{String.valueOf(this.ID), String.valueOf(oldPosition)}
+            );
+        });
+    }
+
+    /**
+     * Numbers positions of all tracks again with the full gap, and rewrites the playlist.
+     */
+    private void renumber() {
+        for (int i = 0; i < this.POSITIONS.size(); i++) this.POSITIONS.set(i, (i + 1) * STEP);
+
+        final List<Long> positions = new ArrayList<>(this.POSITIONS);
+        final List<String> keys = new ArrayList<>(this.KEYS);
+        this.STORE.submit(database -> {
+            database.delete("playlist_tracks", "playlist_id = ?", new String[]{String.valueOf(this.ID)});
+            for (int i = 0; i < positions.size(); i++) {
+                database.insertOrThrow("playlist_tracks", null, this.valuesOf(positions.get(i), keys.get(i)));
+            }
+        });
+    }
+
+    private ContentValues valuesOf(final long position, final String key) {
+        final ContentValues values = new ContentValues();
+        values.put("playlist_id", this.ID);
+        values.put("position", position);
+        values.put("key", key);
+        return values;
+    }
+}
@@ -1,20 +1,42 @@
 package tech.tenamin.unisound.fragment;
 
 import android.os.Bundle;
+import android.os.Environment;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.Toast;
 
+import androidx.appcompat.app.AppCompatActivity;
 import androidx.fragment.app.Fragment;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
 import tech.tenamin.unisound.R;
+import tech.tenamin.unisound.adapter.HistoryListAdapter;
+import tech.tenamin.unisound.core.api.DownloadScheduler;
+import tech.tenamin.unisound.core.api.MusicSnippet;
+import tech.tenamin.unisound.core.api.PlaybackEngine;
+import tech.tenamin.unisound.core.api.PlayingAdapter;
+import tech.tenamin.unisound.core.cache.SnippetCodec;
+import tech.tenamin.unisound.core.history.HistoryLog;
+import tech.tenamin.unisound.core.trace.PlayTrace;
 
 /**
+ * Fragment to display the history of played music.
+ *
  * @author tenamen
  * @since 2023/08/17.
  */
 public class HistoryFragment extends Fragment {
 
+    /** The number of entries queued after the tapped one. */
+    private static final int QUEUE_LENGTH = 20;
+
     public HistoryFragment() {
         // Required empty public constructor
     }
@@ -35,6 +57,48 @@ public class HistoryFragment extends Fragment {
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
                              Bundle savedInstanceState) {
         // Inflate the layout for this fragment
-        return inflater.inflate(R.layout.fragment_home, container, false);
+        final View view = inflater.inflate(R.layout.fragment_history, container, false);
+        final AppCompatActivity appView = (AppCompatActivity) requireActivity();
+
+        // Set adapter to history list view.
+        final HistoryListAdapter historyList = new HistoryListAdapter(appView, R.layout.search_result_item);
+        final RecyclerView listView = view.findViewById(R.id.history_list);
+        listView.setLayoutManager(new LinearLayoutManager(appView));
+        listView.setAdapter(historyList);
+
+        // The history is read in background, and shown once it is read.
+        HistoryLog.getInstance(appView).list().thenAccept(history -> appView.runOnUiThread(() -> historyList.setItems(history)));
+
+        // Play the tapped entry, and the entries below it next.
+        historyList.setOnItemClickListener((selectedSnippet, position) -> {
+            final PlayingAdapter<?> playingAdapter = PlayingAdapter.adapterOf(appView, selectedSnippet.getSNIPPET(), PlayTrace.begin(selectedSnippet.getSNIPPET().getTITLE()));
+
+            final List<PlayingAdapter<?>> queue = new ArrayList<>();
+            for (int i = position + 1; i < Math.min(position + 1 + QUEUE_LENGTH, historyList.getItemCount()); i++) {
+                queue.add(PlayingAdapter.adapterOf(appView, historyList.getItem(i).getSNIPPET()));
+            }
+            PlaybackEngine.getInstance().setQueue(queue);
+
+            // Threading because fetching music source from snippet can take some time.
+            new Thread(playingAdapter::play).start();
+            playingAdapter.setPlaybackCardAppearance();
+        });
+
+        // Long press downloads the entry for offline use.
+        historyList.setOnItemLongClickListener((selectedSnippet, position) -> {
+            final MusicSnippet snippet = selectedSnippet.getSNIPPET();
+            DownloadScheduler.getInstance(appView).enqueue(snippet, destinationOf(appView, snippet), DownloadScheduler.Priority.USER);
+            Toast.makeText(appView, String.format("Downloading %s", snippet.getTITLE()), Toast.LENGTH_SHORT).show();
+        });
+
+        return view;
+    }
+
+    /**
+     * @return the file which the music is downloaded to, in the music directory of the app
+     */
+    private static File destinationOf(final AppCompatActivity appView, final MusicSnippet snippet) {
+        final String name = String.valueOf(SnippetCodec.keyOf(snippet)).replaceAll("[^A-Za-z0-9._-]", "_");
+        return new File(appView.getExternalFilesDir(Environment.DIRECTORY_MUSIC), name);
     }
-}
\ No newline at end of file
+}
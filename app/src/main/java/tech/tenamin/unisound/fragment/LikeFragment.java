@@ -5,16 +5,32 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
+import androidx.appcompat.app.AppCompatActivity;
 import androidx.fragment.app.Fragment;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.List;
 
 import tech.tenamin.unisound.R;
+import tech.tenamin.unisound.adapter.SearchResultListAdapter;
+import tech.tenamin.unisound.core.api.PlaybackEngine;
+import tech.tenamin.unisound.core.api.PlayingAdapter;
+import tech.tenamin.unisound.core.library.LibraryStore;
+import tech.tenamin.unisound.core.trace.PlayTrace;
 
 /**
+ * Fragment to display liked music.
+ *
  * @author tenamen
  * @since 2023/08/17.
  */
 public class LikeFragment extends Fragment {
 
+    /** The number of liked music queued after the tapped one. */
+    private static final int QUEUE_LENGTH = 20;
+
     public LikeFragment() {
         // Required empty public constructor
     }
@@ -35,6 +51,33 @@ public class LikeFragment extends Fragment {
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
                              Bundle savedInstanceState) {
         // Inflate the layout for this fragment
-        return inflater.inflate(R.layout.fragment_home, container, false);
+        final View view = inflater.inflate(R.layout.fragment_like, container, false);
+        final AppCompatActivity appView = (AppCompatActivity) requireActivity();
+
+        // Set adapter to like list view. It has no SearchAPI, so it only shows the liked music.
+        final SearchResultListAdapter likeList = new SearchResultListAdapter(appView, R.layout.search_result_item);
+        final RecyclerView listView = view.findViewById(R.id.like_list);
+        listView.setLayoutManager(new LinearLayoutManager(appView));
+        listView.setAdapter(likeList);
+
+        // Likes are read in background, and shown once they are read.
+        LibraryStore.getInstance(appView).listLikes().thenAccept(likes -> appView.runOnUiThread(() -> likeList.setItems(likes)));
+
+        // Play the tapped music, and the liked music below it next.
+        likeList.setOnItemClickListener((selectedSnippet, position) -> {
+            final PlayingAdapter<?> playingAdapter = PlayingAdapter.adapterOf(appView, selectedSnippet, PlayTrace.begin(selectedSnippet.getTITLE()));
+
+            final List<PlayingAdapter<?>> queue = new ArrayList<>();
+            for (int i = position + 1; i < Math.min(position + 1 + QUEUE_LENGTH, likeList.getItemCount()); i++) {
+                queue.add(PlayingAdapter.adapterOf(appView, likeList.getItem(i)));
+            }
+            PlaybackEngine.getInstance().setQueue(queue);
+
+            // Threading because fetching music source from snippet can take some time.
+            new Thread(playingAdapter::play).start();
+            playingAdapter.setPlaybackCardAppearance();
+        });
+
+        return view;
     }
 }
\ No newline at end of file
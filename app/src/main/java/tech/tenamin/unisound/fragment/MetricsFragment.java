@@ -0,0 +1,94 @@
+package tech.tenamin.unisound.fragment;
+
+import android.os.Bundle;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.fragment.app.Fragment;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import tech.tenamin.unisound.R;
+import tech.tenamin.unisound.core.api.StreamResolver;
+import tech.tenamin.unisound.core.metrics.MetricsRegistry;
+import tech.tenamin.unisound.core.trace.TraceBuffer;
+
+/**
+ * Debug fragment to display request metrics of each provider and endpoint, hits of speculative resolutions,
+ * and to export play traces.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public class MetricsFragment extends Fragment {
+
+    /** Tag for Android logging system. */
+    private static final String TAG = "Metrics Fragment";
+
+    public MetricsFragment() {
+        // Required empty public constructor
+    }
+
+    @Override
+    public View onCreateView(LayoutInflater inflater, ViewGroup container,
+                             Bundle savedInstanceState) {
+        // Inflate the layout for this fragment
+        final View view = inflater.inflate(R.layout.fragment_metrics, container, false);
+        final TextView metricsText = view.findViewById(R.id.metrics_text);
+
+        view.findViewById(R.id.metrics_refresh).setOnClickListener(v -> metricsText.setText(dump()));
+        view.findViewById(R.id.metrics_reset).setOnClickListener(v -> {
+            MetricsRegistry.getInstance().reset();
+            metricsText.setText(dump());
+        });
+
+        // Play traces are written to a file, which is pulled with adb and opened in Perfetto UI.
+        view.findViewById(R.id.metrics_export_trace).setOnClickListener(v -> {
+            final File trace = this.exportTrace();
+            Toast.makeText(requireContext(), trace == null ? "Trace can not be exported" : trace.getPath(), Toast.LENGTH_LONG).show();
+        });
+
+        metricsText.setText(dump());
+        return view;
+    }
+
+    /**
+     * @return the snapshot of request metrics, followed by counts of speculative resolutions
+     */
+    private static String dump() {
+        final StreamResolver resolver = StreamResolver.getInstance();
+        return MetricsRegistry.getInstance().dump() + String.format(
+                Locale.ROOT,
+                "speculation  hits=%d misses=%d resolved=%d%n",
+                resolver.getHits(),
+                resolver.getMisses(),
+                resolver.getResolutions()
+        );
+    }
+
+    /**
+     * Writes play traces in Chrome trace event format to the app specific storage.
+     *
+     * @return the written file, or null if it can not be written
+     */
+    private File exportTrace() {
+        final File file = new File(requireContext().getExternalFilesDir("traces"), String.format("play-%d.json", System.currentTimeMillis()));
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            TraceBuffer.getInstance().writeChromeTrace(writer);
+            return file;
+        } catch (IOException e) {
+            Log.w(String.format("%s IOException", TAG), e);
+            return null;
+        }
+    }
+}
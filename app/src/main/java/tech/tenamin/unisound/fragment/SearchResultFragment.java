@@ -2,24 +2,32 @@ package tech.tenamin.unisound.fragment;
 
 import android.os.Bundle;
 
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.fragment.app.Fragment;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
-import android.os.Handler;
-import android.os.Looper;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ListView;
 import android.widget.ProgressBar;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import tech.tenamin.unisound.R;
 import tech.tenamin.unisound.adapter.SearchResultListAdapter;
-import tech.tenamin.unisound.core.api.APIAdapter;
 import tech.tenamin.unisound.core.api.MusicSnippet;
+import tech.tenamin.unisound.core.api.PlaybackEngine;
 import tech.tenamin.unisound.core.api.PlayingAdapter;
+import tech.tenamin.unisound.core.api.SearchAPIAdapter;
+import tech.tenamin.unisound.core.api.StreamResolver;
 import tech.tenamin.unisound.core.api.impl.SoundCloud;
 import tech.tenamin.unisound.core.api.impl.YouTube;
+import tech.tenamin.unisound.core.index.SnippetIndex;
+import tech.tenamin.unisound.core.trace.PlayTrace;
 
 /**
  * Fragment to display music search results.
@@ -29,6 +37,12 @@ import tech.tenamin.unisound.core.api.impl.YouTube;
  */
 public class SearchResultFragment extends Fragment {
 
+    /** The number of top results whose music sources are resolved before they are tapped. */
+    private static final int SPECULATIVE_COUNT = 3;
+
+    /** The number of results queued after the tapped one. */
+    private static final int QUEUE_LENGTH = 20;
+
     /** MainActivity to control views of it. */
     private final AppCompatActivity APP_VIEW;
 
@@ -38,6 +52,22 @@ public class SearchResultFragment extends Fragment {
     /** This appears when the search is not yet finished. */
     private ProgressBar progressBar;
 
+    /** Updates the progress bar as searches of each page finish. */
+    private final SearchResultListAdapter.SearchListener PROGRESS_LISTENER = new SearchResultListAdapter.SearchListener() {
+
+        @Override
+        public void onEachDone(SearchAPIAdapter<?> apiAdapter, List<? extends MusicSnippet> page) {
+            SnippetIndex.getInstance(APP_VIEW).add(page, SnippetIndex.Source.SEEN);
+            updateProgress();
+            speculateTopResults();
+        }
+
+        @Override
+        public void onAllDone() {
+            updateProgress();
+        }
+    };
+
     public SearchResultFragment(final AppCompatActivity appView, final String KEYWORD) {
 
         this.APP_VIEW = appView;
@@ -47,27 +77,33 @@ public class SearchResultFragment extends Fragment {
                 .addAllApi(
                         new SoundCloud.SoundCloudSearchAPIAdapter(this.APP_VIEW),
                         new YouTube.YouTubeSearchAPIAdapter(this.APP_VIEW)
-                )
-                .searchAllFromFirst(KEYWORD);
-
-        // Threading an operation that waits until the search process is finished before controlling it.
-        new Thread(() -> {
+                );
+        RESULT_LIST.setLocalIndex(SnippetIndex.getInstance(this.APP_VIEW));
 
-            // Wait until all search api of bundle is finished.
-            while (RESULT_LIST.getBUNDLE().stream().anyMatch(APIAdapter::isConnecting));
+        // Each page is displayed by the list as soon as its search api answers,
+        // and the progress bar shows how many of them are still pending.
+        RESULT_LIST.searchAllFromFirst(KEYWORD, PROGRESS_LISTENER);
+    }
 
-            // Views can only be controlled from the main thread.
-            new Handler(Looper.getMainLooper()).post(() -> {
+    /**
+     * Resolves music sources of the top results in background, as they are the most likely to be tapped.
+     */
+    private void speculateTopResults() {
+        final List<MusicSnippet> top = new ArrayList<>();
+        for (int i = 0; i < Math.min(SPECULATIVE_COUNT, RESULT_LIST.getItemCount()); i++) top.add(RESULT_LIST.getItem(i));
+        StreamResolver.getInstance().speculate(APP_VIEW, top);
+    }
 
-                // The search process is finished, so the progress bar is invisible.
-                progressBar.setVisibility(View.INVISIBLE);
+    /**
+     * Shows the progress of search api which has answered, and hides it once all of them answered.
+     */
+    private void updateProgress() {
+        if (progressBar == null) return;
 
-                // Add fetched search result to the list for displaying.
-                RESULT_LIST.getBUNDLE().forEach(b -> {
-                    b.getSearchResult().forEach(RESULT_LIST::add);
-                });
-            });
-        }).start();
+        final int total = RESULT_LIST.getBUNDLE().size();
+        progressBar.setMax(total);
+        progressBar.setProgress(total - RESULT_LIST.getPendingCount());
+        progressBar.setVisibility(RESULT_LIST.getPendingCount() > 0 ? View.VISIBLE : View.GONE);
     }
 
     @Override
@@ -77,20 +113,43 @@ public class SearchResultFragment extends Fragment {
         // Create a view instance for search result fragment.
         final View view = inflater.inflate(R.layout.fragment_search_result, container, false);
 
-        // Bind progress bar and make it visible.
+        // Bind progress bar and make it visible while searching.
         progressBar = view.findViewById(R.id.progressBar);
-        progressBar.setVisibility(View.VISIBLE);
+        this.updateProgress();
 
         // Set adapter to search result list view.
-        final ListView listView = view.findViewById(R.id.search_result_list);
+        final RecyclerView listView = view.findViewById(R.id.search_result_list);
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(this.APP_VIEW);
+        listView.setLayoutManager(layoutManager);
         listView.setAdapter(RESULT_LIST);
 
+        // Request next pages before the end of the list is reached.
+        // This is also called after the layout is updated, so short lists keep loading until they fill the screen.
+        listView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+
+                // Cached pages are merged at once, which must not happen while the list is laid out.
+                final int lastVisible = layoutManager.findLastVisibleItemPosition();
+                recyclerView.post(() -> {
+                    if (RESULT_LIST.searchNextIfNeeded(lastVisible, PROGRESS_LISTENER)) updateProgress();
+                });
+            }
+        });
+
         // Define the process when the list of search results is tapped.
-        listView.setOnItemClickListener((adapterView, view1, i, l) -> {
-            final MusicSnippet selectedSnippet = this.RESULT_LIST.getItem(i);
+        RESULT_LIST.setOnItemClickListener((selectedSnippet, position) -> {
 
             // Create a playing adapter instance for the snippet to be played.
-            final PlayingAdapter<?> playingAdapter = PlayingAdapter.adapterOf(APP_VIEW, selectedSnippet);
+            final PlayingAdapter<?> playingAdapter = PlayingAdapter.adapterOf(APP_VIEW, selectedSnippet, PlayTrace.begin(selectedSnippet.getTITLE()));
+
+            // Results below the tapped one are played next, each prepared while the previous one plays.
+            final List<PlayingAdapter<?>> queue = new ArrayList<>();
+            for (int i = position + 1; i < Math.min(position + 1 + QUEUE_LENGTH, RESULT_LIST.getItemCount()); i++) {
+                queue.add(PlayingAdapter.adapterOf(APP_VIEW, RESULT_LIST.getItem(i)));
+            }
+            PlaybackEngine.getInstance().setQueue(queue);
 
             // Threading because fetching music source from snippet can take some time.
             new Thread(playingAdapter::play).start();
@@ -100,6 +159,11 @@ public class SearchResultFragment extends Fragment {
 
         });
 
+        // A long-pressed or hovered row is likely to be tapped next.
+        RESULT_LIST.setOnItemPreviewListener(snippet ->
+                StreamResolver.getInstance().speculate(APP_VIEW, Collections.singletonList(snippet))
+        );
+
         return view;
     }
 }
\ No newline at end of file
@@ -0,0 +1,55 @@
+package tech.tenamin.unisound.benchmark;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import tech.tenamin.unisound.core.api.util.JSONUtil;
+
+/**
+ * Benchmarks of JSONUtil pipelines over the SoundCloud search fixture,
+ * with and without building the json tree.
+ * SoundCloudDecodeBenchmark compares the whole decode into snippets with the pull parser.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+@State(Scope.Benchmark)
+public class JSONUtilBenchmark {
+
+    private String response;
+    private JSONArray collection;
+
+    @Setup
+    public void setUp() throws JSONException {
+        this.response = Fixtures.load("soundcloud_search.json");
+        this.collection = new JSONObject(this.response).getJSONArray("collection");
+    }
+
+    /** Tree is built from the response, then usernames of tracks are pulled out. */
+    @Benchmark
+    public List<String> parseAndPipeline() throws JSONException {
+        return pipeline(new JSONObject(this.response).getJSONArray("collection"));
+    }
+
+    /** Only the pipeline, over the tree built beforehand. */
+    @Benchmark
+    public List<String> pipelineOnly() {
+        return pipeline(this.collection);
+    }
+
+    private static List<String> pipeline(final JSONArray collection) {
+        return JSONUtil.streamOf(collection)
+                .filter(JSONUtil.hasFilter("media"))
+                .map(JSONUtil.getObject("user"))
+                .map(JSONUtil.getString("username"))
+                .collect(Collectors.toList());
+    }
+}
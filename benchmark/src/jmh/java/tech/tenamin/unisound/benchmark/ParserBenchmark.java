@@ -0,0 +1,107 @@
+package tech.tenamin.unisound.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import tech.tenamin.unisound.core.api.impl.SoundCloudParser;
+import tech.tenamin.unisound.core.api.impl.YouTubeParser;
+
+/**
+ * Benchmarks of the streaming parsers of search responses, one op being one response.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+
+    private String youTubeSearch, youTubeContinuation, soundCloudSearch;
+
+    @Setup
+    public void setUp() throws IOException {
+        this.youTubeSearch = Fixtures.load("youtube_search.html");
+        this.youTubeContinuation = Fixtures.load("youtube_continuation.json");
+        this.soundCloudSearch = Fixtures.load("soundcloud_search.json");
+
+        // A fixture which the parser can not read would make every result meaningless.
+        final int[] count = new int[1];
+        if (!YouTubeParser.parseResultPage(new StringReader(this.youTubeSearch), youTubeListener(count)) || count[0] == 0) {
+            throw new IllegalStateException("YouTube search fixture is not parsed");
+        }
+        count[0] = 0;
+        YouTubeParser.parseContinuation(new StringReader(this.youTubeContinuation), youTubeListener(count));
+        if (count[0] == 0) throw new IllegalStateException("YouTube continuation fixture is not parsed");
+        count[0] = 0;
+        SoundCloudParser.parseSearch(new StringReader(this.soundCloudSearch), (title, publisher, createdAt, trackId, trackAuth, thumbnail) -> count[0]++);
+        if (count[0] == 0) throw new IllegalStateException("SoundCloud search fixture is not parsed");
+    }
+
+    @Benchmark
+    public boolean youTubeResultPage(final Blackhole blackhole) throws IOException {
+        return YouTubeParser.parseResultPage(new StringReader(this.youTubeSearch), youTubeListener(blackhole));
+    }
+
+    @Benchmark
+    public void youTubeContinuation(final Blackhole blackhole) throws IOException {
+        YouTubeParser.parseContinuation(new StringReader(this.youTubeContinuation), youTubeListener(blackhole));
+    }
+
+    @Benchmark
+    public void soundCloudSearch(final Blackhole blackhole) throws IOException {
+        SoundCloudParser.parseSearch(new StringReader(this.soundCloudSearch), (title, publisher, createdAt, trackId, trackAuth, thumbnail) -> {
+            blackhole.consume(title);
+            blackhole.consume(publisher);
+            blackhole.consume(createdAt);
+            blackhole.consume(trackId);
+            blackhole.consume(trackAuth);
+            blackhole.consume(thumbnail);
+        });
+    }
+
+    private static YouTubeParser.Listener youTubeListener(final Blackhole blackhole) {
+        return new YouTubeParser.Listener() {
+
+            @Override
+            public void onVideo(String videoId, String title, String publisher, String thumbnail) {
+                blackhole.consume(videoId);
+                blackhole.consume(title);
+                blackhole.consume(publisher);
+                blackhole.consume(thumbnail);
+            }
+
+            @Override
+            public void onContinuation(String token) {
+                blackhole.consume(token);
+            }
+
+            @Override
+            public void onApiKey(String apiKey) {
+                blackhole.consume(apiKey);
+            }
+
+            @Override
+            public void onContext(String context) {
+                blackhole.consume(context);
+            }
+        };
+    }
+
+    private static YouTubeParser.Listener youTubeListener(final int[] count) {
+        return new YouTubeParser.Listener() {
+
+            @Override
+            public void onVideo(String videoId, String title, String publisher, String thumbnail) {
+                count[0]++;
+            }
+
+            @Override
+            public void onContinuation(String token) { }
+        };
+    }
+}
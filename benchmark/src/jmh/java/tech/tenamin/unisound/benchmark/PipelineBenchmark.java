@@ -0,0 +1,135 @@
+package tech.tenamin.unisound.benchmark;
+
+import androidx.annotation.NonNull;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import tech.tenamin.unisound.core.api.SearchPage;
+import tech.tenamin.unisound.core.api.http.HttpResponse;
+import tech.tenamin.unisound.core.api.http.HttpStatusException;
+import tech.tenamin.unisound.core.api.http.HttpTransport;
+import tech.tenamin.unisound.core.api.impl.SoundCloudClient;
+import tech.tenamin.unisound.core.api.impl.SoundCloudSnippet;
+import tech.tenamin.unisound.core.api.impl.YouTubeClient;
+import tech.tenamin.unisound.core.api.impl.YouTubeSnippet;
+
+/**
+ * Benchmarks of the whole search pipeline of :core, one op being one page.
+ * Responses are served from fixtures in memory, so URL building, charset decoding, parsing and snippet building
+ * are measured without the network. Replace the transport with UrlConnectionTransport to profile against the real services.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+@State(Scope.Benchmark)
+public class PipelineBenchmark {
+
+    /** Client id served by the fake SoundCloud asset script. */
+    private static final String CLIENT_ID = "benchmarkClientId0123456789abcdef";
+
+    private final ExecutorService PROBE_EXECUTOR = Executors.newCachedThreadPool();
+
+    private YouTubeClient youTube;
+    private SoundCloudClient soundCloud;
+
+    /** Cursor of the second page of YouTube. */
+    private String youTubeCursor;
+
+    @Setup
+    public void setUp() throws IOException {
+        final HttpTransport transport = new FixtureTransport(
+                Fixtures.load("youtube_search.html"),
+                Fixtures.load("youtube_continuation.json"),
+                Fixtures.load("soundcloud_search.json")
+        );
+        this.youTube = new YouTubeClient(transport);
+        this.soundCloud = new SoundCloudClient(transport, this.PROBE_EXECUTOR);
+
+        // The first calls also check the fixtures, and scrape the client id which is shared afterwards.
+        final SearchPage<YouTubeSnippet> first = this.youTube.search("benchmark", null);
+        this.youTubeCursor = first.getNEXT_CURSOR();
+        if (first.getSNIPPETS().isEmpty() || this.youTubeCursor == null) {
+            throw new IllegalStateException("YouTube search fixture is not parsed");
+        }
+        if (this.youTube.search("benchmark", this.youTubeCursor).getSNIPPETS().isEmpty()) {
+            throw new IllegalStateException("YouTube continuation fixture is not parsed");
+        }
+        if (this.soundCloud.search("benchmark", null).getSNIPPETS().isEmpty()) {
+            throw new IllegalStateException("SoundCloud search fixture is not parsed");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.PROBE_EXECUTOR.shutdownNow();
+    }
+
+    @Benchmark
+    public SearchPage<YouTubeSnippet> youTubeFirstPage() throws IOException {
+        return this.youTube.search("benchmark", null);
+    }
+
+    @Benchmark
+    public SearchPage<YouTubeSnippet> youTubeNextPage() throws IOException {
+        return this.youTube.search("benchmark", this.youTubeCursor);
+    }
+
+    @Benchmark
+    public SearchPage<SoundCloudSnippet> soundCloudSearch() throws IOException {
+        return this.soundCloud.search("benchmark", null);
+    }
+
+    /**
+     * Transport which answers each endpoint of the pipeline with a fixture.
+     */
+    private static final class FixtureTransport implements HttpTransport {
+
+        private final byte[] YOUTUBE_SEARCH, YOUTUBE_CONTINUATION, SOUNDCLOUD_SEARCH;
+
+        private final byte[] SOUNDCLOUD_HOME = bytesOf(
+                "<html><body><script crossorigin src=\"https://a-v2.sndcdn.com/assets/0-benchmark.js\"></script></body></html>"
+        );
+        private final byte[] SOUNDCLOUD_ASSET = bytesOf("var a=\"https://api-v2.soundcloud.com/?client_id=" + CLIENT_ID + "\";");
+
+        private FixtureTransport(final String youTubeSearch, final String youTubeContinuation, final String soundCloudSearch) {
+            this.YOUTUBE_SEARCH = bytesOf(youTubeSearch);
+            this.YOUTUBE_CONTINUATION = bytesOf(youTubeContinuation);
+            this.SOUNDCLOUD_SEARCH = bytesOf(soundCloudSearch);
+        }
+
+        @NonNull
+        @Override
+        public HttpResponse get(@NonNull final String url) throws IOException {
+            if (url.startsWith("https://www.youtube.com/results?")) return responseOf(this.YOUTUBE_SEARCH, "text/html; charset=utf-8");
+            if (url.startsWith("https://api-v2.soundcloud.com/search?")) return responseOf(this.SOUNDCLOUD_SEARCH, "application/json");
+            if (url.equals("https://soundcloud.com")) return responseOf(this.SOUNDCLOUD_HOME, "text/html");
+            if (url.startsWith("https://a-v2.sndcdn.com/assets/")) return responseOf(this.SOUNDCLOUD_ASSET, "application/javascript");
+            throw new HttpStatusException(404, url);
+        }
+
+        @NonNull
+        @Override
+        public HttpResponse post(@NonNull final String url, @NonNull final String jsonBody) throws IOException {
+            if (url.startsWith("https://www.youtube.com/youtubei/v1/search?")) return responseOf(this.YOUTUBE_CONTINUATION, "application/json; charset=utf-8");
+            throw new HttpStatusException(404, url);
+        }
+
+        private static HttpResponse responseOf(final byte[] body, final String contentType) {
+            return new HttpResponse(200, contentType, new ByteArrayInputStream(body), () -> { });
+        }
+
+        private static byte[] bytesOf(final String text) {
+            return text.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package tech.tenamin.unisound.benchmark;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import tech.tenamin.unisound.core.api.MusicSnippet;
+import tech.tenamin.unisound.core.api.impl.SoundCloudSnippet;
+import tech.tenamin.unisound.core.api.impl.YouTubeSnippet;
+import tech.tenamin.unisound.core.cache.SnippetCodec;
+
+/**
+ * Benchmarks of the binary form of snippets against json, one op being a set of 10k snippets.
+ * Sizes of both forms are checked once in setup, and the binary form must be the smaller.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+@State(Scope.Benchmark)
+public class SnippetCodecBenchmark {
+
+    /** The number of snippets in a set. */
+    private static final int SET_SIZE = 10000;
+
+    private List<MusicSnippet> snippets;
+    private byte[] binary;
+    private String json;
+
+    @Setup
+    public void setUp() throws JSONException {
+        this.snippets = snippetsOf(SET_SIZE);
+        this.binary = SnippetCodec.toBytes(this.snippets);
+        this.json = toJSON(this.snippets);
+        if (this.binary.length >= this.json.length()) {
+            throw new IllegalStateException(String.format("Binary form is not smaller: %d of %d bytes", this.binary.length, this.json.length()));
+        }
+    }
+
+    @Benchmark
+    public byte[] binaryEncode() {
+        return SnippetCodec.toBytes(this.snippets);
+    }
+
+    @Benchmark
+    public List<MusicSnippet> binaryDecode() {
+        return SnippetCodec.fromBytes(ByteBuffer.wrap(this.binary));
+    }
+
+    @Benchmark
+    public String jsonEncode() throws JSONException {
+        return toJSON(this.snippets);
+    }
+
+    @Benchmark
+    public List<MusicSnippet> jsonDecode() throws JSONException {
+        final JSONArray array = new JSONArray(this.json);
+        final List<MusicSnippet> snippets = new ArrayList<>(array.length());
+        for (int i = 0; i < array.length(); i++) snippets.add(SnippetCodec.fromJSON(array.getJSONObject(i)));
+        return snippets;
+    }
+
+    private static String toJSON(final List<MusicSnippet> snippets) throws JSONException {
+        final JSONArray array = new JSONArray();
+        for (final MusicSnippet snippet : snippets) array.put(SnippetCodec.toJSON(snippet));
+        return array.toString();
+    }
+
+    /**
+     * Makes snippets like search results: publishers repeat, and thumbnails share hosts.
+     */
+    private static List<MusicSnippet> snippetsOf(final int count) {
+        final Random random = new Random(17);
+        final List<MusicSnippet> snippets = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final String publisher = "Publisher " + random.nextInt(count / 20);
+            final Date publishedAt = new Date(1600000000000L + random.nextInt(Integer.MAX_VALUE) * 10L);
+            if (i % 2 == 0) {
+                final String videoId = (Long.toString(random.nextLong() & Long.MAX_VALUE, 36) + "00000000000").substring(0, 11);
+                snippets.add(new YouTubeSnippet(
+                        "Music video " + i + " - " + publisher,
+                        publisher,
+                        publishedAt,
+                        videoId,
+                        "https://i.ytimg.com/vi/" + videoId + "/hqdefault.jpg"
+                ));
+            } else {
+                snippets.add(new SoundCloudSnippet(
+                        "Track " + i + " (Remix)",
+                        publisher,
+                        publishedAt,
+                        String.valueOf(1000000000 + i),
+                        "s-" + Integer.toString(random.nextInt(Integer.MAX_VALUE), 36),
+                        "https://i1.sndcdn.com/artworks-" + Integer.toHexString(random.nextInt()) + "-large.jpg"
+                ));
+            }
+        }
+        return snippets;
+    }
+}
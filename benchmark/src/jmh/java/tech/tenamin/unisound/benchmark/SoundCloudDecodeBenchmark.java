@@ -0,0 +1,80 @@
+package tech.tenamin.unisound.benchmark;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+import tech.tenamin.unisound.core.api.impl.SoundCloudClient;
+import tech.tenamin.unisound.core.api.impl.SoundCloudSnippet;
+import tech.tenamin.unisound.core.api.util.JSONUtil;
+import tech.tenamin.unisound.core.api.util.StringUtil;
+
+/**
+ * Benchmarks of decoding a SoundCloud search page into snippets, one op being one page.
+ * The DOM path is the decode of the adapter before the pull parser, kept as the baseline.
+ * Both build the same snippets from the same fixture, so their ops/s and gc.alloc.rate.norm compare directly.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+@State(Scope.Benchmark)
+public class SoundCloudDecodeBenchmark {
+
+    private static final String DATE_PATTERN = "yyyy-MM-dd'T'HH:mm:ss'Z'";
+
+    private String response;
+
+    @Setup
+    public void setUp() throws IOException, JSONException {
+        this.response = Fixtures.load("soundcloud_search.json");
+
+        // Both paths must read the fixture the same way, otherwise the comparison is meaningless.
+        final int dom = domPath().size(), pull = pullParser().size();
+        if (dom == 0 || dom != pull) {
+            throw new IllegalStateException(String.format("Snippets do not match: %d by DOM, %d by pull parser", dom, pull));
+        }
+    }
+
+    /** Tree is built from the response, and each track is read out of it with JSONUtil. */
+    @Benchmark
+    public List<SoundCloudSnippet> domPath() throws JSONException {
+        final SimpleDateFormat dateFormat = new SimpleDateFormat(DATE_PATTERN);
+        final List<SoundCloudSnippet> snippets = new ArrayList<>();
+        final JSONArray array = new JSONObject(this.response).getJSONArray("collection");
+        JSONUtil.streamOf(array)
+                .filter(JSONUtil.hasFilter("media"))
+                .forEach(o -> {
+                    try {
+                        snippets.add(new SoundCloudSnippet(
+                                StringUtil.decodeKeyword(o.getString("title")),
+                                o.getJSONObject("user").getString("username"),
+                                dateFormat.parse(o.getString("created_at")),
+                                o.getJSONObject("media").getJSONArray("transcodings").getJSONObject(1).getString("url"),
+                                o.getString("track_authorization"),
+                                // Tracks without artwork have null, which Android's org.json reads as "null" but this one rejects.
+                                o.isNull("artwork_url") ? null : o.getString("artwork_url")
+                        ));
+                    } catch (JSONException | ParseException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+        return snippets;
+    }
+
+    /** The response is read once by the pull parser, which builds snippets as it goes. */
+    @Benchmark
+    public List<SoundCloudSnippet> pullParser() throws IOException {
+        return SoundCloudClient.parseSearch(new StringReader(this.response)).getSNIPPETS();
+    }
+}
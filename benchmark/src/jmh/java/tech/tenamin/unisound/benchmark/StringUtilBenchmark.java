@@ -0,0 +1,52 @@
+package tech.tenamin.unisound.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import tech.tenamin.unisound.core.api.util.StringUtil;
+
+/**
+ * Benchmarks of StringUtil.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+@State(Scope.Benchmark)
+public class StringUtilBenchmark {
+
+    /** Keyword with spaces, symbols and CJK text, which are all escaped. */
+    private static final String KEYWORD = "YOASOBI 夜に駆ける / Official Music Video & Live";
+
+    private String page, encoded;
+    private int seconds = 0;
+
+    @Setup
+    public void setUp() {
+        this.page = Fixtures.load("youtube_search.html");
+        this.encoded = StringUtil.encodeKeywordToURL(KEYWORD);
+    }
+
+    /** Clips the API key out of the search page, as the page was parsed before the streaming parser. */
+    @Benchmark
+    public String clip() {
+        return StringUtil.clip(this.page, "\"innertubeApiKey\":\"", "\"");
+    }
+
+    @Benchmark
+    public String encodeKeywordToURL() {
+        return StringUtil.encodeKeywordToURL(KEYWORD);
+    }
+
+    @Benchmark
+    public String decodeKeyword() {
+        return StringUtil.decodeKeyword(this.encoded);
+    }
+
+    @Benchmark
+    public String secondsToMMSS() {
+        this.seconds = (this.seconds + 7) % 3600;
+        return StringUtil.secondsToMMSS(this.seconds);
+    }
+}
@@ -0,0 +1,28 @@
+package tech.tenamin.unisound.core.api;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+
+/**
+ * Blocking search of a provider, which runs without Android.
+ * Each call is independent, so one client can be shared by many threads.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ * @param <T> the type of music snippet of the provider
+ */
+public interface SearchClient<T extends MusicSnippet> {
+
+    /**
+     * Fetches one page of search result.
+     *
+     * @param keyword search keyword
+     * @param cursor cursor of the page, which is given by the previous page, or null for the first page
+     * @return the page
+     * @throws IOException if the page can not be fetched or parsed
+     */
+    @NonNull
+    SearchPage<T> search(@NonNull String keyword, @Nullable String cursor) throws IOException;
+}
@@ -0,0 +1,38 @@
+package tech.tenamin.unisound.core.api;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of search result of SearchClient.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ * @param <T> the type of music snippet of the provider
+ */
+public final class SearchPage<T extends MusicSnippet> {
+
+    /** Music in the page. */
+    private final List<T> SNIPPETS;
+
+    /** Cursor of the next page, or null if this is the last one. */
+    private final String NEXT_CURSOR;
+
+    public SearchPage(@NonNull final List<T> snippets, @Nullable final String nextCursor) {
+        this.SNIPPETS = Collections.unmodifiableList(snippets);
+        this.NEXT_CURSOR = nextCursor;
+    }
+
+    @NonNull
+    public List<T> getSNIPPETS() {
+        return this.SNIPPETS;
+    }
+
+    @Nullable
+    public String getNEXT_CURSOR() {
+        return this.NEXT_CURSOR;
+    }
+}
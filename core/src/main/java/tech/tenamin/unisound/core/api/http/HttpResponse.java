@@ -0,0 +1,136 @@
+package tech.tenamin.unisound.core.api.http;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Response of HttpTransport. The body is not read until it is asked for,
+ * and closing the response releases the connection, even while the body is being read on another thread.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public final class HttpResponse implements Closeable {
+
+    /** Status code of the response. */
+    private final int STATUS;
+
+    /** Content type of the body, or null if it is not told. */
+    private final String CONTENT_TYPE;
+
+    /** Body of the response, which counts bytes read. */
+    private final InputStream BODY;
+
+    /** Bytes read from the body so far. */
+    private final AtomicLong BYTES_READ = new AtomicLong();
+
+    /** Called once when the response is closed, to release the connection. */
+    private final Closeable RELEASE;
+
+    private boolean closed = false;
+
+    public HttpResponse(final int status, @Nullable final String contentType, @NonNull final InputStream body, @NonNull final Closeable release) {
+        this.STATUS = status;
+        this.CONTENT_TYPE = contentType;
+        this.BODY = new CountingInputStream(body, this.BYTES_READ);
+        this.RELEASE = release;
+    }
+
+    public int getSTATUS() {
+        return this.STATUS;
+    }
+
+    @NonNull
+    public InputStream getBODY() {
+        return this.BODY;
+    }
+
+    /**
+     * @return reader of the body in the charset of the content type, or UTF-8 if it is not told
+     */
+    @NonNull
+    public Reader reader() {
+        return new InputStreamReader(this.BODY, charsetOf(this.CONTENT_TYPE));
+    }
+
+    /**
+     * @return bytes read from the body so far
+     */
+    public long getBytesRead() {
+        return this.BYTES_READ.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (this.closed) return;
+            this.closed = true;
+        }
+        try {
+            this.BODY.close();
+        } finally {
+            this.RELEASE.close();
+        }
+    }
+
+    private static Charset charsetOf(@Nullable final String contentType) {
+        if (contentType == null) return StandardCharsets.UTF_8;
+        for (final String parameter : contentType.split(";")) {
+            final String trimmed = parameter.trim();
+            if (!trimmed.toLowerCase(Locale.ROOT).startsWith("charset=")) continue;
+            try {
+                return Charset.forName(trimmed.substring("charset=".length()).replace("\"", ""));
+            } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+                break;
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    /**
+     * Stream which counts bytes read through it.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private final AtomicLong COUNT;
+
+        private CountingInputStream(final InputStream in, final AtomicLong count) {
+            super(in);
+            this.COUNT = count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b >= 0) this.COUNT.incrementAndGet();
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int n = super.read(b, off, len);
+            if (n > 0) this.COUNT.addAndGet(n);
+            return n;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final long skipped = super.skip(n);
+            if (skipped > 0) this.COUNT.addAndGet(skipped);
+            return skipped;
+        }
+    }
+}
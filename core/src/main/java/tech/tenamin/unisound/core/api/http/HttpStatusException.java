@@ -0,0 +1,26 @@
+package tech.tenamin.unisound.core.api.http;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a server answers other than 2xx.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public class HttpStatusException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Status code of the response. */
+    private final int STATUS;
+
+    public HttpStatusException(final int status, final String url) {
+        super(String.format("HTTP %d from %s", status, url));
+        this.STATUS = status;
+    }
+
+    public int getSTATUS() {
+        return this.STATUS;
+    }
+}
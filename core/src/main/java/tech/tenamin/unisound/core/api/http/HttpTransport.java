@@ -0,0 +1,41 @@
+package tech.tenamin.unisound.core.api.http;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+
+/**
+ * Blocking HTTP transport which the provider pipeline sends its requests through.
+ * The Android app sends requests through Volley, and JVM tools use UrlConnectionTransport.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public interface HttpTransport {
+
+    /** User agent of a desktop browser, since YouTube serves a different page for unknown clients. */
+    String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/105.0.0.0 Safari/537.36 OPR/91.0.4516.72 (Edition GX-CN)";
+
+    /**
+     * Sends a GET request and waits for the response headers.
+     *
+     * @param url URL of the request
+     * @return response whose body is read as a stream, which must be closed
+     * @throws HttpStatusException if the server answers other than 2xx
+     * @throws IOException if the request fails
+     */
+    @NonNull
+    HttpResponse get(@NonNull String url) throws IOException;
+
+    /**
+     * Sends a POST request with a json body and waits for the response headers.
+     *
+     * @param url URL of the request
+     * @param jsonBody json request body
+     * @return response whose body is read as a stream, which must be closed
+     * @throws HttpStatusException if the server answers other than 2xx
+     * @throws IOException if the request fails
+     */
+    @NonNull
+    HttpResponse post(@NonNull String url, @NonNull String jsonBody) throws IOException;
+}
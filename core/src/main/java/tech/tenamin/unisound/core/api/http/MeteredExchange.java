@@ -0,0 +1,72 @@
+package tech.tenamin.unisound.core.api.http;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.function.ToIntFunction;
+
+import tech.tenamin.unisound.core.metrics.RequestMetrics;
+import tech.tenamin.unisound.core.metrics.RequestTimer;
+
+/**
+ * Sends a request through HttpTransport, parses the response, and records each stage into RequestMetrics.
+ * The body is parsed while it is downloaded, so parse time here includes reading the body after the headers.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public final class MeteredExchange {
+
+    /** Do not let make instance of MeteredExchange */
+    private MeteredExchange() { }
+
+    /**
+     * Sends a request of the transport.
+     */
+    public interface Send {
+        HttpResponse send() throws IOException;
+    }
+
+    /**
+     * Parser of response body.
+     *
+     * @param <T> the type of parsed response
+     */
+    public interface Parser<T> {
+        T parse(Reader reader) throws IOException;
+    }
+
+    /**
+     * @param metrics metrics of the endpoint
+     * @param send sends the request
+     * @param parser parses the response body
+     * @param produced counts snippets in the parsed response, or null if it does not produce snippets
+     * @return the parsed response
+     * @throws IOException if the request fails
+     */
+    public static <T> T execute(
+            @NonNull final RequestMetrics metrics,
+            @NonNull final Send send,
+            @NonNull final Parser<T> parser,
+            @Nullable final ToIntFunction<T> produced
+    ) throws IOException {
+
+        // Blocking requests have no queue, so they are sent as soon as they are made.
+        final RequestTimer timer = metrics.start();
+        timer.dispatched();
+        try (HttpResponse response = send.send()) {
+            timer.firstByte();
+            timer.beginParse();
+            final T parsed = parser.parse(response.reader());
+            timer.endParse(produced == null ? -1 : produced.applyAsInt(parsed));
+            timer.bytes(response.getBytesRead());
+            timer.finish();
+            return parsed;
+        } catch (IOException | RuntimeException e) {
+            timer.fail();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package tech.tenamin.unisound.core.api.http;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * HttpTransport over HttpURLConnection, which runs on both the JVM and Android.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public class UrlConnectionTransport implements HttpTransport {
+
+    /** Content type of json request body. */
+    private static final String JSON_CONTENT_TYPE = "application/json; charset=utf-8";
+
+    /** Timeouts of connecting and of each read. */
+    private final int TIMEOUT_MILLIS;
+
+    public UrlConnectionTransport(final int timeoutMillis) {
+        this.TIMEOUT_MILLIS = timeoutMillis;
+    }
+
+    @NonNull
+    @Override
+    public HttpResponse get(@NonNull final String url) throws IOException {
+        return this.execute(this.open(url));
+    }
+
+    @NonNull
+    @Override
+    public HttpResponse post(@NonNull final String url, @NonNull final String jsonBody) throws IOException {
+        final HttpURLConnection connection = this.open(url);
+        final byte[] body = jsonBody.getBytes(StandardCharsets.UTF_8);
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", JSON_CONTENT_TYPE);
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(body.length);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body);
+        } catch (IOException e) {
+            connection.disconnect();
+            throw e;
+        }
+        return this.execute(connection);
+    }
+
+    private HttpURLConnection open(final String url) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(this.TIMEOUT_MILLIS);
+        connection.setReadTimeout(this.TIMEOUT_MILLIS);
+        connection.setRequestProperty("User-agent", USER_AGENT);
+        return connection;
+    }
+
+    private HttpResponse execute(final HttpURLConnection connection) throws IOException {
+        try {
+            final int status = connection.getResponseCode();
+            if (status / 100 != 2) throw new HttpStatusException(status, connection.getURL().toString());
+            final InputStream body = connection.getInputStream();
+            return new HttpResponse(status, connection.getContentType(), body, connection::disconnect);
+        } catch (IOException e) {
+            connection.disconnect();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,382 @@
+package tech.tenamin.unisound.core.api.impl;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.gson.stream.JsonReader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import tech.tenamin.unisound.core.api.SearchClient;
+import tech.tenamin.unisound.core.api.SearchPage;
+import tech.tenamin.unisound.core.api.http.HttpResponse;
+import tech.tenamin.unisound.core.api.http.HttpStatusException;
+import tech.tenamin.unisound.core.api.http.HttpTransport;
+import tech.tenamin.unisound.core.api.http.MeteredExchange;
+import tech.tenamin.unisound.core.api.util.JSONReaderUtil;
+import tech.tenamin.unisound.core.api.util.PageScanner;
+import tech.tenamin.unisound.core.api.util.StringUtil;
+import tech.tenamin.unisound.core.metrics.MetricsRegistry;
+import tech.tenamin.unisound.core.metrics.RequestTimer;
+
+/**
+ * Search and stream resolution of SoundCloud over HttpTransport.
+ * SoundCloud API needs a client id, which is scraped from the asset scripts of SoundCloud web page.
+ * Each client scrapes it once and shares it between calls, and scrapes it again when the API rejects it.
+ * URLs, parsers and the scraping are also used by the Volley adapter of the app.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public final class SoundCloudClient implements SearchClient<SoundCloudSnippet> {
+
+    /** Names of the provider and its endpoints in MetricsRegistry. */
+    public static final String PROVIDER = "soundcloud", ENDPOINT_SEARCH = "search", ENDPOINT_STREAM = "stream", ENDPOINT_CLIENT_ID = "client_id";
+
+    /** Logger of the core library, which also reaches logcat on Android. */
+    private static final Logger LOGGER = Logger.getLogger("SoundCloud Client");
+
+    /** SoundCloud web page which refers to asset scripts. */
+    private static final String HOME_URL = "https://soundcloud.com";
+
+    /** Host URL of asset scripts, and the marker of script tags referring to them. */
+    private static final String ASSET_HOST = "https://a-v2.sndcdn.com/assets/", ASSET_MARKER = "<script crossorigin src=\"" + ASSET_HOST;
+
+    /** Index of the asset script which has had client id so far. */
+    private static final int PREFERRED_ASSET_INDEX = 4;
+
+    /** The marker of client id in asset scripts. */
+    private static final String CLIENT_ID_MARKER = "client_id=";
+
+    /** Limits to give up on broken pages. */
+    private static final int MAX_ASSET_PATH_LENGTH = 256, MAX_CLIENT_ID_LENGTH = 64;
+
+    /** Host URL of SoundCloud API */
+    private static final String API_HOST = "https://api-v2.soundcloud.com";
+
+    /** This is a data format used in SoundCloud API */
+    private static final String DATE_PATTERN = "yyyy-MM-dd'T'HH:mm:ss'Z'";
+
+    /** The limit number to search result amount. */
+    public static final int SEARCH_LIMIT = 20;
+
+    /** Transport which requests are sent through. */
+    private final HttpTransport TRANSPORT;
+
+    /** Executor which probes asset scripts in parallel. */
+    private final ExecutorService PROBE_EXECUTOR;
+
+    /** Lock to let concurrent callers share one scraping. */
+    private final Object CLIENT_ID_LOCK = new Object();
+
+    /** Client id shared between calls, or null if it is not scraped yet. */
+    private volatile String clientID = null;
+
+    public SoundCloudClient(@NonNull final HttpTransport transport, @NonNull final ExecutorService probeExecutor) {
+        this.TRANSPORT = transport;
+        this.PROBE_EXECUTOR = probeExecutor;
+    }
+
+    /**
+     * Fetches one page of search result. The cursor is the offset of the page.
+     */
+    @NonNull
+    @Override
+    public SearchPage<SoundCloudSnippet> search(@NonNull final String keyword, @Nullable final String cursor) throws IOException {
+        final int offset;
+        try {
+            offset = cursor == null ? 0 : Integer.parseInt(cursor);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Broken cursor", e);
+        }
+
+        final Page page = this.withClientId(id -> MeteredExchange.execute(
+                MetricsRegistry.getInstance().of(PROVIDER, ENDPOINT_SEARCH),
+                () -> this.TRANSPORT.get(searchURL(keyword, id, SEARCH_LIMIT, offset)),
+                SoundCloudClient::parseSearch,
+                p -> p.SNIPPETS.size()
+        ));
+        final String next = page.SNIPPETS.isEmpty() ? null : String.valueOf(offset + SEARCH_LIMIT);
+        return new SearchPage<>(page.SNIPPETS, next);
+    }
+
+    /**
+     * Resolves URL of the audio source of a track.
+     *
+     * @param snippet the track
+     * @return URL of the audio source
+     * @throws IOException if it can not be resolved
+     */
+    @NonNull
+    public String resolveStream(@NonNull final SoundCloudSnippet snippet) throws IOException {
+        final String url = this.withClientId(id -> MeteredExchange.execute(
+                MetricsRegistry.getInstance().of(PROVIDER, ENDPOINT_STREAM),
+                () -> this.TRANSPORT.get(streamURL(snippet, id)),
+                SoundCloudClient::parseStream,
+                null
+        ));
+        if (url == null) throw new IOException("No audio source of " + snippet.getTRACK_ID());
+        return url;
+    }
+
+    /**
+     * Runs a call with the shared client id. If the API rejects it, it is scraped again and the call is retried once.
+     */
+    private <T> T withClientId(final ClientIdCall<T> call) throws IOException {
+        final String usedID = this.ensureClientId();
+        try {
+            return call.call(usedID);
+        } catch (HttpStatusException e) {
+            if (e.getSTATUS() != 401 && e.getSTATUS() != 403) throw e;
+            synchronized (this.CLIENT_ID_LOCK) {
+                if (usedID.equals(this.clientID)) this.clientID = null;
+            }
+            return call.call(this.ensureClientId());
+        }
+    }
+
+    private String ensureClientId() throws IOException {
+        final String cached = this.clientID;
+        if (cached != null) return cached;
+
+        synchronized (this.CLIENT_ID_LOCK) {
+            if (this.clientID != null) return this.clientID;
+            final RequestTimer timer = MetricsRegistry.getInstance().of(PROVIDER, ENDPOINT_CLIENT_ID).start();
+            try {
+                final String id = scrapeClientId(this.TRANSPORT, this.PROBE_EXECUTOR);
+                if (id == null) throw new IOException("Client id is not found");
+                timer.finish();
+                this.clientID = id;
+                return id;
+            } catch (InterruptedException e) {
+                timer.fail();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while scraping client id");
+            } catch (IOException | RuntimeException e) {
+                timer.fail();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * A call of SoundCloud API which needs a client id.
+     */
+    private interface ClientIdCall<T> {
+        T call(String clientId) throws IOException;
+    }
+
+    /**
+     * Builds URL of the API which answers search result.
+     *
+     * @param keyword search keyword
+     * @param clientId client id to be used
+     * @param limit search limit
+     * @param offset search offset of start position
+     * @return URL to fetch search result
+     */
+    @NonNull
+    public static String searchURL(@NonNull final String keyword, @Nullable final String clientId, final int limit, final int offset) {
+        return String.format(
+                "%s/search?q=%s&client_id=%s&limit=%d&offset=%d",
+                API_HOST,
+                StringUtil.encodeKeywordToURL(keyword),
+                clientId,
+                limit,
+                offset
+        );
+    }
+
+    /**
+     * Builds URL of the API which answers the music source.
+     *
+     * @param snippet the track
+     * @param clientId client id to be used
+     * @return URL to fetch the music source
+     */
+    @NonNull
+    public static String streamURL(@NonNull final SoundCloudSnippet snippet, @Nullable final String clientId) {
+        return String.format(
+                "%s?client_id=%s&track_authorization=%s",
+                snippet.getTRACK_ID(),
+                clientId,
+                snippet.getTRACK_AUTH()
+        );
+    }
+
+    /**
+     * Parses a search response.
+     *
+     * @param reader the response
+     * @return tracks in the response
+     * @throws IOException if the response can not be read
+     */
+    @NonNull
+    public static Page parseSearch(@NonNull final Reader reader) throws IOException {
+        final Page page = new Page();
+        SoundCloudParser.parseSearch(reader, page);
+        return page;
+    }
+
+    /**
+     * Parses a transcoding response.
+     *
+     * @param reader the response
+     * @return URL of the audio source, or null if it is not in the response
+     * @throws IOException if the response can not be read
+     */
+    @Nullable
+    public static String parseStream(@NonNull final Reader reader) throws IOException {
+        return JSONReaderUtil.readString(new JsonReader(reader), "url");
+    }
+
+    /**
+     * Scans SoundCloud web page for asset scripts, then scans the scripts for client id.
+     * Each download is cancelled as soon as what we need is found,
+     * so hundreds of kilobytes of HTML and JavaScript are not downloaded just for a 32-character token.
+     *
+     * @param transport transport which the page and scripts are downloaded through
+     * @param probeExecutor executor which probes the scripts in parallel
+     * @return client id, or null if no asset script contains it
+     * @throws IOException if SoundCloud web page can not be read
+     * @throws InterruptedException if the thread is interrupted while waiting for probes
+     */
+    @Nullable
+    public static String scrapeClientId(
+            @NonNull final HttpTransport transport,
+            @NonNull final ExecutorService probeExecutor
+    ) throws IOException, InterruptedException {
+
+        // Collect URLs of asset scripts. They are at the end of body.
+        final List<String> assets = new ArrayList<>();
+        try (HttpResponse home = transport.get(HOME_URL); PageScanner scanner = new PageScanner(home.reader())) {
+            while (scanner.skipToAny(ASSET_MARKER, "</body>") == 0) {
+                final String path = scanner.readUntil("\"", MAX_ASSET_PATH_LENGTH);
+                if (path != null) assets.add(ASSET_HOST + path);
+            }
+        }
+        if (assets.isEmpty()) return null;
+
+        // Try the script which has had client id so far first.
+        final int guess = Math.min(PREFERRED_ASSET_INDEX, assets.size() - 1);
+        try {
+            final String guessed = probeAsset(transport, assets.remove(guess), null);
+            if (guessed != null) return guessed;
+        } catch (final IOException e) {
+            LOGGER.log(Level.WARNING, "Asset probe failed", e);
+        }
+
+        // The first guess missed, so the other scripts are probed in parallel and the first hit wins.
+        final List<Closeable> responses = Collections.synchronizedList(new ArrayList<>());
+        final CompletionService<String> probes = new ExecutorCompletionService<>(probeExecutor);
+        final List<Future<String>> futures = new ArrayList<>();
+        assets.forEach(url -> futures.add(probes.submit(() -> probeAsset(transport, url, responses))));
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    final String id = probes.take().get();
+                    if (id != null) return id;
+                } catch (final ExecutionException e) {
+                    LOGGER.log(Level.WARNING, "Asset probe failed", e.getCause());
+                }
+            }
+            return null;
+        } finally {
+
+            // Cancel the downloads of other scripts.
+            futures.forEach(f -> f.cancel(true));
+            synchronized (responses) {
+                for (final Closeable response : responses) {
+                    try {
+                        response.close();
+                    } catch (IOException ignored) {
+                        // The download is abandoned anyway.
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Scans an asset script for client id and stops downloading as soon as it is found.
+     *
+     * @param transport transport which the script is downloaded through
+     * @param url URL of asset script
+     * @param responses list to register the response so that it can be cancelled, or null
+     * @return client id, or null if the script does not contain it
+     * @throws IOException if the script can not be read
+     */
+    @Nullable
+    private static String probeAsset(
+            @NonNull final HttpTransport transport,
+            @NonNull final String url,
+            @Nullable final List<Closeable> responses
+    ) throws IOException {
+        try (HttpResponse response = transport.get(url); PageScanner scanner = new PageScanner(response.reader())) {
+            if (responses != null) responses.add(response);
+            while (scanner.skipTo(CLIENT_ID_MARKER)) {
+                final String id = scanner.readUntil("\"", MAX_CLIENT_ID_LENGTH);
+                if (id != null && !id.isEmpty() && id.chars().allMatch(Character::isLetterOrDigit)) return id;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Search result of one page, which is built on the network thread.
+     */
+    public static final class Page implements SoundCloudParser.Listener {
+
+        /** Tracks in the page. */
+        private final List<SoundCloudSnippet> SNIPPETS = new ArrayList<>();
+
+        /** SimpleDateFormat is not thread safe, so each page has its own one. */
+        private final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat(DATE_PATTERN);
+
+        private Page() { }
+
+        @NonNull
+        public List<SoundCloudSnippet> getSNIPPETS() {
+            return this.SNIPPETS;
+        }
+
+        @Override
+        public void onTrack(String title, String publisher, String createdAt, String trackId, String trackAuth, String thumbnail) {
+            Date publishedDate = null;
+            if (createdAt != null) {
+                try {
+                    publishedDate = this.DATE_FORMAT.parse(createdAt);
+                } catch (final ParseException e) {
+                    LOGGER.log(Level.WARNING, "Date ParseException", e);
+                }
+            }
+
+            this.SNIPPETS.add(
+                    new SoundCloudSnippet(
+                            StringUtil.decodeKeyword(title),
+                            publisher,
+                            publishedDate,
+                            trackId,
+                            trackAuth,
+                            thumbnail
+                    )
+            );
+        }
+    }
+}
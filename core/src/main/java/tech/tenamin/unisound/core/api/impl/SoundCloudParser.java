@@ -0,0 +1,102 @@
+package tech.tenamin.unisound.core.api.impl;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import tech.tenamin.unisound.core.api.util.JSONReaderUtil;
+
+/**
+ * Streaming parser of SoundCloud search responses.
+ * Tracks are pulled straight out of the response, and unused subtrees (user, media, publisher_metadata, etc.)
+ * are skipped without being built as json objects.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public final class SoundCloudParser {
+
+    /** Do not let make instance of SoundCloudParser */
+    private SoundCloudParser() { }
+
+    /**
+     * Receiver of parsed tracks.
+     */
+    public interface Listener {
+
+        /**
+         * Called for each track in search result.
+         *
+         * @param title the title of track
+         * @param publisher the name of user who posted the track
+         * @param createdAt the date when the track was posted, in SoundCloud date format
+         * @param trackId the URL of transcoding which is used to fetch the audio source
+         * @param trackAuth the authorization token of track
+         * @param thumbnail the URL of artwork, or null if the track has no artwork
+         */
+        void onTrack(String title, String publisher, String createdAt, String trackId, String trackAuth, String thumbnail);
+    }
+
+    /**
+     * Parses the json response of search API.
+     * Items without media (users, playlists) are ignored.
+     *
+     * @param json reader of the json response
+     * @param listener receiver of parsed tracks
+     * @throws IOException if the json can not be read or parsed
+     */
+    public static void parseSearch(final Reader json, final Listener listener) throws IOException {
+        final JsonReader reader = new JsonReader(json);
+        if (!JSONReaderUtil.seek(reader, "collection") || reader.peek() != JsonToken.BEGIN_ARRAY) return;
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            parseTrack(reader, listener);
+        }
+        reader.endArray();
+    }
+
+    /** Parses an item of collection and passes it to the listener if it is a playable track. */
+    private static void parseTrack(final JsonReader reader, final Listener listener) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return;
+        }
+
+        String title = null, publisher = null, createdAt = null, trackId = null, trackAuth = null, thumbnail = null;
+        boolean hasMedia = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "title":
+                    title = JSONReaderUtil.readString(reader);
+                    break;
+                case "user":
+                    publisher = JSONReaderUtil.readString(reader, "username");
+                    break;
+                case "created_at":
+                    createdAt = JSONReaderUtil.readString(reader);
+                    break;
+                case "media":
+                    hasMedia = reader.peek() == JsonToken.BEGIN_OBJECT;
+                    trackId = JSONReaderUtil.readString(reader, "transcodings", "1", "url");
+                    break;
+                case "track_authorization":
+                    trackAuth = JSONReaderUtil.readString(reader);
+                    break;
+                case "artwork_url":
+                    thumbnail = JSONReaderUtil.readString(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (hasMedia && title != null && trackId != null) {
+            listener.onTrack(title, publisher, createdAt, trackId, trackAuth, thumbnail);
+        }
+    }
+}
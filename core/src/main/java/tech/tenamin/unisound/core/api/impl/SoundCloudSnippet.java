@@ -0,0 +1,55 @@
+package tech.tenamin.unisound.core.api.impl;
+
+import static java.lang.String.format;
+
+import androidx.annotation.NonNull;
+
+import java.util.Date;
+
+import tech.tenamin.unisound.core.api.MusicSnippet;
+
+/**
+ * Music snippet for SoundCloud
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public class SoundCloudSnippet extends MusicSnippet {
+
+    /** These are like keys needed to get audio data on SoundCloud */
+    private final String TRACK_ID, TRACK_AUTH;
+
+    public SoundCloudSnippet(
+            String TITLE,
+            String PUBLISHER,
+            Date PUBLISHED_AT,
+            final String TRACK_ID,
+            final String TRACK_AUTH,
+            final String THUMBNAIL
+    ) {
+        super(TITLE, PUBLISHER, PUBLISHED_AT, THUMBNAIL);
+        this.TRACK_AUTH = TRACK_AUTH;
+        this.TRACK_ID = TRACK_ID;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return format(
+                "title:%s,publisher:%s,published_at:%s,track_id:%s,track_auth:%s",
+                this.getTITLE(),
+                this.getPUBLISHER(),
+                this.getPUBLISHED_AT().toString(),
+                this.TRACK_ID,
+                this.TRACK_AUTH
+        );
+    }
+
+    public String getTRACK_ID() {
+        return this.TRACK_ID;
+    }
+
+    public String getTRACK_AUTH() {
+        return this.TRACK_AUTH;
+    }
+}
@@ -0,0 +1,291 @@
+package tech.tenamin.unisound.core.api.impl;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import tech.tenamin.unisound.core.api.SearchClient;
+import tech.tenamin.unisound.core.api.SearchPage;
+import tech.tenamin.unisound.core.api.http.HttpTransport;
+import tech.tenamin.unisound.core.api.http.MeteredExchange;
+import tech.tenamin.unisound.core.api.util.StringUtil;
+import tech.tenamin.unisound.core.metrics.MetricsRegistry;
+
+/**
+ * Search of YouTube over HttpTransport.
+ * The first page is the HTML search result page, and the following pages are fetched from innertube API
+ * with the API key and context found in the first page.
+ * URLs, request bodies and parsers are also used by the Volley adapter of the app.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public final class YouTubeClient implements SearchClient<YouTubeSnippet> {
+
+    /** Names of the provider and its endpoints in MetricsRegistry. */
+    public static final String PROVIDER = "youtube", ENDPOINT_SEARCH = "search", ENDPOINT_CONTINUATION = "continuation", ENDPOINT_STREAM = "stream";
+
+    /** Video tag for filtering search result */
+    private static final String VIDEO_TAG = "EgIQAQ%3D%3D";
+
+    /** The host URL of YouTube */
+    private static final String HOST_URL = "https://www.youtube.com";
+
+    /** Transport which requests are sent through. */
+    private final HttpTransport TRANSPORT;
+
+    public YouTubeClient(@NonNull final HttpTransport transport) {
+        this.TRANSPORT = transport;
+    }
+
+    @NonNull
+    @Override
+    public SearchPage<YouTubeSnippet> search(@NonNull final String keyword, @Nullable final String cursor) throws IOException {
+        final Cursor previous = cursor == null ? null : Cursor.parse(cursor);
+
+        final Page page;
+        final String apiToken, context;
+        if (previous == null) {
+            page = MeteredExchange.execute(
+                    MetricsRegistry.getInstance().of(PROVIDER, ENDPOINT_SEARCH),
+                    () -> this.TRANSPORT.get(resultPageURL(keyword)),
+                    YouTubeClient::parseResultPage,
+                    p -> p.SNIPPETS.size()
+            );
+            apiToken = page.apiToken;
+            context = page.context;
+        } else {
+            page = MeteredExchange.execute(
+                    MetricsRegistry.getInstance().of(PROVIDER, ENDPOINT_CONTINUATION),
+                    () -> this.TRANSPORT.post(continuationURL(previous.API_TOKEN), continuationBody(previous.CONTEXT, previous.COUNT_TOKEN)),
+                    YouTubeClient::parseContinuation,
+                    p -> p.SNIPPETS.size()
+            );
+            apiToken = previous.API_TOKEN;
+            context = previous.CONTEXT;
+        }
+
+        final String next = page.countToken == null || apiToken == null ? null : new Cursor(page.countToken, apiToken, context).toString();
+        return new SearchPage<>(page.SNIPPETS, next);
+    }
+
+    /**
+     * @param keyword search keyword
+     * @return URL of the search result page, which is filtered to videos
+     */
+    @NonNull
+    public static String resultPageURL(@NonNull final String keyword) {
+        return String.format(
+                "%s/results?search_query=%s&sp=%s",
+                HOST_URL,
+                StringUtil.encodeKeywordToURL(keyword),
+                VIDEO_TAG
+        );
+    }
+
+    /**
+     * @param apiToken innertube API key found in the first page
+     * @return URL of innertube API which answers the following pages
+     */
+    @NonNull
+    public static String continuationURL(@Nullable final String apiToken) {
+        return String.format("%s/youtubei/v1/search?key=%s", HOST_URL, apiToken);
+    }
+
+    /**
+     * Builds the request body of a following page.
+     *
+     * @param context innertube context found in the first page, as json
+     * @param countToken continuation token of the previous page
+     * @return json request body
+     */
+    @NonNull
+    public static String continuationBody(@Nullable final String context, @Nullable final String countToken) {
+        final StringWriter body = new StringWriter();
+        try (JsonWriter writer = new JsonWriter(body)) {
+            writer.setSerializeNulls(false);
+            writer.beginObject();
+            writer.name("context");
+            if (context == null) {
+                writer.beginObject().endObject();
+            } else {
+                writer.jsonValue(context);
+            }
+            writer.name("continuation").value(countToken);
+            writer.endObject();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return body.toString();
+    }
+
+    /**
+     * Parses the search result page.
+     *
+     * @param reader the page
+     * @return videos and tokens in the page
+     * @throws IOException if the page can not be read
+     */
+    @NonNull
+    public static Page parseResultPage(@NonNull final Reader reader) throws IOException {
+        final Page page = new Page();
+        YouTubeParser.parseResultPage(reader, page);
+        return page;
+    }
+
+    /**
+     * Parses a response of innertube API.
+     *
+     * @param reader the response
+     * @return videos and the continuation token in the response
+     * @throws IOException if the response can not be read
+     */
+    @NonNull
+    public static Page parseContinuation(@NonNull final Reader reader) throws IOException {
+        final Page page = new Page();
+        YouTubeParser.parseContinuation(reader, page);
+        return page;
+    }
+
+    /**
+     * Search result of one page, which is built on the network thread.
+     */
+    public static final class Page implements YouTubeParser.Listener {
+
+        /** Videos in the page. */
+        private final List<YouTubeSnippet> SNIPPETS = new ArrayList<>();
+
+        /** Tokens needed to search next page. */
+        private String countToken, apiToken, context;
+
+        private Page() { }
+
+        @NonNull
+        public List<YouTubeSnippet> getSNIPPETS() {
+            return this.SNIPPETS;
+        }
+
+        @Nullable
+        public String getCountToken() {
+            return this.countToken;
+        }
+
+        @Nullable
+        public String getApiToken() {
+            return this.apiToken;
+        }
+
+        @Nullable
+        public String getContext() {
+            return this.context;
+        }
+
+        @Override
+        public void onVideo(String videoId, String title, String publisher, String thumbnail) {
+            this.SNIPPETS.add(new YouTubeSnippet(title, publisher, null, videoId, thumbnail));
+        }
+
+        @Override
+        public void onContinuation(String token) {
+            this.countToken = token;
+        }
+
+        @Override
+        public void onApiKey(String apiKey) {
+            this.apiToken = apiKey;
+        }
+
+        @Override
+        public void onContext(String context) {
+            this.context = context;
+        }
+    }
+
+    /**
+     * Tokens needed to search next page, which are kept as a json string such as {"token", "key", "context"}.
+     */
+    public static final class Cursor {
+
+        private final String COUNT_TOKEN, API_TOKEN, CONTEXT;
+
+        public Cursor(@Nullable final String countToken, @Nullable final String apiToken, @Nullable final String context) {
+            this.COUNT_TOKEN = countToken;
+            this.API_TOKEN = apiToken;
+            this.CONTEXT = context;
+        }
+
+        @Nullable
+        public String getCOUNT_TOKEN() {
+            return this.COUNT_TOKEN;
+        }
+
+        @Nullable
+        public String getAPI_TOKEN() {
+            return this.API_TOKEN;
+        }
+
+        @Nullable
+        public String getCONTEXT() {
+            return this.CONTEXT;
+        }
+
+        /**
+         * Reads a cursor written by toString().
+         *
+         * @param cursor json string of the cursor
+         * @return the cursor
+         * @throws IllegalArgumentException if the cursor is broken
+         */
+        @NonNull
+        public static Cursor parse(@NonNull final String cursor) {
+            String countToken = null, apiToken = null, context = null;
+            try (JsonReader reader = new JsonReader(new StringReader(cursor))) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    final String name = reader.nextName();
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.nextNull();
+                        continue;
+                    }
+                    switch (name) {
+                        case "token": countToken = reader.nextString(); break;
+                        case "key": apiToken = reader.nextString(); break;
+                        case "context": context = reader.nextString(); break;
+                        default: reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } catch (IOException | IllegalStateException e) {
+                throw new IllegalArgumentException("Broken cursor", e);
+            }
+            return new Cursor(countToken, apiToken, context);
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            final StringWriter json = new StringWriter();
+            try (JsonWriter writer = new JsonWriter(json)) {
+                writer.setSerializeNulls(false);
+                writer.beginObject()
+                        .name("token").value(this.COUNT_TOKEN)
+                        .name("key").value(this.API_TOKEN)
+                        .name("context").value(this.CONTEXT)
+                        .endObject();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return json.toString();
+        }
+    }
+}
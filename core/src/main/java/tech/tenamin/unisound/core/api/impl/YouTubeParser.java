@@ -0,0 +1,239 @@
+package tech.tenamin.unisound.core.api.impl;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import tech.tenamin.unisound.core.api.util.JSONReaderUtil;
+import tech.tenamin.unisound.core.api.util.PageScanner;
+
+/**
+ * Streaming parser of YouTube search responses.
+ * Search results are pulled out of the response in one forward pass, without splitting the page into Strings.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public final class YouTubeParser {
+
+    /** The marker of the initial data of search result page. */
+    private static final String INITIAL_DATA_MARKER = "var ytInitialData =";
+
+    /** The marker of API key which is needed to search next page. */
+    private static final String API_KEY_MARKER = "\"innertubeApiKey\":";
+
+    /** The marker of context which is needed to search next page. */
+    private static final String CONTEXT_MARKER = "\"INNERTUBE_CONTEXT\":";
+
+    /** Do not let make instance of YouTubeParser */
+    private YouTubeParser() { }
+
+    /**
+     * Receiver of parsed items.
+     */
+    public interface Listener {
+
+        /**
+         * Called for each video in search result.
+         *
+         * @param videoId the id of video
+         * @param title the title of video
+         * @param publisher the name of channel, or null if it is not shown
+         * @param thumbnail the URL of thumbnail
+         */
+        void onVideo(String videoId, String title, String publisher, String thumbnail);
+
+        /**
+         * Called when a token to fetch next page is found.
+         *
+         * @param token continuation token
+         */
+        void onContinuation(String token);
+
+        /**
+         * Called when the API key of the search page is found.
+         *
+         * @param apiKey innertube API key
+         */
+        default void onApiKey(String apiKey) { }
+
+        /**
+         * Called when the client context of the search page is found.
+         *
+         * @param context json text of innertube context
+         */
+        default void onContext(String context) { }
+    }
+
+    /**
+     * Parses the HTML page of the first search result.
+     * The initial data, API key and context are found in one pass, in whatever order they appear.
+     *
+     * @param page reader of the HTML page
+     * @param listener receiver of parsed items
+     * @return true if the initial data is found
+     * @throws IOException if the page can not be read or parsed
+     */
+    public static boolean parseResultPage(final Reader page, final Listener listener) throws IOException {
+        final PageScanner scanner = new PageScanner(page);
+        final String[] markers = { INITIAL_DATA_MARKER, API_KEY_MARKER, CONTEXT_MARKER };
+
+        boolean initialData = false;
+        int remaining = markers.length;
+        while (remaining > 0) {
+            final int found = scanner.skipToAny(markers);
+            if (found == -1) break;
+            markers[found] = null;
+            remaining--;
+
+            switch (found) {
+                case 0:
+                    try (Reader value = scanner.valueReader()) {
+                        final JsonReader reader = new JsonReader(value);
+                        if (JSONReaderUtil.seek(reader,
+                                "contents",
+                                "twoColumnSearchResultsRenderer",
+                                "primaryContents",
+                                "sectionListRenderer",
+                                "contents"
+                        )) {
+                            parseContents(reader, listener);
+                        }
+                    }
+                    initialData = true;
+                    break;
+                case 1:
+                    final String apiKey = scanner.readJSONString();
+                    if (apiKey != null) listener.onApiKey(apiKey);
+                    break;
+                case 2:
+                    listener.onContext(scanner.readJSONValue());
+                    break;
+            }
+        }
+        return initialData;
+    }
+
+    /**
+     * Parses the json response of a continuation (next page) request.
+     *
+     * @param json reader of the json response
+     * @param listener receiver of parsed items
+     * @throws IOException if the json can not be read or parsed
+     */
+    public static void parseContinuation(final Reader json, final Listener listener) throws IOException {
+        final JsonReader reader = new JsonReader(json);
+        if (!JSONReaderUtil.seek(reader, "onResponseReceivedCommands")) return;
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) return;
+        reader.beginArray();
+        if (!reader.hasNext()) return;
+        if (JSONReaderUtil.seek(reader, "appendContinuationItemsAction", "continuationItems")) {
+            parseContents(reader, listener);
+        }
+    }
+
+    /**
+     * Parses an array of section contents, which contains item sections and a continuation item.
+     *
+     * @param reader the reader positioned at the array
+     * @param listener receiver of parsed items
+     */
+    private static void parseContents(final JsonReader reader, final Listener listener) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) return;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "itemSectionRenderer":
+                        parseItemSection(reader, listener);
+                        break;
+                    case "continuationItemRenderer":
+                        final String token = JSONReaderUtil.readString(reader,
+                                "continuationEndpoint", "continuationCommand", "token");
+                        if (token != null) listener.onContinuation(token);
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        reader.endArray();
+    }
+
+    /** Parses {"contents":[{"videoRenderer":{...}}, ...]} of an item section. */
+    private static void parseItemSection(final JsonReader reader, final Listener listener) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return;
+        }
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!reader.nextName().equals("contents") || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                reader.skipValue();
+                continue;
+            }
+
+            reader.beginArray();
+            while (reader.hasNext()) {
+                if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                    reader.skipValue();
+                    continue;
+                }
+
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (reader.nextName().equals("videoRenderer")) {
+                        parseVideoRenderer(reader, listener);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+    }
+
+    /** Parses a video renderer and passes the video to the listener if it has an id and a title. */
+    private static void parseVideoRenderer(final JsonReader reader, final Listener listener) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return;
+        }
+
+        String videoId = null, title = null, publisher = null, thumbnail = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "videoId":
+                    videoId = JSONReaderUtil.readString(reader);
+                    break;
+                case "thumbnail":
+                    thumbnail = JSONReaderUtil.readString(reader, "thumbnails", "0", "url");
+                    break;
+                case "title":
+                    title = JSONReaderUtil.readString(reader, "runs", "0", "text");
+                    break;
+                case "ownerText":
+                    publisher = JSONReaderUtil.readString(reader, "runs", "0", "text");
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (videoId != null && title != null) listener.onVideo(videoId, title, publisher, thumbnail);
+    }
+}
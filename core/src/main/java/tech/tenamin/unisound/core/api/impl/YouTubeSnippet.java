@@ -0,0 +1,26 @@
+package tech.tenamin.unisound.core.api.impl;
+
+import java.util.Date;
+
+import tech.tenamin.unisound.core.api.MusicSnippet;
+
+/**
+ * Music snippet for YouTube
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public class YouTubeSnippet extends MusicSnippet {
+
+    /** This is an id which is needed to play music. */
+    private final String VIDEO_ID;
+
+    public YouTubeSnippet(String TITLE, String PUBLISHER, Date PUBLISHED_AT, final String VIDEO_ID, final String THUMBNAIL) {
+        super(TITLE, PUBLISHER, PUBLISHED_AT, THUMBNAIL);
+        this.VIDEO_ID = VIDEO_ID;
+    }
+
+    public String getVIDEO_ID() {
+        return this.VIDEO_ID;
+    }
+}
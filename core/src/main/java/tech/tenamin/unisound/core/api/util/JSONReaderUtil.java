@@ -0,0 +1,110 @@
+package tech.tenamin.unisound.core.api.util;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+
+/**
+ * Utility class for pulling values out of a JsonReader without building a json tree.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public class JSONReaderUtil {
+
+    /**
+     * Opens nested objects along the given names.
+     * The reader is positioned at the value of the last name, and enclosing objects are left open.
+     * (Ex: seek(reader, "contents", "sectionListRenderer") for {"contents":{"sectionListRenderer":...}})
+     *
+     * @param reader the reader positioned at the outermost object
+     * @param names the names of members to follow
+     * @return true if every member is found, false otherwise
+     * @throws IOException if the json can not be read
+     */
+    public static boolean seek(final JsonReader reader, final String... names) throws IOException {
+        for (final String name : names) {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) return false;
+            reader.beginObject();
+            if (!skipTo(reader, name)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Skips members of the current object until the member with the given name.
+     *
+     * @param reader the reader inside an object
+     * @param name the name of the member to find
+     * @return true if the reader is positioned at the value of the member, false if the object has no more members
+     * @throws IOException if the json can not be read
+     */
+    public static boolean skipTo(final JsonReader reader, final String name) throws IOException {
+        while (reader.hasNext()) {
+            if (reader.nextName().equals(name)) return true;
+            reader.skipValue();
+        }
+        return false;
+    }
+
+    /**
+     * Reads the string at the given path in the current value, and consumes the whole value.
+     * Numeric names select an element of an array.
+     * (Ex: readString(reader, "runs", "0", "text") for {"runs":[{"text":"Title"}]} -> "Title")
+     *
+     * @param reader the reader positioned at a value
+     * @param path the names of members or indexes of elements to follow
+     * @return the string at the path, or null if it does not exist
+     * @throws IOException if the json can not be read
+     */
+    public static String readString(final JsonReader reader, final String... path) throws IOException {
+        return readString(reader, path, 0);
+    }
+
+    private static String readString(final JsonReader reader, final String[] path, final int depth) throws IOException {
+        final JsonToken token = reader.peek();
+
+        // Reached the end of path.
+        if (depth == path.length) {
+            if (token == JsonToken.STRING) return reader.nextString();
+            reader.skipValue();
+            return null;
+        }
+
+        String value = null;
+        if (token == JsonToken.BEGIN_OBJECT) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals(path[depth]) && value == null) {
+                    value = readString(reader, path, depth + 1);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } else if (token == JsonToken.BEGIN_ARRAY) {
+            final int index = indexOf(path[depth]);
+            reader.beginArray();
+            for (int i = 0; reader.hasNext(); i++) {
+                if (i == index) {
+                    value = readString(reader, path, depth + 1);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endArray();
+        } else {
+            reader.skipValue();
+        }
+        return value;
+    }
+
+    /** Parses an array index in a path, or returns -1 for a member name. */
+    private static int indexOf(final String name) {
+        for (int i = 0; i < name.length(); i++) {
+            if (!Character.isDigit(name.charAt(i))) return -1;
+        }
+        return name.isEmpty() ? -1 : Integer.parseInt(name);
+    }
+}
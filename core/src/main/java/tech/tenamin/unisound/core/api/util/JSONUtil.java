@@ -1,7 +1,5 @@
 package tech.tenamin.unisound.core.api.util;
 
-import android.util.Log;
-
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -47,7 +45,6 @@ public class JSONUtil {
             try {
                 return i.getJSONObject(name);
             } catch (JSONException e) {
-                Log.w(String.format("%s JSONException"), e);
                 throw new RuntimeException(e);
             }
         };
@@ -74,7 +71,6 @@ public class JSONUtil {
             try {
                 return o.getString(name);
             } catch (JSONException e) {
-                Log.w(String.format("%s JSONException"), e);
                 throw new RuntimeException(e);
             }
         };
@@ -91,7 +87,6 @@ public class JSONUtil {
             try {
                 return o.getJSONArray(name);
             } catch (JSONException e) {
-                Log.w(String.format("%s JSONException"), e);
                 throw new RuntimeException(e);
             }
         };
@@ -0,0 +1,265 @@
+package tech.tenamin.unisound.core.api.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Forward-only scanner for large text responses (HTML pages, scripts, etc.).
+ * Markers are searched while the text is read, so the whole response never has to be held as a String,
+ * and a JSON value following a marker can be handed to a parser as a Reader.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public class PageScanner implements Closeable {
+
+    /** The number of chars read from the source at once. */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** The source of text. */
+    private final Reader READER;
+
+    /** Chars read from the source but not consumed yet. */
+    private final char[] BUFFER = new char[BUFFER_SIZE];
+
+    /** The position of next char in BUFFER and the number of valid chars in it. */
+    private int position, limit;
+
+    public PageScanner(final Reader reader) {
+        this.READER = reader;
+    }
+
+    /**
+     * Skips text until the given marker is found.
+     * The scanner is positioned just after the marker.
+     *
+     * @param marker the string to search for
+     * @return true if the marker is found, false if the end of text is reached
+     * @throws IOException if the source can not be read
+     */
+    public boolean skipTo(final String marker) throws IOException {
+        return this.skipToAny(marker) == 0;
+    }
+
+    /**
+     * Skips text until any of the given markers is found.
+     * The scanner is positioned just after the marker which is found first.
+     * Null markers are ignored, so callers can drop markers they have already found.
+     *
+     * @param markers the strings to search for
+     * @return the index of the found marker, or -1 if the end of text is reached
+     * @throws IOException if the source can not be read
+     */
+    public int skipToAny(final String... markers) throws IOException {
+
+        // Build failure tables so that every char is looked at only once.
+        final int[][] failures = new int[markers.length][];
+        for (int i = 0; i < markers.length; i++) {
+            if (markers[i] != null) failures[i] = failureTable(markers[i]);
+        }
+
+        final int[] matched = new int[markers.length];
+        while (this.fill()) {
+            final char c = this.BUFFER[this.position++];
+            for (int i = 0; i < markers.length; i++) {
+                final String marker = markers[i];
+                if (marker == null) continue;
+
+                int k = matched[i];
+                while (k > 0 && marker.charAt(k) != c) k = failures[i][k - 1];
+                if (marker.charAt(k) == c) k++;
+                if (k == marker.length()) return i;
+                matched[i] = k;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads text until the given terminator is found.
+     * This is a streaming version of {@link StringUtil#clip(String, String, String)}.
+     * (Ex: skipTo("client_id=") then readUntil("\""))
+     *
+     * @param terminator the string which ends the text to read
+     * @param maxLength the maximum length of the text, to give up on broken responses
+     * @return the text before the terminator, or null if it is not found
+     * @throws IOException if the source can not be read
+     */
+    public String readUntil(final String terminator, final int maxLength) throws IOException {
+        final StringBuilder builder = new StringBuilder();
+        final int last = terminator.length() - 1;
+        while (this.fill()) {
+            builder.append(this.BUFFER[this.position++]);
+
+            final int start = builder.length() - terminator.length();
+            if (start >= 0 && builder.charAt(builder.length() - 1) == terminator.charAt(last)
+                    && builder.indexOf(terminator, start) == start) {
+                builder.setLength(start);
+                return builder.toString();
+            }
+            if (builder.length() > maxLength + terminator.length()) return null;
+        }
+        return null;
+    }
+
+    /**
+     * Reads a JSON string literal at the current position.
+     * Leading whitespace and a name separator (':') are skipped.
+     *
+     * @return the unescaped string, or null if no string literal is there
+     * @throws IOException if the source can not be read
+     */
+    public String readJSONString() throws IOException {
+        this.skipSeparators();
+        if (this.peek() != '"') return null;
+        this.position++;
+
+        final StringBuilder builder = new StringBuilder();
+        while (this.fill()) {
+            final char c = this.BUFFER[this.position++];
+            if (c == '"') return builder.toString();
+            if (c != '\\') {
+                builder.append(c);
+                continue;
+            }
+
+            if (!this.fill()) return null;
+            final char escaped = this.BUFFER[this.position++];
+            switch (escaped) {
+                case 'n': builder.append('\n'); break;
+                case 't': builder.append('\t'); break;
+                case 'r': builder.append('\r'); break;
+                case 'b': builder.append('\b'); break;
+                case 'f': builder.append('\f'); break;
+                case 'u':
+                    int code = 0;
+                    for (int i = 0; i < 4; i++) {
+                        if (!this.fill()) return null;
+                        code = (code << 4) | Character.digit(this.BUFFER[this.position++], 16);
+                    }
+                    builder.append((char) code);
+                    break;
+                default: builder.append(escaped);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads a JSON object or array at the current position as a String.
+     * This is only for small values; large ones should be parsed through {@link #valueReader()}.
+     *
+     * @return the JSON text of the value
+     * @throws IOException if the source can not be read or no JSON value is there
+     */
+    public String readJSONValue() throws IOException {
+        final StringBuilder builder = new StringBuilder();
+        final char[] chunk = new char[1024];
+        try (Reader reader = this.valueReader()) {
+            int n;
+            while ((n = reader.read(chunk, 0, chunk.length)) != -1) builder.append(chunk, 0, n);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Creates a Reader which returns the JSON object or array at the current position and then ends.
+     * Closing the reader skips the rest of the value, so the scanner can continue after it.
+     *
+     * @return a Reader bounded to the JSON value
+     * @throws IOException if the source can not be read or no JSON value is there
+     */
+    public Reader valueReader() throws IOException {
+        this.skipSeparators();
+        final int c = this.peek();
+        if (c != '{' && c != '[') throw new IOException(String.format("PageScanner: JSON value expected but %s found", (char) c));
+        return new ValueReader();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.READER.close();
+    }
+
+    /**
+     * Makes sure BUFFER has at least one unconsumed char.
+     *
+     * @return false if the end of text is reached
+     */
+    private boolean fill() throws IOException {
+        if (this.position < this.limit) return true;
+        final int n = this.READER.read(this.BUFFER, 0, this.BUFFER.length);
+        if (n <= 0) return false;
+        this.position = 0;
+        this.limit = n;
+        return true;
+    }
+
+    /** Returns the next char without consuming it, or -1 at the end of text. */
+    private int peek() throws IOException {
+        return this.fill() ? this.BUFFER[this.position] : -1;
+    }
+
+    /** Skips whitespace and a name separator before a JSON value. */
+    private void skipSeparators() throws IOException {
+        int c;
+        while ((c = this.peek()) != -1 && (Character.isWhitespace(c) || c == ':' || c == '=')) this.position++;
+    }
+
+    /** Builds the failure table of Knuth-Morris-Pratt algorithm for the given marker. */
+    private static int[] failureTable(final String marker) {
+        final int[] table = new int[marker.length()];
+        int k = 0;
+        for (int i = 1; i < marker.length(); i++) {
+            while (k > 0 && marker.charAt(i) != marker.charAt(k)) k = table[k - 1];
+            if (marker.charAt(i) == marker.charAt(k)) k++;
+            table[i] = k;
+        }
+        return table;
+    }
+
+    /**
+     * Reader which returns chars of the scanner until the current JSON value is closed.
+     * Brackets in string literals are ignored by tracking quotes and escapes.
+     */
+    private class ValueReader extends Reader {
+
+        private int depth;
+        private boolean inString, escaped, done;
+
+        @Override
+        public int read(final char[] cbuf, final int off, final int len) throws IOException {
+            if (this.done || len == 0) return this.done ? -1 : 0;
+            if (!PageScanner.this.fill()) {
+                this.done = true;
+                return -1;
+            }
+
+            int n = 0;
+            while (n < len && !this.done && PageScanner.this.position < PageScanner.this.limit) {
+                final char c = PageScanner.this.BUFFER[PageScanner.this.position++];
+                cbuf[off + n++] = c;
+
+                if (this.inString) {
+                    if (this.escaped) this.escaped = false;
+                    else if (c == '\\') this.escaped = true;
+                    else if (c == '"') this.inString = false;
+                } else if (c == '"') {
+                    this.inString = true;
+                } else if (c == '{' || c == '[') {
+                    this.depth++;
+                } else if ((c == '}' || c == ']') && --this.depth == 0) {
+                    this.done = true;
+                }
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            final char[] skip = new char[1024];
+            while (this.read(skip, 0, skip.length) != -1);
+        }
+    }
+}
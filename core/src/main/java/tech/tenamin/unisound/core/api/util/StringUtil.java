@@ -1,8 +1,5 @@
 package tech.tenamin.unisound.core.api.util;
 
-import android.annotation.SuppressLint;
-import android.util.Log;
-
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
@@ -43,7 +40,6 @@ public class StringUtil {
                     "UTF-8"
             );
         } catch (UnsupportedEncodingException e) {
-            Log.w("UnsupportedEncodingException", e);
             throw new RuntimeException(e);
         }
     }
@@ -61,7 +57,6 @@ public class StringUtil {
                     "UTF-8"
             );
         } catch (UnsupportedEncodingException e) {
-            Log.w("UnsupportedEncodingException", e);
             throw new RuntimeException(e);
         }
     }
@@ -72,7 +67,6 @@ public class StringUtil {
      * @param SECONDS The number of seconds to be converted.
      * @return The formatted time string in the MM:SS format.
      */
-    @SuppressLint("DefaultLocale")
     public static String secondsToMMSS(final int SECONDS) {
         final String A = String.valueOf(SECONDS % 60);
         return String.format(
@@ -0,0 +1,55 @@
+package tech.tenamin.unisound.core.api.util;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket which limits bytes per second shared by several connections.
+ * The rate is read on each acquisition, so it can follow conditions such as whether music is streamed.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public class TokenBucket {
+
+    /** Supplier of the rate in bytes per second. 0 or less means unlimited. */
+    private final LongSupplier RATE;
+
+    /** Bytes which can be read without waiting. */
+    private double tokens;
+
+    /** The time when tokens were last added. */
+    private long refilledAt = System.nanoTime();
+
+    public TokenBucket(final LongSupplier rate) {
+        this.RATE = rate;
+    }
+
+    /**
+     * Takes tokens for the bytes, waiting until enough tokens are added.
+     * Up to one second of tokens is saved, so short bursts are allowed.
+     *
+     * @param bytes the number of bytes to be read
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void acquire(final int bytes) throws InterruptedException {
+        while (true) {
+            final long waitNanos;
+            synchronized (this) {
+                final long rate = this.RATE.getAsLong();
+                if (rate <= 0) return;
+
+                final long now = System.nanoTime();
+                this.tokens = Math.min(rate, this.tokens + (now - this.refilledAt) * rate / 1e9);
+                this.refilledAt = now;
+
+                // A read larger than the bucket takes all of it, and the debt is paid by waiting.
+                if (this.tokens >= Math.min(bytes, rate)) {
+                    this.tokens -= bytes;
+                    return;
+                }
+                waitNanos = (long) ((Math.min(bytes, rate) - this.tokens) * 1e9 / rate);
+            }
+            Thread.sleep(waitNanos / 1000000, (int) (waitNanos % 1000000));
+        }
+    }
+}
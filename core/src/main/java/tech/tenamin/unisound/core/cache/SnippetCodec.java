@@ -0,0 +1,321 @@
+package tech.tenamin.unisound.core.cache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import tech.tenamin.unisound.core.api.MusicSnippet;
+import tech.tenamin.unisound.core.api.impl.SoundCloudSnippet;
+import tech.tenamin.unisound.core.api.impl.YouTubeSnippet;
+
+/**
+ * Converts music snippets of every provider to stored forms and back.
+ * Snippets are stored either as json, or as the compact binary form for large sets.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public final class SnippetCodec {
+
+    /** Do not let make instance of SnippetCodec */
+    private SnippetCodec() { }
+
+    /**
+     * Returns the key which identifies the music of a snippet across providers.
+     *
+     * @param snippet snippet of the music
+     * @return key such as youtube:video_id, or null if the type of snippet is not supported
+     */
+    @Nullable
+    public static String keyOf(@NonNull final MusicSnippet snippet) {
+        if (snippet instanceof YouTubeSnippet) {
+            return keyOf("youtube", ((YouTubeSnippet) snippet).getVIDEO_ID());
+        } else if (snippet instanceof SoundCloudSnippet) {
+            return keyOf("soundcloud", ((SoundCloudSnippet) snippet).getTRACK_ID());
+        }
+        return null;
+    }
+
+    /**
+     * Builds the key of a track, which is shared by caches of the app.
+     *
+     * @param provider name of the provider
+     * @param id id of the track in the provider
+     * @return key such as youtube:video_id
+     */
+    @NonNull
+    public static String keyOf(@NonNull final String provider, @NonNull final String id) {
+        return provider + ':' + id;
+    }
+
+    /**
+     * Converts a snippet to json.
+     *
+     * @param snippet snippet to be converted
+     * @return json of the snippet, or null if the type of snippet is not supported
+     */
+    @Nullable
+    public static JSONObject toJSON(@NonNull final MusicSnippet snippet) throws JSONException {
+        final JSONObject json = new JSONObject()
+                .put("title", snippet.getTITLE())
+                .put("publisher", snippet.getPUBLISHER())
+                .put("thumbnail", snippet.getTHUMBNAIL());
+        if (snippet.getPUBLISHED_AT() != null) json.put("published_at", snippet.getPUBLISHED_AT().getTime());
+
+        if (snippet instanceof YouTubeSnippet) {
+            return json.put("type", "youtube")
+                    .put("video_id", ((YouTubeSnippet) snippet).getVIDEO_ID());
+        } else if (snippet instanceof SoundCloudSnippet) {
+            return json.put("type", "soundcloud")
+                    .put("track_id", ((SoundCloudSnippet) snippet).getTRACK_ID())
+                    .put("track_auth", ((SoundCloudSnippet) snippet).getTRACK_AUTH());
+        }
+        return null;
+    }
+
+    /**
+     * Converts json to a snippet.
+     *
+     * @param json json made by toJSON()
+     * @return snippet, or null if the type of snippet is not supported
+     */
+    @Nullable
+    public static MusicSnippet fromJSON(@NonNull final JSONObject json) throws JSONException {
+        final String title = json.getString("title");
+        final String publisher = json.optString("publisher", null);
+        final String thumbnail = json.optString("thumbnail", null);
+        final Date publishedAt = json.has("published_at") ? new Date(json.getLong("published_at")) : null;
+
+        switch (json.getString("type")) {
+            case "youtube":
+                return new YouTubeSnippet(title, publisher, publishedAt, json.getString("video_id"), thumbnail);
+            case "soundcloud":
+                return new SoundCloudSnippet(
+                        title,
+                        publisher,
+                        publishedAt,
+                        json.getString("track_id"),
+                        json.optString("track_auth", null),
+                        thumbnail
+                );
+            default:
+                return null;
+        }
+    }
+
+    /** Version of the binary form, written as its first byte. */
+    private static final int BINARY_VERSION = 1;
+
+    /** Type tags of the binary form. */
+    private static final int TAG_YOUTUBE = 1, TAG_SOUNDCLOUD = 2;
+
+    /**
+     * Encodes snippets into the binary form.
+     * Strings are prefixed by varint lengths, and publishers and prefixes of thumbnail URLs repeated
+     * in the set are written once and referred to by their index afterwards.
+     * Snippets of unsupported types are left out.
+     *
+     * @param snippets snippets to be encoded
+     * @return the binary form
+     */
+    @NonNull
+    public static byte[] toBytes(@NonNull final List<? extends MusicSnippet> snippets) {
+        final List<MusicSnippet> supported = new ArrayList<>(snippets.size());
+        for (final MusicSnippet snippet : snippets) {
+            if (snippet instanceof YouTubeSnippet || snippet instanceof SoundCloudSnippet) supported.add(snippet);
+        }
+
+        final BinaryWriter writer = new BinaryWriter(supported.size() * 96);
+        writer.OUT.write(BINARY_VERSION);
+        writer.writeVarLong(supported.size());
+        for (final MusicSnippet snippet : supported) {
+            writer.OUT.write(snippet instanceof YouTubeSnippet ? TAG_YOUTUBE : TAG_SOUNDCLOUD);
+            writer.writeString(snippet.getTITLE());
+            writer.writeReference(snippet.getPUBLISHER());
+            writer.writeVarLong(snippet.getPUBLISHED_AT() == null ? 0 : snippet.getPUBLISHED_AT().getTime() + 1);
+
+            final String thumbnail = snippet.getTHUMBNAIL();
+            final int prefix = thumbnail == null ? 0 : prefixLengthOf(thumbnail);
+            writer.writeReference(thumbnail == null ? null : thumbnail.substring(0, prefix));
+            writer.writeString(thumbnail == null ? null : thumbnail.substring(prefix));
+
+            if (snippet instanceof YouTubeSnippet) {
+                writer.writeString(((YouTubeSnippet) snippet).getVIDEO_ID());
+            } else {
+                writer.writeString(((SoundCloudSnippet) snippet).getTRACK_ID());
+                writer.writeString(((SoundCloudSnippet) snippet).getTRACK_AUTH());
+            }
+        }
+        return writer.OUT.toByteArray();
+    }
+
+    /**
+     * Decodes snippets from the binary form, reading strings straight out of the buffer.
+     * The position of the buffer is moved to the end of the binary form.
+     *
+     * @param buffer buffer of the binary form, such as a slice of a memory-mapped file
+     * @return the snippets
+     * @throws IllegalArgumentException if the binary form is broken or of an unknown version
+     */
+    @NonNull
+    public static List<MusicSnippet> fromBytes(@NonNull final ByteBuffer buffer) {
+        final BinaryReader reader = new BinaryReader(buffer);
+        try {
+            final int version = buffer.get() & 0xff;
+            if (version != BINARY_VERSION) throw new IllegalArgumentException(String.format("Unknown version %d", version));
+
+            // Each snippet takes at least a byte, so a larger count is corrupt, and must not size the list.
+            final long count = reader.readVarLong();
+            if (count < 0 || count > buffer.remaining()) throw new IllegalArgumentException(String.format("Broken count %d", count));
+
+            final List<MusicSnippet> snippets = new ArrayList<>((int) count);
+            for (int i = 0; i < count; i++) {
+                final int tag = buffer.get();
+                final String title = reader.readString();
+                final String publisher = reader.readReference();
+                final long publishedAt = reader.readVarLong();
+                final String prefix = reader.readReference();
+                final String suffix = reader.readString();
+                final String thumbnail = prefix == null ? suffix : prefix + suffix;
+                final Date date = publishedAt == 0 ? null : new Date(publishedAt - 1);
+
+                switch (tag) {
+                    case TAG_YOUTUBE:
+                        snippets.add(new YouTubeSnippet(title, publisher, date, reader.readString(), thumbnail));
+                        break;
+                    case TAG_SOUNDCLOUD:
+                        snippets.add(new SoundCloudSnippet(title, publisher, date, reader.readString(), reader.readString(), thumbnail));
+                        break;
+                    default:
+                        throw new IllegalArgumentException(String.format("Unknown type %d", tag));
+                }
+            }
+            return snippets;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Binary form is cut", e);
+        }
+    }
+
+    /**
+     * Returns the length of the part of a URL shared by thumbnails of the same provider,
+     * which is the host and the first directory, or only the host if there is no directory.
+     */
+    private static int prefixLengthOf(final String url) {
+        final int scheme = url.indexOf("://");
+        final int host = url.indexOf('/', scheme < 0 ? 0 : scheme + 3);
+        if (host < 0) return 0;
+        final int directory = url.indexOf('/', host + 1);
+        return (directory < 0 ? host : directory) + 1;
+    }
+
+    /**
+     * Writes the binary form, remembering strings which are referred to again.
+     */
+    private static final class BinaryWriter {
+
+        private final ByteArrayOutputStream OUT;
+        private final Map<String, Integer> DICTIONARY = new HashMap<>();
+
+        private BinaryWriter(final int size) {
+            this.OUT = new ByteArrayOutputStream(size);
+        }
+
+        private void writeVarLong(long value) {
+            while ((value & ~0x7fL) != 0) {
+                this.OUT.write((int) (value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            this.OUT.write((int) value);
+        }
+
+        /** Writes the length plus one, or 0 for null, and UTF-8 bytes. */
+        private void writeString(final String value) {
+            if (value == null) {
+                this.writeVarLong(0);
+                return;
+            }
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            this.writeVarLong(bytes.length + 1);
+            this.OUT.write(bytes, 0, bytes.length);
+        }
+
+        /** Writes the index plus one of a string written before, or 0 and the string. */
+        private void writeReference(final String value) {
+            final Integer index = value == null ? null : this.DICTIONARY.get(value);
+            if (index != null) {
+                this.writeVarLong(index + 1);
+                return;
+            }
+            this.writeVarLong(0);
+            this.writeString(value);
+            if (value != null) this.DICTIONARY.put(value, this.DICTIONARY.size());
+        }
+    }
+
+    /**
+     * Reads the binary form, sharing one instance of each string referred to again.
+     */
+    private static final class BinaryReader {
+
+        private final ByteBuffer BUFFER;
+        private final List<String> DICTIONARY = new ArrayList<>();
+
+        /** Bytes copied out of a buffer which has no array, such as a memory-mapped one. */
+        private byte[] scratch = new byte[0];
+
+        private BinaryReader(final ByteBuffer buffer) {
+            this.BUFFER = buffer;
+        }
+
+        private long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                final byte b = this.BUFFER.get();
+                value |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IllegalArgumentException("Varint is too long");
+        }
+
+        private String readString() {
+            final long length = this.readVarLong() - 1;
+            if (length < 0) return null;
+            if (length > this.BUFFER.remaining()) throw new IllegalArgumentException("String is cut");
+
+            final int size = (int) length;
+            final String value;
+            if (this.BUFFER.hasArray()) {
+                value = new String(this.BUFFER.array(), this.BUFFER.arrayOffset() + this.BUFFER.position(), size, StandardCharsets.UTF_8);
+                this.BUFFER.position(this.BUFFER.position() + size);
+            } else {
+                if (this.scratch.length < size) this.scratch = new byte[Math.max(size, this.scratch.length * 2)];
+                this.BUFFER.get(this.scratch, 0, size);
+                value = new String(this.scratch, 0, size, StandardCharsets.UTF_8);
+            }
+            return value;
+        }
+
+        private String readReference() {
+            final long index = this.readVarLong();
+            if (index > 0) {
+                if (index > this.DICTIONARY.size()) throw new IllegalArgumentException("Unknown reference");
+                return this.DICTIONARY.get((int) index - 1);
+            }
+            final String value = this.readString();
+            if (value != null) this.DICTIONARY.add(value);
+            return value;
+        }
+    }
+}
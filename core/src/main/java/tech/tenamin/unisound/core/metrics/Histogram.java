@@ -0,0 +1,127 @@
+package tech.tenamin.unisound.core.metrics;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non-negative values with log-linear buckets.
+ * Each power of two is split into 8 buckets, so a percentile is off by at most 12.5%,
+ * and the whole range of long fits in 488 counters.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public final class Histogram {
+
+    /** Buckets in each power of two, as bits. */
+    private static final int SUB_BITS = 3, SUB_BUCKETS = 1 << SUB_BITS;
+
+    /** The number of buckets to hold every non-negative long. */
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray COUNTS = new AtomicLongArray(BUCKETS);
+    private final LongAdder COUNT = new LongAdder(), SUM = new LongAdder();
+    private final AtomicLong MAX = new AtomicLong();
+
+    /**
+     * Records a value. Negative values are recorded as 0.
+     *
+     * @param value the value
+     */
+    public void record(final long value) {
+        final long clamped = Math.max(0, value);
+        this.COUNTS.incrementAndGet(indexOf(clamped));
+        this.COUNT.increment();
+        this.SUM.add(clamped);
+        long max;
+        while (clamped > (max = this.MAX.get()) && !this.MAX.compareAndSet(max, clamped)) {
+            // Another thread raised the max, so compare again.
+        }
+    }
+
+    /**
+     * Copies the counters. Values recorded while copying may be partly included.
+     *
+     * @return the copy
+     */
+    @NonNull
+    public Snapshot snapshot() {
+        final long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) counts[i] = this.COUNTS.get(i);
+        return new Snapshot(counts, this.COUNT.sum(), this.SUM.sum(), this.MAX.get());
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) this.COUNTS.set(i, 0);
+        this.COUNT.reset();
+        this.SUM.reset();
+        this.MAX.set(0);
+    }
+
+    private static int indexOf(final long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int mantissa = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + mantissa;
+    }
+
+    private static long lowerBoundOf(final int index) {
+        if (index < SUB_BUCKETS) return index;
+        final int exponent = index / SUB_BUCKETS + SUB_BITS - 1;
+        return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << (exponent - SUB_BITS);
+    }
+
+    /**
+     * Counters of a histogram at a moment.
+     */
+    public static final class Snapshot {
+
+        private final long[] COUNTS;
+        private final long COUNT, SUM, MAX;
+
+        private Snapshot(final long[] counts, final long count, final long sum, final long max) {
+            this.COUNTS = counts;
+            this.COUNT = count;
+            this.SUM = sum;
+            this.MAX = max;
+        }
+
+        public long getCOUNT() {
+            return this.COUNT;
+        }
+
+        public long getMAX() {
+            return this.MAX;
+        }
+
+        public double mean() {
+            return this.COUNT == 0 ? 0 : (double) this.SUM / this.COUNT;
+        }
+
+        /**
+         * Returns the upper bound of the bucket which holds the percentile.
+         *
+         * @param percentile percentile between 0 and 100
+         * @return value at the percentile, or 0 if nothing is recorded
+         */
+        public long percentile(final double percentile) {
+            long total = 0;
+            for (final long count : this.COUNTS) total += count;
+            if (total == 0) return 0;
+
+            final long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+            long seen = 0;
+            for (int i = 0; i < this.COUNTS.length; i++) {
+                seen += this.COUNTS[i];
+                if (seen >= rank) {
+                    final long upper = i + 1 < BUCKETS ? lowerBoundOf(i + 1) - 1 : Long.MAX_VALUE;
+                    return Math.min(upper, this.MAX);
+                }
+            }
+            return this.MAX;
+        }
+    }
+}
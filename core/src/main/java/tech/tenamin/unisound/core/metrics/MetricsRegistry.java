@@ -0,0 +1,73 @@
+package tech.tenamin.unisound.core.metrics;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Process-wide registry of request metrics, keyed by provider and endpoint.
+ * Recording never blocks, so it can be left on in release builds and under load.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public final class MetricsRegistry {
+
+    /** The instance shared in the process. */
+    private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+
+    /** Metrics keyed by "provider/endpoint". */
+    private final ConcurrentMap<String, RequestMetrics> METRICS = new ConcurrentHashMap<>();
+
+    private MetricsRegistry() { }
+
+    @NonNull
+    public static MetricsRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the metrics of an endpoint, creating them the first time.
+     *
+     * @param provider name of the provider, such as youtube
+     * @param endpoint name of the endpoint, such as search
+     * @return the metrics
+     */
+    @NonNull
+    public RequestMetrics of(@NonNull final String provider, @NonNull final String endpoint) {
+        final String key = provider + "/" + endpoint;
+        final RequestMetrics metrics = this.METRICS.get(key);
+        return metrics != null ? metrics : this.METRICS.computeIfAbsent(key, k -> new RequestMetrics(provider, endpoint));
+    }
+
+    /**
+     * @return metrics of every endpoint, sorted by provider and endpoint
+     */
+    @NonNull
+    public List<RequestMetrics> list() {
+        final List<RequestMetrics> metrics = new ArrayList<>(this.METRICS.values());
+        metrics.sort(Comparator.comparing(RequestMetrics::getPROVIDER).thenComparing(RequestMetrics::getENDPOINT));
+        return metrics;
+    }
+
+    /**
+     * Writes a text snapshot of every endpoint, which is shown on the debug screen and dumped by tools.
+     *
+     * @return the snapshot
+     */
+    @NonNull
+    public String dump() {
+        final StringBuilder out = new StringBuilder();
+        for (final RequestMetrics metrics : this.list()) metrics.dump(out);
+        return out.toString();
+    }
+
+    /** Clears every histogram, for example before measuring a scenario. */
+    public void reset() {
+        this.METRICS.values().forEach(RequestMetrics::reset);
+    }
+}
@@ -0,0 +1,126 @@
+package tech.tenamin.unisound.core.metrics;
+
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograms of requests to one endpoint of one provider.
+ * Times are recorded in nanoseconds: queue wait is from making the request until it is sent,
+ * first byte is from sending until the response headers arrive, and total is from making the request until it is parsed.
+ * Only succeeded requests are recorded in histograms, and failed ones are counted.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public final class RequestMetrics {
+
+    private final String PROVIDER, ENDPOINT;
+
+    private final Histogram QUEUE_WAIT = new Histogram(), FIRST_BYTE = new Histogram(), TOTAL = new Histogram(), PARSE = new Histogram();
+    private final Histogram BYTES = new Histogram(), PRODUCED = new Histogram();
+    private final LongAdder FAILURES = new LongAdder();
+
+    RequestMetrics(@NonNull final String provider, @NonNull final String endpoint) {
+        this.PROVIDER = provider;
+        this.ENDPOINT = endpoint;
+    }
+
+    @NonNull
+    public String getPROVIDER() {
+        return this.PROVIDER;
+    }
+
+    @NonNull
+    public String getENDPOINT() {
+        return this.ENDPOINT;
+    }
+
+    /**
+     * Starts timing a request. Call this when the request is made, before it is queued.
+     *
+     * @return timer of the request
+     */
+    @NonNull
+    public RequestTimer start() {
+        return new RequestTimer(this);
+    }
+
+    void record(final RequestTimer timer, final long finishedAt) {
+        final long dispatchedAt = timer.getDispatchedAt(), firstByteAt = timer.getFirstByteAt();
+        if (dispatchedAt != 0) this.QUEUE_WAIT.record(dispatchedAt - timer.getSTARTED_AT());
+        if (firstByteAt != 0) this.FIRST_BYTE.record(firstByteAt - (dispatchedAt != 0 ? dispatchedAt : timer.getSTARTED_AT()));
+        this.TOTAL.record(finishedAt - timer.getSTARTED_AT());
+        if (timer.getParseNanos() >= 0) this.PARSE.record(timer.getParseNanos());
+        if (timer.getBytes() >= 0) this.BYTES.record(timer.getBytes());
+        if (timer.getProduced() >= 0) this.PRODUCED.record(timer.getProduced());
+    }
+
+    void recordFailure() {
+        this.FAILURES.increment();
+    }
+
+    void reset() {
+        this.QUEUE_WAIT.reset();
+        this.FIRST_BYTE.reset();
+        this.TOTAL.reset();
+        this.PARSE.reset();
+        this.BYTES.reset();
+        this.PRODUCED.reset();
+        this.FAILURES.reset();
+    }
+
+    /**
+     * Writes percentiles of each histogram, skipping histograms with nothing recorded.
+     *
+     * @param out where the text is written
+     */
+    void dump(@NonNull final StringBuilder out) {
+        final Histogram.Snapshot total = this.TOTAL.snapshot();
+        out.append(String.format(Locale.ROOT, "%s/%s  ok=%d failed=%d%n", this.PROVIDER, this.ENDPOINT, total.getCOUNT(), this.FAILURES.sum()));
+        dumpTimes(out, "queue wait", this.QUEUE_WAIT.snapshot());
+        dumpTimes(out, "first byte", this.FIRST_BYTE.snapshot());
+        dumpTimes(out, "total", total);
+        dumpTimes(out, "parse", this.PARSE.snapshot());
+
+        final Histogram.Snapshot bytes = this.BYTES.snapshot();
+        if (bytes.getCOUNT() > 0) {
+            out.append(String.format(
+                    Locale.ROOT,
+                    "  %-10s p50 %8.1fKiB  p90 %8.1fKiB  p99 %8.1fKiB  max %8.1fKiB%n",
+                    "bytes",
+                    bytes.percentile(50) / 1024.0,
+                    bytes.percentile(90) / 1024.0,
+                    bytes.percentile(99) / 1024.0,
+                    bytes.getMAX() / 1024.0
+            ));
+        }
+
+        final Histogram.Snapshot produced = this.PRODUCED.snapshot();
+        if (produced.getCOUNT() > 0) {
+            out.append(String.format(
+                    Locale.ROOT,
+                    "  %-10s p50 %8d     p90 %8d     p99 %8d     max %8d%n",
+                    "snippets",
+                    produced.percentile(50),
+                    produced.percentile(90),
+                    produced.percentile(99),
+                    produced.getMAX()
+            ));
+        }
+    }
+
+    private static void dumpTimes(final StringBuilder out, final String name, final Histogram.Snapshot times) {
+        if (times.getCOUNT() == 0) return;
+        out.append(String.format(
+                Locale.ROOT,
+                "  %-10s p50 %8.1fms   p90 %8.1fms   p99 %8.1fms   max %8.1fms%n",
+                name,
+                times.percentile(50) / 1e6,
+                times.percentile(90) / 1e6,
+                times.percentile(99) / 1e6,
+                times.getMAX() / 1e6
+        ));
+    }
+}
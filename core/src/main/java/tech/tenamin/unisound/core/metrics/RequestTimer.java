@@ -0,0 +1,98 @@
+package tech.tenamin.unisound.core.metrics;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Timeline of one request, which is recorded into its RequestMetrics when it finishes.
+ * Each stage is marked by whichever thread reaches it, and stages which are never marked are not recorded.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public final class RequestTimer {
+
+    /** Metrics which the request is recorded into. */
+    private final RequestMetrics METRICS;
+
+    /** When the request is made. */
+    private final long STARTED_AT = System.nanoTime();
+
+    /** Whether the request is already recorded. */
+    private final AtomicBoolean FINISHED = new AtomicBoolean(false);
+
+    /** When the request leaves the queue, and when the response headers arrive, or 0 if not yet. */
+    private volatile long dispatchedAt = 0, firstByteAt = 0;
+
+    /** When parsing starts, and how long it takes, or -1 if it is not parsed. */
+    private volatile long parseStartedAt = 0, parseNanos = -1;
+
+    /** Size of the response body, or -1 if it is unknown. */
+    private volatile long bytes = -1;
+
+    /** Snippets produced from the response, or -1 if it does not produce snippets. */
+    private volatile int produced = -1;
+
+    RequestTimer(final RequestMetrics metrics) {
+        this.METRICS = metrics;
+    }
+
+    /** Marks that the request leaves the queue and starts being sent. */
+    public void dispatched() {
+        if (this.dispatchedAt == 0) this.dispatchedAt = System.nanoTime();
+    }
+
+    /** Marks that the response headers arrive. */
+    public void firstByte() {
+        if (this.firstByteAt == 0) this.firstByteAt = System.nanoTime();
+    }
+
+    public void bytes(final long bytes) {
+        this.bytes = bytes;
+    }
+
+    public void beginParse() {
+        this.parseStartedAt = System.nanoTime();
+    }
+
+    /**
+     * @param produced snippets produced from the response, or -1 if it does not produce snippets
+     */
+    public void endParse(final int produced) {
+        this.parseNanos = System.nanoTime() - this.parseStartedAt;
+        this.produced = produced;
+    }
+
+    /** Records the request as succeeded. Only the first of finish() and fail() is recorded. */
+    public void finish() {
+        if (this.FINISHED.compareAndSet(false, true)) this.METRICS.record(this, System.nanoTime());
+    }
+
+    /** Records the request as failed. Only the first of finish() and fail() is recorded. */
+    public void fail() {
+        if (this.FINISHED.compareAndSet(false, true)) this.METRICS.recordFailure();
+    }
+
+    long getSTARTED_AT() {
+        return this.STARTED_AT;
+    }
+
+    long getDispatchedAt() {
+        return this.dispatchedAt;
+    }
+
+    long getFirstByteAt() {
+        return this.firstByteAt;
+    }
+
+    long getParseNanos() {
+        return this.parseNanos;
+    }
+
+    long getBytes() {
+        return this.bytes;
+    }
+
+    int getProduced() {
+        return this.produced;
+    }
+}
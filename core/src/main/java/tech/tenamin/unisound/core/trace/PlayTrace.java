@@ -0,0 +1,108 @@
+package tech.tenamin.unisound.core.trace;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Trace of one play, from the tap on a track until its audio starts.
+ * The play goes through stages one after another, possibly on different threads.
+ * Each stage ends when the next one begins, and finished stages are written to TraceBuffer.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public final class PlayTrace {
+
+    /** Name of the span which covers the whole play. */
+    public static final String ROOT = "play";
+
+    /** Id given to the next trace. */
+    private static final AtomicInteger NEXT_ID = new AtomicInteger(1);
+
+    /** Id of the trace, which groups its spans. */
+    private final int ID = NEXT_ID.getAndIncrement();
+
+    /** What is played, such as the title of the track. */
+    private final String LABEL;
+
+    /** Thread which began the play, and when. */
+    private final String THREAD = Thread.currentThread().getName();
+    private final long STARTED_AT = System.nanoTime();
+
+    /** The current stage, its thread and when it began, or null if no stage is running. */
+    private String stage = null, stageThread = null;
+    private long stageStartedAt = 0;
+
+    /** Whether the trace is already ended. Stages marked after that are ignored. */
+    private boolean ended = false;
+
+    private PlayTrace(@NonNull final String label) {
+        this.LABEL = label;
+    }
+
+    /**
+     * Begins a trace of a play. Call this when the user taps the track.
+     *
+     * @param label what is played, such as the title of the track
+     * @return the trace
+     */
+    @NonNull
+    public static PlayTrace begin(@NonNull final String label) {
+        return new PlayTrace(label);
+    }
+
+    public int getID() {
+        return this.ID;
+    }
+
+    /**
+     * Ends the current stage and begins the next one.
+     *
+     * @param name name of the next stage
+     */
+    public synchronized void stage(@NonNull final String name) {
+        if (this.ended) return;
+        final long now = System.nanoTime();
+        this.endStage(now, null);
+        this.stage = name;
+        this.stageThread = Thread.currentThread().getName();
+        this.stageStartedAt = now;
+    }
+
+    /** Ends the current stage and the trace, as the audio starts. */
+    public synchronized void end() {
+        this.end(null);
+    }
+
+    /**
+     * Ends the current stage and the trace, as the play fails.
+     *
+     * @param reason why the play fails
+     */
+    public synchronized void fail(@NonNull final String reason) {
+        this.end(reason);
+    }
+
+    private void end(@Nullable final String failure) {
+        if (this.ended) return;
+        this.ended = true;
+        final long now = System.nanoTime();
+        this.endStage(now, failure);
+        TraceBuffer.getInstance().add(new TraceSpan(
+                this.ID,
+                failure == null ? ROOT : ROOT + " (failed)",
+                this.THREAD,
+                this.STARTED_AT,
+                now,
+                this.LABEL
+        ));
+    }
+
+    private void endStage(final long now, @Nullable final String detail) {
+        if (this.stage == null) return;
+        TraceBuffer.getInstance().add(new TraceSpan(this.ID, this.stage, this.stageThread, this.stageStartedAt, now, detail));
+        this.stage = null;
+    }
+}
@@ -0,0 +1,125 @@
+package tech.tenamin.unisound.core.trace;
+
+import androidx.annotation.NonNull;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Ring buffer of finished trace spans, which keeps the latest ones and overwrites the oldest.
+ * Spans are exported in Chrome trace event format, which is opened by Perfetto UI and chrome://tracing.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public final class TraceBuffer {
+
+    /** The number of spans kept. Each play writes about ten. */
+    private static final int CAPACITY = 2048;
+
+    /** The instance shared in the process. */
+    private static final TraceBuffer INSTANCE = new TraceBuffer();
+
+    /** Spans in the ring, indexed by their sequence modulo the capacity. */
+    private final AtomicReferenceArray<TraceSpan> SPANS = new AtomicReferenceArray<>(CAPACITY);
+
+    /** Sequence of the next span. */
+    private final AtomicLong NEXT = new AtomicLong(0);
+
+    private TraceBuffer() { }
+
+    @NonNull
+    public static TraceBuffer getInstance() {
+        return INSTANCE;
+    }
+
+    void add(@NonNull final TraceSpan span) {
+        this.SPANS.set((int) (this.NEXT.getAndIncrement() % CAPACITY), span);
+    }
+
+    /**
+     * @return spans kept in the buffer, the oldest first
+     */
+    @NonNull
+    public List<TraceSpan> list() {
+        final long next = this.NEXT.get();
+        final List<TraceSpan> spans = new ArrayList<>();
+        for (long i = Math.max(0, next - CAPACITY); i < next; i++) {
+            final TraceSpan span = this.SPANS.get((int) (i % CAPACITY));
+            if (span != null) spans.add(span);
+        }
+        return spans;
+    }
+
+    public void clear() {
+        for (int i = 0; i < CAPACITY; i++) this.SPANS.set(i, null);
+    }
+
+    /**
+     * Writes the kept spans in Chrome trace event format.
+     * Each play is shown as its own track, named after what is played, and its stages are complete events on it.
+     *
+     * @param out destination of the json
+     * @throws IOException if it can not be written
+     */
+    public void writeChromeTrace(@NonNull final Writer out) throws IOException {
+        final List<TraceSpan> spans = this.list();
+
+        // Timestamps are exported from the earliest span, so that they start at 0.
+        long origin = Long.MAX_VALUE;
+        for (final TraceSpan span : spans) origin = Math.min(origin, span.getSTARTED_AT());
+
+        final JsonWriter writer = new JsonWriter(out);
+        writer.beginObject();
+        writer.name("displayTimeUnit").value("ms");
+        writer.name("traceEvents").beginArray();
+
+        writer.beginObject()
+                .name("name").value("process_name")
+                .name("ph").value("M")
+                .name("pid").value(1)
+                .name("args").beginObject().name("name").value("Unisound").endObject()
+                .endObject();
+
+        // Tracks are named after the root span of each play, which is written when the play ends.
+        final Set<Integer> named = new HashSet<>();
+        for (final TraceSpan span : spans) {
+            if (!span.getNAME().startsWith(PlayTrace.ROOT) || !named.add(span.getTRACE_ID())) continue;
+            writer.beginObject()
+                    .name("name").value("thread_name")
+                    .name("ph").value("M")
+                    .name("pid").value(1)
+                    .name("tid").value(span.getTRACE_ID())
+                    .name("args").beginObject().name("name").value(String.format("#%d %s", span.getTRACE_ID(), span.getDETAIL())).endObject()
+                    .endObject();
+        }
+
+        for (final TraceSpan span : spans) {
+            writer.beginObject()
+                    .name("name").value(span.getNAME())
+                    .name("cat").value("play")
+                    .name("ph").value("X")
+                    .name("ts").value((span.getSTARTED_AT() - origin) / 1000.0)
+                    .name("dur").value((span.getENDED_AT() - span.getSTARTED_AT()) / 1000.0)
+                    .name("pid").value(1)
+                    .name("tid").value(span.getTRACE_ID());
+            writer.name("args").beginObject();
+            writer.name("thread").value(span.getTHREAD());
+            if (span.getDETAIL() != null) writer.name("detail").value(span.getDETAIL());
+            writer.endObject();
+            writer.endObject();
+        }
+
+        writer.endArray();
+        writer.endObject();
+        writer.flush();
+    }
+}
@@ -0,0 +1,65 @@
+package tech.tenamin.unisound.core.trace;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * One finished span of a trace.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public final class TraceSpan {
+
+    /** Id of the trace which the span belongs to. */
+    private final int TRACE_ID;
+
+    /** Name of the span, such as the stage. */
+    private final String NAME;
+
+    /** Name of the thread which began the span. */
+    private final String THREAD;
+
+    /** When the span began and ended, in System.nanoTime(). */
+    private final long STARTED_AT, ENDED_AT;
+
+    /** Additional detail of the span, such as the title played or why it failed. */
+    @Nullable
+    private final String DETAIL;
+
+    TraceSpan(final int traceId, @NonNull final String name, @NonNull final String thread, final long startedAt, final long endedAt, @Nullable final String detail) {
+        this.TRACE_ID = traceId;
+        this.NAME = name;
+        this.THREAD = thread;
+        this.STARTED_AT = startedAt;
+        this.ENDED_AT = endedAt;
+        this.DETAIL = detail;
+    }
+
+    public int getTRACE_ID() {
+        return this.TRACE_ID;
+    }
+
+    @NonNull
+    public String getNAME() {
+        return this.NAME;
+    }
+
+    @NonNull
+    public String getTHREAD() {
+        return this.THREAD;
+    }
+
+    public long getSTARTED_AT() {
+        return this.STARTED_AT;
+    }
+
+    public long getENDED_AT() {
+        return this.ENDED_AT;
+    }
+
+    @Nullable
+    public String getDETAIL() {
+        return this.DETAIL;
+    }
+}
@@ -0,0 +1,35 @@
+package tech.tenamin.unisound.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Loads response fixtures from resources, which are shared with the benchmarks.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public final class Fixtures {
+
+    /** Do not let make instance of Fixtures */
+    private Fixtures() { }
+
+    /**
+     * @param name file name under fixtures/
+     * @return the whole fixture
+     */
+    public static String load(final String name) {
+        try (InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + name)) {
+            if (in == null) throw new IllegalStateException(String.format("Fixture %s is not found", name));
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) out.write(buffer, 0, n);
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package tech.tenamin.unisound.core.api.impl;
+
+import androidx.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import tech.tenamin.unisound.core.api.http.HttpResponse;
+import tech.tenamin.unisound.core.api.http.HttpStatusException;
+import tech.tenamin.unisound.core.api.http.HttpTransport;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public class SoundCloudClientTest {
+
+    private static final String ASSET_HOST = "https://a-v2.sndcdn.com/assets/";
+
+    private final ExecutorService PROBE_EXECUTOR = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        this.PROBE_EXECUTOR.shutdownNow();
+    }
+
+    @Test
+    public void clientIdIsScrapedFromPreferredAsset() throws Exception {
+        final FakeTransport transport = new FakeTransport(6);
+        transport.ASSETS.put(ASSET_HOST + "4.js", "a=\"https://api-v2.soundcloud.com/?client_id=abcDEF123\";");
+
+        assertEquals("abcDEF123", SoundCloudClient.scrapeClientId(transport, this.PROBE_EXECUTOR));
+
+        // The guess hits, so no other script is downloaded.
+        assertEquals(2, transport.REQUESTED.size());
+        assertEquals(ASSET_HOST + "4.js", transport.REQUESTED.get(1));
+    }
+
+    @Test
+    public void otherAssetsAreProbedWhenGuessMisses() throws Exception {
+        final FakeTransport transport = new FakeTransport(6);
+        transport.ASSETS.put(ASSET_HOST + "1.js", "client_id=\"+x+\";b={client_id=xyz789\"}");
+
+        assertEquals("xyz789", SoundCloudClient.scrapeClientId(transport, this.PROBE_EXECUTOR));
+    }
+
+    @Test
+    public void guessIsLastAssetOnShortPage() throws Exception {
+        final FakeTransport transport = new FakeTransport(2);
+        transport.ASSETS.put(ASSET_HOST + "1.js", "client_id=last1\"");
+
+        assertEquals("last1", SoundCloudClient.scrapeClientId(transport, this.PROBE_EXECUTOR));
+        assertEquals(2, transport.REQUESTED.size());
+    }
+
+    @Test
+    public void missingClientIdIsNull() throws Exception {
+        assertNull(SoundCloudClient.scrapeClientId(new FakeTransport(6), this.PROBE_EXECUTOR));
+        assertNull(SoundCloudClient.scrapeClientId(new FakeTransport(0), this.PROBE_EXECUTOR));
+    }
+
+    @Test
+    public void failedHomePageIsThrown() throws Exception {
+        final FakeTransport transport = new FakeTransport(6);
+        transport.homeStatus = 503;
+        try {
+            SoundCloudClient.scrapeClientId(transport, this.PROBE_EXECUTOR);
+            fail();
+        } catch (HttpStatusException e) {
+            assertEquals(503, e.getSTATUS());
+        }
+    }
+
+    /**
+     * Transport which serves SoundCloud web page referring to numbered asset scripts.
+     * Scripts without content answer 404, as if they were gone.
+     */
+    private static final class FakeTransport implements HttpTransport {
+
+        private final String HOME;
+        private final Map<String, String> ASSETS = new HashMap<>();
+        private final List<String> REQUESTED = new CopyOnWriteArrayList<>();
+        private int homeStatus = 200;
+
+        private FakeTransport(final int assets) {
+            final StringBuilder home = new StringBuilder("<html><body>");
+            for (int i = 0; i < assets; i++) {
+                home.append("<script crossorigin src=\"").append(ASSET_HOST).append(i).append(".js\"></script>");
+                this.ASSETS.put(ASSET_HOST + i + ".js", "var a=1;");
+            }
+            this.HOME = home.append("</body></html>").toString();
+        }
+
+        @NonNull
+        @Override
+        public HttpResponse get(@NonNull final String url) throws IOException {
+            this.REQUESTED.add(url);
+            if (url.equals("https://soundcloud.com")) {
+                if (this.homeStatus != 200) throw new HttpStatusException(this.homeStatus, url);
+                return responseOf(this.HOME);
+            }
+            final String asset = this.ASSETS.get(url);
+            if (asset == null) throw new HttpStatusException(404, url);
+            return responseOf(asset);
+        }
+
+        @NonNull
+        @Override
+        public HttpResponse post(@NonNull final String url, @NonNull final String jsonBody) throws IOException {
+            throw new HttpStatusException(404, url);
+        }
+
+        private static HttpResponse responseOf(final String body) {
+            return new HttpResponse(200, "text/html", new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), () -> { });
+        }
+    }
+}
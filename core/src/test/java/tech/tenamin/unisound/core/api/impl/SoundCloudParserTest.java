@@ -0,0 +1,62 @@
+package tech.tenamin.unisound.core.api.impl;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import tech.tenamin.unisound.core.Fixtures;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public class SoundCloudParserTest {
+
+    @Test
+    public void searchGivesTracks() throws IOException {
+        final List<String[]> tracks = parse(Fixtures.load("soundcloud_search.json"));
+
+        assertEquals(20, tracks.size());
+        final String[] first = tracks.get(0);
+        assertEquals("Summer City #0", first[0]);
+        assertEquals("User19", first[1]);
+        assertEquals("2023-06-12T11:24:00Z", first[2]);
+        assertEquals("https://api-v2.soundcloud.com/media/soundcloud:tracks:1214870080/ddptqh42VsOY1hrYG37TLfPNQSzyrrPEah57/stream/progressive", first[3]);
+        assertNotNull(first[4]);
+        assertNull(first[5]);
+
+        int withoutArtwork = 0;
+        for (final String[] track : tracks) if (track[5] == null) withoutArtwork++;
+        assertEquals(3, withoutArtwork);
+    }
+
+    @Test
+    public void itemsWithoutMediaAreIgnored() throws IOException {
+        final List<String[]> tracks = parse(
+                "{\"collection\":[{\"kind\":\"user\",\"username\":\"u\"},3,"
+                        + "{\"title\":\"T\",\"user\":{\"username\":\"U\"},"
+                        + "\"media\":{\"transcodings\":[{\"url\":\"hls\"},{\"url\":\"progressive\"}]},\"track_authorization\":\"a\"}]}"
+        );
+
+        assertEquals(1, tracks.size());
+        assertArrayEquals(new String[]{"T", "U", null, "progressive", "a", null}, tracks.get(0));
+    }
+
+    @Test
+    public void responseWithoutCollectionHasNoTracks() throws IOException {
+        assertTrue(parse("{\"errors\":[]}").isEmpty());
+    }
+
+    private static List<String[]> parse(final String json) throws IOException {
+        final List<String[]> tracks = new ArrayList<>();
+        SoundCloudParser.parseSearch(new StringReader(json), (title, publisher, createdAt, trackId, trackAuth, thumbnail) ->
+                tracks.add(new String[]{title, publisher, createdAt, trackId, trackAuth, thumbnail})
+        );
+        return tracks;
+    }
+}
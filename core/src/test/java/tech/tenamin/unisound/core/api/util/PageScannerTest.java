@@ -0,0 +1,95 @@
+package tech.tenamin.unisound.core.api.util;
+
+import org.junit.Test;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public class PageScannerTest {
+
+    @Test
+    public void skipToFindsMarkerAcrossReads() throws IOException {
+        final StringBuilder page = new StringBuilder();
+        for (int i = 0; i < 10000; i++) page.append('x');
+        page.append("client_id=abc\"rest");
+
+        final PageScanner scanner = new PageScanner(new OneCharReader(page.toString()));
+        assertTrue(scanner.skipTo("client_id="));
+        assertEquals("abc", scanner.readUntil("\"", 64));
+        assertFalse(scanner.skipTo("client_id="));
+    }
+
+    @Test
+    public void skipToRestartsPartialMatches() throws IOException {
+        final PageScanner scanner = new PageScanner(new StringReader("aaab|"));
+        assertTrue(scanner.skipTo("aab"));
+        assertEquals("", scanner.readUntil("|", 8));
+    }
+
+    @Test
+    public void skipToAnyReturnsMarkerFoundFirst() throws IOException {
+        final PageScanner scanner = new PageScanner(new StringReader("..b..a..b"));
+        assertEquals(2, scanner.skipToAny(null, "a", "b"));
+        assertEquals(1, scanner.skipToAny(null, "a", "b"));
+        assertEquals(-1, scanner.skipToAny(null, "a"));
+    }
+
+    @Test
+    public void readUntilGivesUpPastMaxLength() throws IOException {
+        assertNull(new PageScanner(new StringReader("abcdefghij\"")).readUntil("\"", 4));
+        assertNull(new PageScanner(new StringReader("abc")).readUntil("\"", 4));
+    }
+
+    @Test
+    public void readJSONStringUnescapes() throws IOException {
+        final PageScanner scanner = new PageScanner(new StringReader(" : \"a\\\"b\\u0041\\n\\\\\""));
+        assertEquals("a\"bA\n\\", scanner.readJSONString());
+        assertNull(new PageScanner(new StringReader(": 12")).readJSONString());
+    }
+
+    @Test
+    public void valueReaderEndsWithValue() throws IOException {
+        final PageScanner scanner = new PageScanner(new OneCharReader("var data = {\"a\":\"}]\\\"\",\"b\":[1,{\"c\":2}]};tail|"));
+        assertTrue(scanner.skipTo("var data"));
+        assertEquals("{\"a\":\"}]\\\"\",\"b\":[1,{\"c\":2}]}", scanner.readJSONValue());
+        assertEquals(";tail", scanner.readUntil("|", 8));
+    }
+
+    @Test
+    public void closedValueReaderSkipsRestOfValue() throws IOException {
+        final PageScanner scanner = new PageScanner(new StringReader("[[1, 2], {\"x\": \"]\"}] after|"));
+        final Reader value = scanner.valueReader();
+        assertEquals('[', value.read());
+        value.close();
+        assertTrue(scanner.skipTo("after"));
+        assertEquals("", scanner.readUntil("|", 8));
+    }
+
+    @Test(expected = IOException.class)
+    public void valueReaderRejectsOtherValues() throws IOException {
+        new PageScanner(new StringReader(": 12")).valueReader();
+    }
+
+    /**
+     * Reader which returns one char at a time, so that every marker and value spans several reads.
+     */
+    private static final class OneCharReader extends FilterReader {
+
+        private OneCharReader(final String text) {
+            super(new StringReader(text));
+        }
+
+        @Override
+        public int read(final char[] cbuf, final int off, final int len) throws IOException {
+            return super.read(cbuf, off, Math.min(1, len));
+        }
+    }
+}
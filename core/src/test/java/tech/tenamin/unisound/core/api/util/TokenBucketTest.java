@@ -0,0 +1,59 @@
+package tech.tenamin.unisound.core.api.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Only lower bounds of waits are checked, since a busy machine can make any wait longer.
+ *
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public class TokenBucketTest {
+
+    @Test(timeout = 1000)
+    public void unlimitedRateDoesNotWait() throws InterruptedException {
+        final TokenBucket bucket = new TokenBucket(() -> 0);
+        for (int i = 0; i < 1000; i++) bucket.acquire(1 << 20);
+    }
+
+    @Test(timeout = 5000)
+    public void acquireWaitsForTokens() throws InterruptedException {
+        final TokenBucket bucket = new TokenBucket(() -> 10000);
+        final long start = System.nanoTime();
+        bucket.acquire(5000);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 400);
+    }
+
+    @Test(timeout = 5000)
+    public void largeReadIsPaidByNextWait() throws InterruptedException {
+        final TokenBucket bucket = new TokenBucket(() -> 10000);
+
+        // A read of two seconds takes one second of tokens, and leaves a debt of one more second.
+        bucket.acquire(20000);
+        final long start = System.nanoTime();
+        bucket.acquire(1);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 900);
+    }
+
+    @Test(timeout = 1000)
+    public void rateIsReadOnEachAcquire() throws InterruptedException {
+        final AtomicLong rate = new AtomicLong(1);
+        final TokenBucket bucket = new TokenBucket(rate::get);
+
+        // At 1 byte per second this would wait for a long time, but the limit is lifted.
+        rate.set(0);
+        bucket.acquire(1 << 20);
+    }
+
+    @Test(expected = InterruptedException.class, timeout = 1000)
+    public void interruptStopsWaiting() throws InterruptedException {
+        final TokenBucket bucket = new TokenBucket(() -> 1);
+        Thread.currentThread().interrupt();
+        bucket.acquire(1);
+    }
+}
@@ -0,0 +1,114 @@
+package tech.tenamin.unisound.core.cache;
+
+import org.json.JSONException;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import tech.tenamin.unisound.core.api.MusicSnippet;
+import tech.tenamin.unisound.core.api.impl.SoundCloudSnippet;
+import tech.tenamin.unisound.core.api.impl.YouTubeSnippet;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public class SnippetCodecTest {
+
+    private static final List<MusicSnippet> SNIPPETS = Arrays.asList(
+            new YouTubeSnippet("Music video", "Publisher", new Date(1600000000000L), "dQw4w9WgXcQ", "https://i.ytimg.com/vi/dQw4w9WgXcQ/hqdefault.jpg"),
+            new SoundCloudSnippet("Track (Remix)", "Publisher", new Date(0), "1234567890", "s-abc", "https://i1.sndcdn.com/artworks-1-large.jpg"),
+            new YouTubeSnippet("Another video", "Publisher", null, "abcdefghijk", "https://i.ytimg.com/vi/abcdefghijk/hqdefault.jpg")
+    );
+
+    @Test
+    public void binaryRoundTrips() throws JSONException {
+        final byte[] binary = SnippetCodec.toBytes(SNIPPETS);
+        final ByteBuffer buffer = ByteBuffer.wrap(binary);
+        assertSameSnippets(SNIPPETS, SnippetCodec.fromBytes(buffer));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void binaryReadsMappedBuffer() throws JSONException {
+        final byte[] binary = SnippetCodec.toBytes(SNIPPETS);
+        final ByteBuffer direct = ByteBuffer.allocateDirect(binary.length);
+        direct.put(binary).flip();
+        assertSameSnippets(SNIPPETS, SnippetCodec.fromBytes(direct));
+    }
+
+    @Test
+    public void nullFieldsRoundTrip() throws JSONException {
+        final List<MusicSnippet> snippets = Arrays.asList(
+                new YouTubeSnippet("Title", null, null, "abcdefghijk", null),
+                new SoundCloudSnippet("Title", null, null, "1", null, null)
+        );
+        assertSameSnippets(snippets, SnippetCodec.fromBytes(ByteBuffer.wrap(SnippetCodec.toBytes(snippets))));
+    }
+
+    @Test
+    public void emptySetRoundTrips() {
+        assertTrue(SnippetCodec.fromBytes(ByteBuffer.wrap(SnippetCodec.toBytes(Collections.emptyList()))).isEmpty());
+    }
+
+    @Test
+    public void truncatedInputIsRejected() {
+        final byte[] binary = SnippetCodec.toBytes(SNIPPETS);
+        for (int length = 0; length < binary.length; length++) {
+            try {
+                SnippetCodec.fromBytes(ByteBuffer.wrap(binary, 0, length));
+                fail(String.format("Binary form cut at %d bytes is read", length));
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownVersionIsRejected() {
+        final byte[] binary = SnippetCodec.toBytes(SNIPPETS);
+        binary[0] = 99;
+        SnippetCodec.fromBytes(ByteBuffer.wrap(binary));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void corruptCountIsRejected() {
+
+        // Version 1, then a count of 2^31 - 1.
+        SnippetCodec.fromBytes(ByteBuffer.wrap(new byte[]{1, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x07}));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeCountIsRejected() {
+        SnippetCodec.fromBytes(ByteBuffer.wrap(new byte[]{
+                1, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x01
+        }));
+    }
+
+    @Test
+    public void jsonRoundTrips() throws JSONException {
+        for (final MusicSnippet snippet : SNIPPETS) {
+            assertEquals(SnippetCodec.toJSON(snippet).toString(), SnippetCodec.toJSON(SnippetCodec.fromJSON(SnippetCodec.toJSON(snippet))).toString());
+        }
+    }
+
+    @Test
+    public void keyIsSharedByProviderAndId() {
+        assertEquals("youtube:dQw4w9WgXcQ", SnippetCodec.keyOf(SNIPPETS.get(0)));
+        assertEquals("soundcloud:1234567890", SnippetCodec.keyOf(SNIPPETS.get(1)));
+    }
+
+    private static void assertSameSnippets(final List<MusicSnippet> expected, final List<MusicSnippet> actual) throws JSONException {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getClass(), actual.get(i).getClass());
+            assertEquals(SnippetCodec.toJSON(expected.get(i)).toString(), SnippetCodec.toJSON(actual.get(i)).toString());
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package tech.tenamin.unisound.core.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author tenamen
+ * @since 2023/08/17.
+ */
+public class HistogramTest {
+
+    @Test
+    public void emptySnapshotIsZero() {
+        final Histogram.Snapshot snapshot = new Histogram().snapshot();
+        assertEquals(0, snapshot.getCOUNT());
+        assertEquals(0, snapshot.percentile(99));
+        assertEquals(0, snapshot.mean(), 0);
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        final Histogram histogram = new Histogram();
+        for (int i = 0; i < 8; i++) histogram.record(i);
+
+        final Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(3, snapshot.percentile(50));
+        assertEquals(7, snapshot.percentile(100));
+        assertEquals(3.5, snapshot.mean(), 0);
+    }
+
+    @Test
+    public void percentileIsWithinBucketError() {
+        final Histogram histogram = new Histogram();
+        for (int i = 1; i <= 10000; i++) histogram.record(i);
+
+        final Histogram.Snapshot snapshot = histogram.snapshot();
+        for (final int percentile : new int[]{1, 50, 90, 99, 100}) {
+            final long exact = percentile * 100L;
+            final long value = snapshot.percentile(percentile);
+            assertTrue(String.format("p%d = %d", percentile, value), value >= exact && value <= exact * 1.125);
+        }
+        assertEquals(10000, snapshot.getMAX());
+        assertEquals(5000.5, snapshot.mean(), 1e-9);
+    }
+
+    @Test
+    public void negativeValuesAreRecordedAsZero() {
+        final Histogram histogram = new Histogram();
+        histogram.record(-5);
+
+        final Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1, snapshot.getCOUNT());
+        assertEquals(0, snapshot.percentile(100));
+        assertEquals(0, snapshot.mean(), 0);
+    }
+
+    @Test
+    public void largestValueFitsLastBucket() {
+        final Histogram histogram = new Histogram();
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.snapshot().percentile(50));
+    }
+
+    @Test
+    public void resetClearsCounters() {
+        final Histogram histogram = new Histogram();
+        histogram.record(100);
+        histogram.reset();
+
+        final Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(0, snapshot.getCOUNT());
+        assertEquals(0, snapshot.getMAX());
+        assertEquals(0, snapshot.percentile(100));
+    }
+}